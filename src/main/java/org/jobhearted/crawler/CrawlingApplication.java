@@ -2,12 +2,15 @@ package org.jobhearted.crawler;
 
 import org.apache.log4j.PropertyConfigurator;
 import org.jobhearted.crawler.exceptions.UnableToStartManagerException;
+import org.jobhearted.crawler.fetching.HttpClient;
 import org.jobhearted.crawler.gui.MainWindow;
 import org.jobhearted.crawler.management.ProcessManager;
+import org.jobhearted.crawler.management.Reprocessor;
 import org.jobhearted.crawler.management.Settings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -17,10 +20,12 @@ import java.util.List;
  */
 public class CrawlingApplication {
     private static Logger logger = LoggerFactory.getLogger(CrawlingApplication.class);
+    private static final String REPROCESS_ARGUMENT = "-reprocess";
 
     /**
      * Main method for the application. Initializes logging, loads settings, launches the GUI if needed and creates
-     * the process manager
+     * the process manager. With -reprocess, optionally followed by crawler ids, the archived pages of the crawlers are
+     * processed again instead and the application exits when done.
      *
      * @param args
      */
@@ -28,12 +33,16 @@ public class CrawlingApplication {
         PropertyConfigurator.configure("logging.cfg");
         logger.info("Starting up the CrawlHearted application");
         Settings.loadSettings();
+        HttpClient.configure();
 
-        try {
-
+        List<String> arguments = Arrays.asList(args);
+        if (arguments.contains(REPROCESS_ARGUMENT)) {
+            Reprocessor.reprocess(crawlerIdsOf(arguments));
+            return;
+        }
 
+        try {
             // launching org.jobhearted.crawler.gui if necessary
-            List<String> arguments = Arrays.asList(args);
             if (!arguments.contains("-nogui")) {
                 launchGui();
             }
@@ -44,6 +53,24 @@ public class CrawlingApplication {
         }
     }
 
+    /**
+     * Reads the crawler ids following the -reprocess argument
+     *
+     * @param arguments arguments of the application
+     * @return the ids, empty to reprocess all crawlers
+     */
+    private static List<Integer> crawlerIdsOf(List<String> arguments) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (String argument : arguments.subList(arguments.indexOf(REPROCESS_ARGUMENT) + 1, arguments.size())) {
+            try {
+                ids.add(Integer.parseInt(argument));
+            } catch (NumberFormatException e) {
+                break;
+            }
+        }
+        return ids;
+    }
+
     /**
      * Launches the window if there was no -nogui parameter when launching the program.
      */
@@ -0,0 +1,128 @@
+package org.jobhearted.crawler.archive;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A page as it was stored in the PageArchive: the url, the time it was fetched, the charset of the response and the
+ * raw body. The body stays compressed until it is asked for, so a scan can hand the pages to other threads which do the
+ * decompressing and parsing in parallel.
+ */
+public class ArchivedPage {
+    private final String url;
+    private final long fingerprint;
+    private final long fetchTime;
+    private final String charset;
+    private final int bodyLength;
+    private final int checksum;
+    private final byte[] compressedBody;
+
+    /**
+     * Creates the page
+     *
+     * @param url            url of the page
+     * @param fingerprint    fingerprint of the url
+     * @param fetchTime      time the page was fetched in milliseconds since the epoch
+     * @param charset        charset of the response, null when the server did not give one
+     * @param bodyLength     length of the body
+     * @param checksum       CRC-32 of the body
+     * @param compressedBody the deflated body
+     */
+    ArchivedPage(String url, long fingerprint, long fetchTime, String charset, int bodyLength, int checksum,
+                 byte[] compressedBody) {
+        this.url = url;
+        this.fingerprint = fingerprint;
+        this.fetchTime = fetchTime;
+        this.charset = charset;
+        this.bodyLength = bodyLength;
+        this.checksum = checksum;
+        this.compressedBody = compressedBody;
+    }
+
+    /**
+     * Returns the url of the page
+     *
+     * @return url string
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Returns the fingerprint of the url, the key of the page in the archive
+     *
+     * @return 64-bit fingerprint
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns the time the page was fetched
+     *
+     * @return time in milliseconds since the epoch
+     */
+    public long getFetchTime() {
+        return fetchTime;
+    }
+
+    /**
+     * Returns the charset of the response
+     *
+     * @return charset name, or null to let Jsoup detect it
+     */
+    public String getCharset() {
+        return charset;
+    }
+
+    /**
+     * Decompresses the body of the page
+     *
+     * @return the body as it was received
+     * @throws IOException when the stored body is corrupt
+     */
+    public byte[] getBody() throws IOException {
+        byte[] body = new byte[bodyLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressedBody);
+            int length = 0;
+            while (length < bodyLength && !inflater.finished()) {
+                int inflated = inflater.inflate(body, length, bodyLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != bodyLength) {
+                throw new IOException("Archived body of " + url + " is truncated");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Archived body of " + url + " is corrupt: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Archived body of " + url + " does not match its checksum");
+        }
+        return body;
+    }
+
+    /**
+     * Parses the body the same way the fetch engines parse a fetched page
+     *
+     * @return the document
+     * @throws IOException when the stored body is corrupt
+     */
+    public Document parse() throws IOException {
+        return Jsoup.parse(new ByteArrayInputStream(getBody()), charset, url);
+    }
+}
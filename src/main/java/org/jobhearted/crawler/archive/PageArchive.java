@@ -0,0 +1,342 @@
+package org.jobhearted.crawler.archive;
+
+import org.jobhearted.crawler.processing.UrlFingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Append-only archive of the raw bodies of fetched pages, so the pages can be processed again without fetching them.
+ * The archive is a directory of segment files to which compressed pages are only appended. A page fetched again is
+ * appended as well, the in-memory index keyed by the fingerprint of the url points to the latest version. Sealed
+ * segments have an index file, so opening an archive only has to scan the segment that was still open.
+ * <p/>
+ * Pages are compressed and written in the background on a small pool of threads shared by all archives, so the crawl
+ * thread never waits for the disk. When the writers fall behind by more than MAX_PENDING pages, new pages are dropped
+ * instead of filling up the memory. Store only takes the lock of that count, the writers append under a lock of their
+ * own, and the writer threads do not keep the JVM alive. Reading is done through memory mapped segments and is safe
+ * from any thread, also while pages are being written; scan reads the segments from start to end, at the speed of the
+ * disk.
+ */
+public class PageArchive {
+    static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+    static final int MAX_PENDING = 64;
+    private static final int WRITER_THREADS = 2;
+    private static final int SEGMENT_SHIFT = 40;
+    private static final long OFFSET_MASK = (1L << SEGMENT_SHIFT) - 1;
+    private static final ExecutorService WRITER = Executors.newFixedThreadPool(WRITER_THREADS, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "page-archive-writer-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private static Logger logger = LoggerFactory.getLogger(PageArchive.class);
+
+    private final File directory;
+    // Guards pending and dropped, never held while writing to the disk
+    private final Object pendingLock = new Object();
+    // Guards the open segment and its index, held by the writer threads while they append
+    private final Object writeLock = new Object();
+    private final List<Segment> segments = new CopyOnWriteArrayList<Segment>();
+    private final Map<Long, Long> index = new ConcurrentHashMap<Long, Long>();
+    private final Map<Long, Long> openSegmentIndex = new LinkedHashMap<Long, Long>();
+    private Segment openSegment;
+    private int pending;
+    private long dropped;
+
+    /**
+     * Opens the archive in the directory, creating it when it does not exist yet
+     *
+     * @param directory directory of the archive
+     * @return the archive
+     * @throws IOException when the directory could not be created or the segments could not be read
+     */
+    public static PageArchive open(File directory) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create the archive directory " + directory.getAbsolutePath());
+        }
+        PageArchive archive = new PageArchive(directory);
+        archive.load();
+        return archive;
+    }
+
+    /**
+     * Creates the archive, load reads its segments
+     *
+     * @param directory directory of the archive
+     */
+    private PageArchive(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Reads the indexes of the segments in the directory, in the order they were written
+     */
+    private void load() throws IOException {
+        List<Integer> numbers = new ArrayList<Integer>();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                int number = Segment.numberOf(name);
+                if (number >= 0) {
+                    numbers.add(number);
+                }
+            }
+        }
+        Collections.sort(numbers);
+
+        for (int number : numbers) {
+            Segment segment = new Segment(directory, number);
+            Map<Long, Long> segmentIndex = segment.readIndex();
+            for (Map.Entry<Long, Long> entry : segmentIndex.entrySet()) {
+                index.put(entry.getKey(), locationOf(segment.getNumber(), entry.getValue()));
+            }
+            segments.add(segment);
+            if (!segment.isSealed()) {
+                // Only the last segment can still be open, it is appended to
+                openSegment = segment;
+                openSegmentIndex.putAll(segmentIndex);
+            }
+        }
+        logger.info("Opened page archive {} with {} pages in {} segments",
+                new Object[]{directory, index.size(), segments.size()});
+    }
+
+    /**
+     * Stores the page in the background. The body is compressed and appended by a writer thread, the page can be read
+     * once that is done.
+     *
+     * @param url       url of the page
+     * @param charset   charset of the response, null when the server did not give one
+     * @param body      the raw body of the response
+     * @param fetchTime time the page was fetched in milliseconds since the epoch
+     */
+    public void store(final String url, final String charset, final byte[] body, final long fetchTime) {
+        synchronized (pendingLock) {
+            if (pending >= MAX_PENDING) {
+                dropped++;
+                logger.debug("Page archive {} is behind, dropped {}", directory, url);
+                return;
+            }
+            pending++;
+        }
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(url, charset, body, fetchTime);
+                } catch (IOException e) {
+                    logger.warn("Could not archive {}", url, e);
+                } finally {
+                    synchronized (pendingLock) {
+                        pending--;
+                        pendingLock.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Compresses the page and appends it to the open segment, which is sealed when it is full
+     */
+    private void write(String url, String charset, byte[] body, long fetchTime) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        byte[] compressed = compress(body);
+        long fingerprint = UrlFingerprint.of(url);
+
+        synchronized (writeLock) {
+            if (openSegment == null) {
+                int number = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).getNumber() + 1;
+                openSegment = new Segment(directory, number);
+                segments.add(openSegment);
+            }
+            long offset = openSegment.append(fingerprint, url, fetchTime, charset, body.length, (int) crc.getValue(),
+                    compressed);
+            openSegmentIndex.put(fingerprint, offset);
+            index.put(fingerprint, locationOf(openSegment.getNumber(), offset));
+
+            if (openSegment.getLength() >= SEGMENT_SIZE) {
+                openSegment.seal(openSegmentIndex);
+                openSegmentIndex.clear();
+                openSegment = null;
+            }
+        }
+    }
+
+    /**
+     * Waits until the pages stored so far have been written
+     */
+    public void flush() {
+        synchronized (pendingLock) {
+            try {
+                while (pending > 0) {
+                    pendingLock.wait();
+                }
+            } catch (InterruptedException e) {
+                logger.warn("Interrupted while flushing page archive {}", directory, e);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Writes the pages stored so far and closes the file of the open segment. Pages stored later open it again.
+     */
+    public void close() {
+        flush();
+        synchronized (writeLock) {
+            if (openSegment != null) {
+                try {
+                    openSegment.close();
+                } catch (IOException e) {
+                    logger.warn("Could not close page archive {}", directory, e);
+                }
+            }
+        }
+        synchronized (pendingLock) {
+            if (dropped > 0) {
+                logger.info("Page archive {} dropped {} pages while the writers were behind", directory, dropped);
+            }
+        }
+    }
+
+    /**
+     * Returns the latest version of the page of the url
+     *
+     * @param url url of the page
+     * @return the page, or null when it is not in the archive
+     * @throws IOException when the page could not be read
+     */
+    public ArchivedPage get(String url) throws IOException {
+        Long location = index.get(UrlFingerprint.of(url));
+        if (location == null) {
+            return null;
+        }
+        ArchivedPage page = segmentOf(location).read(location & OFFSET_MASK);
+        // Two urls can share a fingerprint, the stored url tells them apart
+        return url.equals(page.getUrl()) ? page : null;
+    }
+
+    /**
+     * Reads the latest version of every page in the order the pages were written. Pages stored after the scan started
+     * are not visited. The bodies are not decompressed, so the visitor can hand that work to other threads.
+     *
+     * @param visitor visitor to call for every page
+     * @throws IOException when a segment could not be read
+     */
+    public void scan(final PageVisitor visitor) throws IOException {
+        List<Segment> snapshot = new ArrayList<Segment>(segments);
+        final Map<Segment, Long> lengths = new HashMap<Segment, Long>();
+        for (Segment segment : snapshot) {
+            lengths.put(segment, segment.getLength());
+        }
+        for (final Segment segment : snapshot) {
+            final long location = locationOf(segment.getNumber(), 0);
+            boolean more = segment.scan(lengths.get(segment), new Segment.RecordVisitor() {
+                @Override
+                public boolean visit(long fingerprint, long offset) throws IOException {
+                    Long latest = index.get(fingerprint);
+                    if (latest == null || latest != (location | offset)) {
+                        // An older version of the page
+                        return true;
+                    }
+                    return visitor.visit(segment.read(offset));
+                }
+            });
+            if (!more) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the amount of pages in the archive, versions of the same page count once
+     *
+     * @return amount of pages
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the directory of the archive
+     *
+     * @return directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the segment a location points into
+     */
+    private Segment segmentOf(long location) throws IOException {
+        int number = (int) (location >>> SEGMENT_SHIFT);
+        for (Segment segment : segments) {
+            if (segment.getNumber() == number) {
+                return segment;
+            }
+        }
+        throw new IOException("Page archive " + directory + " has no segment " + number);
+    }
+
+    /**
+     * Packs the number of the segment and the offset in it into one long, which keeps the index small
+     */
+    private static long locationOf(int segment, long offset) {
+        return ((long) segment << SEGMENT_SHIFT) | offset;
+    }
+
+    /**
+     * Deflates the body
+     */
+    private static byte[] compress(byte[] body) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, body.length / 2)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Visitor of the pages of an archive
+     */
+    public interface PageVisitor {
+
+        /**
+         * Called for every page
+         *
+         * @param page the page
+         * @return whether to continue the scan
+         */
+        boolean visit(ArchivedPage page);
+    }
+}
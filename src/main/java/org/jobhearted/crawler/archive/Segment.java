@@ -0,0 +1,358 @@
+package org.jobhearted.crawler.archive;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One file of the PageArchive. Records are only appended to the last segment of an archive; once it is full it is
+ * sealed, which writes its index file next to it, and never changes again. Segments are read through a memory mapping
+ * of the file, which is mapped again when the segment grew since.
+ * <p/>
+ * Every record consists of a header with the fingerprint, the fetch time, the url, the charset, the length and
+ * CRC-32 of the body, followed by the deflated body. The index file holds the fingerprint and offset of every record,
+ * so opening an archive does not have to read its sealed segments.
+ */
+class Segment {
+    static final String DATA_SUFFIX = ".seg";
+    static final String INDEX_SUFFIX = ".idx";
+    private static final String PREFIX = "segment-";
+    private static final int MAGIC = 0x50414745;
+    private static final int NO_TEXT = -1;
+    private static final int FIXED_HEADER_SIZE = 4 + 8 + 8 + 4 + 4 + 4 + 4 + 4;
+    private static final int WRITE_BUFFER_SIZE = 65536;
+    private static final String CHARSET = "UTF-8";
+
+    private final int number;
+    private final File dataFile;
+    private final File indexFile;
+    private DataOutputStream out;
+    private long length;
+    private MappedByteBuffer mapped;
+
+    /**
+     * Creates the segment of the given number in the directory. The file is only created when the first record is
+     * appended.
+     *
+     * @param directory directory of the archive
+     * @param number    number of the segment, segments are read in the order of their number
+     */
+    Segment(File directory, int number) {
+        this.number = number;
+        this.dataFile = new File(directory, String.format("%s%06d%s", PREFIX, number, DATA_SUFFIX));
+        this.indexFile = new File(directory, String.format("%s%06d%s", PREFIX, number, INDEX_SUFFIX));
+        this.length = dataFile.length();
+    }
+
+    /**
+     * Returns the number of the segment file with the given name
+     *
+     * @param name file name
+     * @return the number, or -1 when it is not the data file of a segment
+     */
+    static int numberOf(String name) {
+        if (!name.startsWith(PREFIX) || !name.endsWith(DATA_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), name.length() - DATA_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the number of the segment
+     *
+     * @return number
+     */
+    int getNumber() {
+        return number;
+    }
+
+    /**
+     * Returns the length of the segment, the offset the next record is appended at
+     *
+     * @return length in bytes
+     */
+    synchronized long getLength() {
+        return length;
+    }
+
+    /**
+     * Checks if the segment has been sealed
+     *
+     * @return whether its index file exists
+     */
+    boolean isSealed() {
+        return indexFile.exists();
+    }
+
+    /**
+     * Reads the fingerprints and offsets of the records. Uses the index file of a sealed segment, an open segment is
+     * scanned. A record that was only partly written when the application stopped is cut off the end of an open
+     * segment.
+     *
+     * @return offset per fingerprint, in the order of the records
+     * @throws IOException when the segment could not be read
+     */
+    synchronized Map<Long, Long> readIndex() throws IOException {
+        Map<Long, Long> index = new LinkedHashMap<Long, Long>();
+        if (isSealed()) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    index.put(in.readLong(), in.readLong());
+                }
+            } finally {
+                in.close();
+            }
+            return index;
+        }
+
+        ByteBuffer buffer = buffer();
+        long offset = 0;
+        long end;
+        while (offset < length && (end = recordEnd(buffer, offset)) >= 0) {
+            index.put(buffer.getLong((int) offset + 4), offset);
+            offset = end;
+        }
+        if (offset < length) {
+            truncate(offset);
+        }
+        return index;
+    }
+
+    /**
+     * Appends a record at the end of the segment and flushes it, so the readers see it
+     *
+     * @param fingerprint    fingerprint of the url
+     * @param url            url of the page
+     * @param fetchTime      time the page was fetched
+     * @param charset        charset of the response, may be null
+     * @param bodyLength     length of the body
+     * @param checksum       CRC-32 of the body
+     * @param compressedBody the deflated body
+     * @return offset of the record
+     * @throws IOException when the record could not be written
+     */
+    synchronized long append(long fingerprint, String url, long fetchTime, String charset, int bodyLength,
+                             int checksum, byte[] compressedBody) throws IOException {
+        if (out == null) {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile, true),
+                    WRITE_BUFFER_SIZE));
+        }
+        byte[] urlBytes = url.getBytes(CHARSET);
+        byte[] charsetBytes = charset != null ? charset.getBytes(CHARSET) : null;
+
+        long offset = length;
+        out.writeInt(MAGIC);
+        out.writeLong(fingerprint);
+        out.writeLong(fetchTime);
+        out.writeInt(urlBytes.length);
+        out.write(urlBytes);
+        out.writeInt(charsetBytes != null ? charsetBytes.length : NO_TEXT);
+        if (charsetBytes != null) {
+            out.write(charsetBytes);
+        }
+        out.writeInt(bodyLength);
+        out.writeInt(checksum);
+        out.writeInt(compressedBody.length);
+        out.write(compressedBody);
+        out.flush();
+
+        length += FIXED_HEADER_SIZE + urlBytes.length + (charsetBytes != null ? charsetBytes.length : 0)
+                + compressedBody.length;
+        return offset;
+    }
+
+    /**
+     * Seals the segment: closes it for writing and writes the index file
+     *
+     * @param index offset per fingerprint of the records in this segment
+     * @throws IOException when the index could not be written
+     */
+    synchronized void seal(Map<Long, Long> index) throws IOException {
+        close();
+        // Written under another name first, a half written index would be taken for a sealed segment
+        File temporary = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            indexOut.writeInt(index.size());
+            for (Map.Entry<Long, Long> entry : index.entrySet()) {
+                indexOut.writeLong(entry.getKey());
+                indexOut.writeLong(entry.getValue());
+            }
+        } finally {
+            indexOut.close();
+        }
+        if (!temporary.renameTo(indexFile)) {
+            throw new IOException("Could not create index file " + indexFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Reads the record at the offset
+     *
+     * @param offset offset of the record
+     * @return the page
+     * @throws IOException when there is no valid record at the offset
+     */
+    ArchivedPage read(long offset) throws IOException {
+        ByteBuffer buffer;
+        synchronized (this) {
+            if (offset >= length) {
+                throw new IOException("No record at " + offset + " in " + dataFile.getName());
+            }
+            buffer = buffer();
+        }
+        if (recordEnd(buffer, offset) < 0) {
+            throw new IOException("Corrupt record at " + offset + " in " + dataFile.getName());
+        }
+        buffer.position((int) offset + 4);
+        long fingerprint = buffer.getLong();
+        long fetchTime = buffer.getLong();
+        String url = readText(buffer);
+        String charset = readText(buffer);
+        int bodyLength = buffer.getInt();
+        int checksum = buffer.getInt();
+        byte[] compressedBody = new byte[buffer.getInt()];
+        buffer.get(compressedBody);
+        return new ArchivedPage(url, fingerprint, fetchTime, charset, bodyLength, checksum, compressedBody);
+    }
+
+    /**
+     * Visits the records in the order they were written, up to the given length
+     *
+     * @param end     length of the segment to read up to
+     * @param visitor visitor to call with the fingerprint and offset of every record
+     * @return whether the visitor wants to continue with the next segment
+     * @throws IOException when the segment could not be read
+     */
+    boolean scan(long end, RecordVisitor visitor) throws IOException {
+        ByteBuffer buffer;
+        synchronized (this) {
+            buffer = buffer();
+        }
+        long offset = 0;
+        long next;
+        while (offset < end && (next = recordEnd(buffer, offset)) >= 0) {
+            if (!visitor.visit(buffer.getLong((int) offset + 4), offset)) {
+                return false;
+            }
+            offset = next;
+        }
+        return true;
+    }
+
+    /**
+     * Closes the segment for writing, it can still be read
+     *
+     * @throws IOException when the last records could not be written
+     */
+    synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Returns a buffer over the whole segment, mapping the file again when it grew since it was mapped. Every caller
+     * gets its own view, so readers on several threads do not share a position.
+     */
+    private ByteBuffer buffer() throws IOException {
+        if (mapped == null || mapped.capacity() < length) {
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Segment " + dataFile.getName() + " is too large to map");
+            }
+            RandomAccessFile file = new RandomAccessFile(dataFile, "r");
+            try {
+                // The mapping stays valid after the file is closed
+                mapped = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            } finally {
+                file.close();
+            }
+        }
+        return mapped.duplicate();
+    }
+
+    /**
+     * Cuts the segment off at the given length
+     */
+    private void truncate(long newLength) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(dataFile, "rw");
+        try {
+            file.setLength(newLength);
+        } finally {
+            file.close();
+        }
+        length = newLength;
+        mapped = null;
+    }
+
+    /**
+     * Checks the record at the offset and returns where it ends
+     *
+     * @return offset of the next record, or -1 when the record is corrupt or not completely written
+     */
+    private static long recordEnd(ByteBuffer buffer, long offset) {
+        long limit = buffer.limit();
+        if (offset + FIXED_HEADER_SIZE > limit || buffer.getInt((int) offset) != MAGIC) {
+            return -1;
+        }
+        long position = offset + 4 + 8 + 8;
+        int urlLength = buffer.getInt((int) position);
+        if (urlLength < 0) {
+            return -1;
+        }
+        position += 4 + urlLength;
+        if (position + 4 > limit) {
+            return -1;
+        }
+        int charsetLength = buffer.getInt((int) position);
+        position += 4 + Math.max(0, charsetLength);
+        if (position + 12 > limit) {
+            return -1;
+        }
+        int compressedLength = buffer.getInt((int) position + 8);
+        if (compressedLength < 0) {
+            return -1;
+        }
+        position += 12 + compressedLength;
+        return position <= limit ? position : -1;
+    }
+
+    /**
+     * Reads a length prefixed text at the position of the buffer
+     */
+    private static String readText(ByteBuffer buffer) throws UnsupportedEncodingException {
+        int textLength = buffer.getInt();
+        if (textLength == NO_TEXT) {
+            return null;
+        }
+        byte[] bytes = new byte[textLength];
+        buffer.get(bytes);
+        return new String(bytes, CHARSET);
+    }
+
+    /**
+     * Visitor of the records of a segment
+     */
+    interface RecordVisitor {
+
+        /**
+         * Called for every record
+         *
+         * @param fingerprint fingerprint of the url of the record
+         * @param offset      offset of the record
+         * @return whether to continue
+         * @throws IOException when the visitor failed to read the record
+         */
+        boolean visit(long fingerprint, long offset) throws IOException;
+    }
+}
@@ -0,0 +1,18 @@
+package org.jobhearted.crawler.fetching;
+
+import java.io.IOException;
+
+/**
+ * Thrown while reading a body which turns out larger than the maximum body size
+ */
+class BodyTooLargeException extends IOException {
+
+    /**
+     * Creates the exception
+     *
+     * @param maxBytes maximum size of the body
+     */
+    BodyTooLargeException(long maxBytes) {
+        super("Body larger than " + maxBytes + " bytes");
+    }
+}
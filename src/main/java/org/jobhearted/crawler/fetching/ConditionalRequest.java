@@ -0,0 +1,73 @@
+package org.jobhearted.crawler.fetching;
+
+import org.jobhearted.crawler.processing.objects.Flag;
+import org.jobhearted.crawler.processing.objects.Url;
+import org.jsoup.Connection;
+
+import java.net.HttpURLConnection;
+
+/**
+ * The cache validators sent with the recrawl of an url, so the server can answer 304 Not Modified instead of sending
+ * the page again.
+ */
+class ConditionalRequest {
+    static final int NOT_MODIFIED = 304;
+    static final String ETAG = "ETag";
+    static final String LAST_MODIFIED = "Last-Modified";
+    private static final String IF_NONE_MATCH = "If-None-Match";
+    private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+    private final String etag;
+    private final String lastModified;
+
+    /**
+     * Creates the request
+     *
+     * @param etag         ETag of the last response, may be null
+     * @param lastModified Last-Modified date of the last response, may be null
+     */
+    ConditionalRequest(String etag, String lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Takes the validators of an url which is being recrawled
+     *
+     * @param url Url to fetch
+     * @return the conditional request, or null if the url is not recrawled or has no validators
+     */
+    static ConditionalRequest of(Url url) {
+        if (url.getFlag() != Flag.RECRAWL || (url.getEtag() == null && url.getLastModified() == null)) {
+            return null;
+        }
+        return new ConditionalRequest(url.getEtag(), url.getLastModified());
+    }
+
+    /**
+     * Adds the conditional headers to a Jsoup connection
+     *
+     * @param connection connection to add them to
+     */
+    void addHeaders(Connection connection) {
+        if (etag != null) {
+            connection.header(IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            connection.header(IF_MODIFIED_SINCE, lastModified);
+        }
+    }
+
+    /**
+     * Adds the conditional headers to a http connection
+     *
+     * @param connection connection to add them to
+     */
+    void addHeaders(HttpURLConnection connection) {
+        if (etag != null) {
+            connection.setRequestProperty(IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            connection.setRequestProperty(IF_MODIFIED_SINCE, lastModified);
+        }
+    }
+}
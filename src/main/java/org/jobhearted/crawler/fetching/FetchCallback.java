@@ -0,0 +1,16 @@
+package org.jobhearted.crawler.fetching;
+
+/**
+ * Receives the results of a FetchEngine
+ *
+ * @see FetchEngine
+ */
+public interface FetchCallback {
+
+    /**
+     * Called when a fetch is done, whether it succeeded or not
+     *
+     * @param result result of the fetch
+     */
+    void completed(FetchResult result);
+}
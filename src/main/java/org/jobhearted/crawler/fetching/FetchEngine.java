@@ -0,0 +1,30 @@
+package org.jobhearted.crawler.fetching;
+
+import org.jobhearted.crawler.processing.objects.Url;
+
+/**
+ * Fetches the documents of urls for a crawler. An engine may have several fetches in flight at once, each completed
+ * fetch is handed to the callback given with it, possibly on another thread.
+ *
+ * @see JsoupFetchEngine
+ * @see HttpFetchEngine
+ */
+public interface FetchEngine {
+
+    /**
+     * Starts fetching the url. Only the url string and, for a recrawl, the cache validators are read from the Url, on
+     * the calling thread. The Url itself is handed back untouched in the result. A recrawl is a conditional request,
+     * which results in NOT_MODIFIED when the server has no newer version.
+     *
+     * @param url      Url to fetch
+     * @param callback callback to hand the result to
+     */
+    void fetch(Url url, FetchCallback callback);
+
+    /**
+     * Returns the maximum amount of fetches this engine should have in flight at once
+     *
+     * @return maximum in-flight fetches
+     */
+    int getMaxInFlight();
+}
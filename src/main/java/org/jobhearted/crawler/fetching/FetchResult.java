@@ -0,0 +1,276 @@
+package org.jobhearted.crawler.fetching;
+
+import org.jobhearted.crawler.processing.objects.Url;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Result of fetching an url: either a parsed document, a document that has not been modified since the last visit, an
+ * url that turned out to be a file, or a failure. A document comes with the cache validators of the response. When the
+ * server answered, the result also tells how: the status code, the response time and the Retry-After time, so the
+ * crawler can adapt its crawl delay to the server. A document also keeps the raw body it was parsed from, for the page
+ * archive.
+ * <p/>
+ * The fetch engines leave the parsing of a document to the parse stage of the page pipeline, so their threads only
+ * wait for the network. Such a result holds the raw body until parse is called.
+ */
+public class FetchResult {
+    public static final int NO_STATUS = 0;
+    public static final long NO_RETRY_AFTER = -1;
+    private final Url url;
+    private final Outcome outcome;
+    private Document document;
+    private String location;
+    private final IOException error;
+    private String etag;
+    private String lastModified;
+    private byte[] body;
+    private String charset;
+    private int status = NO_STATUS;
+    private long responseTime;
+    private long retryAfter = NO_RETRY_AFTER;
+
+    /**
+     * The possible outcomes of a fetch
+     */
+    public enum Outcome {
+        DOCUMENT,
+        NOT_MODIFIED,
+        FILE,
+        FAILED
+    }
+
+    /**
+     * Creates the result
+     *
+     * @param url      Url that was fetched
+     * @param outcome  outcome of the fetch
+     * @param document the document, only for the DOCUMENT outcome
+     * @param error    the error, only for the FAILED outcome
+     */
+    private FetchResult(Url url, Outcome outcome, Document document, IOException error) {
+        this.url = url;
+        this.outcome = outcome;
+        this.document = document;
+        this.error = error;
+    }
+
+    /**
+     * Creates the result of a fetched document
+     *
+     * @param url      Url that was fetched
+     * @param document parsed document
+     * @return the result
+     */
+    public static FetchResult document(Url url, Document document) {
+        return document(url, document, null, null);
+    }
+
+    /**
+     * Creates the result of a fetched document with the cache validators of the response
+     *
+     * @param url          Url that was fetched
+     * @param document     parsed document
+     * @param etag         value of the ETag header, may be null
+     * @param lastModified value of the Last-Modified header, may be null
+     * @return the result
+     */
+    public static FetchResult document(Url url, Document document, String etag, String lastModified) {
+        FetchResult result = new FetchResult(url, Outcome.DOCUMENT, document, null);
+        result.etag = etag;
+        result.lastModified = lastModified;
+        return result;
+    }
+
+    /**
+     * Creates the result of a fetched document which has not been parsed yet
+     *
+     * @param url          Url that was fetched
+     * @param body         the body as it was received
+     * @param charset      charset of the response, null to let Jsoup detect it
+     * @param location     url the body came from after redirects, the base of its relative links
+     * @param etag         value of the ETag header, may be null
+     * @param lastModified value of the Last-Modified header, may be null
+     * @return the result
+     */
+    public static FetchResult unparsed(Url url, byte[] body, String charset, String location, String etag,
+                                       String lastModified) {
+        FetchResult result = document(url, null, etag, lastModified).withBody(body, charset);
+        result.location = location;
+        return result;
+    }
+
+    /**
+     * Creates the result of a conditional fetch the server answered with 304 Not Modified
+     *
+     * @param url Url that was fetched
+     * @return the result
+     */
+    public static FetchResult notModified(Url url) {
+        return new FetchResult(url, Outcome.NOT_MODIFIED, null, null);
+    }
+
+    /**
+     * Creates the result of an url which is not a html document
+     *
+     * @param url Url that was fetched
+     * @return the result
+     */
+    public static FetchResult file(Url url) {
+        return new FetchResult(url, Outcome.FILE, null, null);
+    }
+
+    /**
+     * Creates the result of a failed fetch
+     *
+     * @param url   Url that was fetched
+     * @param error cause of the failure
+     * @return the result
+     */
+    public static FetchResult failed(Url url, IOException error) {
+        return new FetchResult(url, Outcome.FAILED, null, error);
+    }
+
+    /**
+     * Returns the url that was fetched
+     *
+     * @return Url
+     */
+    public Url getUrl() {
+        return url;
+    }
+
+    /**
+     * Returns the outcome of the fetch
+     *
+     * @return Outcome
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Returns the fetched document
+     *
+     * @return document, or null if the outcome is not DOCUMENT or it has not been parsed yet
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * Parses the raw body into the document, when that has not been done yet
+     *
+     * @return the document, or null if the outcome is not DOCUMENT
+     * @throws IOException when the body could not be read
+     */
+    public Document parse() throws IOException {
+        if (document == null && body != null) {
+            document = Jsoup.parse(new ByteArrayInputStream(body), charset, location);
+        }
+        return document;
+    }
+
+    /**
+     * Adds how the server answered to the result
+     *
+     * @param status       status code of the response
+     * @param responseTime time in milliseconds until the response came in
+     * @param retryAfter   time in milliseconds the server asked to wait with the next request, or NO_RETRY_AFTER
+     * @return this result
+     */
+    FetchResult withResponse(int status, long responseTime, long retryAfter) {
+        this.status = status;
+        this.responseTime = responseTime;
+        this.retryAfter = retryAfter;
+        return this;
+    }
+
+    /**
+     * Adds the raw body the document was parsed from to the result
+     *
+     * @param body    the body as it was received
+     * @param charset charset of the response, null when the server did not give one
+     * @return this result
+     */
+    FetchResult withBody(byte[] body, String charset) {
+        this.body = body;
+        this.charset = charset;
+        return this;
+    }
+
+    /**
+     * Returns the raw body the document was parsed from
+     *
+     * @return the body, or null if the outcome is not DOCUMENT or the engine did not keep it
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Returns the charset of the response the document was parsed with
+     *
+     * @return charset name, or null when the server did not give one
+     */
+    public String getCharset() {
+        return charset;
+    }
+
+    /**
+     * Returns the status code of the response
+     *
+     * @return status code, or NO_STATUS when the server did not answer
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the time until the response came in
+     *
+     * @return response time in milliseconds, 0 when the server did not answer
+     */
+    public long getResponseTime() {
+        return responseTime;
+    }
+
+    /**
+     * Returns the time the server asked to wait with the next request, from its Retry-After header
+     *
+     * @return time in milliseconds, or NO_RETRY_AFTER when the server did not ask
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Returns the ETag header of the response
+     *
+     * @return the ETag, or null if there was none
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * Returns the Last-Modified header of the response
+     *
+     * @return the Last-Modified date, or null if there was none
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Returns the cause of a failed fetch
+     *
+     * @return error, or null if the outcome is not FAILED
+     */
+    public IOException getError() {
+        return error;
+    }
+}
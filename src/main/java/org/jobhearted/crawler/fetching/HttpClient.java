@@ -0,0 +1,279 @@
+package org.jobhearted.crawler.fetching;
+
+import org.jobhearted.crawler.management.Settings;
+import org.jobhearted.crawler.processing.RobotsRules;
+import org.jobhearted.crawler.statistics.Metric;
+import org.jobhearted.crawler.statistics.StatisticsTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.Security;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The http layer shared by the fetches of all crawlers. Every crawler hits a single host, so setting up a connection
+ * costs more than the small pages it fetches. The client keeps connections alive and reuses them per host, asks for
+ * compressed responses and has host names cached. Requests identify the crawler with the user agent its robots.txt
+ * rules are read for.
+ * <p/>
+ * The keep-alive pool itself is the one of HttpURLConnection, which configure sizes per host. A connection goes back to
+ * the pool when its response has been read to the end and the server did not close it. HttpURLConnection does not tell
+ * whether it reused a connection, so the client keeps the same bookkeeping per host to report the reuse rate, next to
+ * the bytes compression saved.
+ */
+public class HttpClient {
+    static final int TIMEOUT = 3000;
+    // Time HttpURLConnection keeps an idle connection when the server does not say
+    private static final long DEFAULT_KEEP_ALIVE = 5000;
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final String KEEP_ALIVE_TIMEOUT = "timeout=";
+    private static final String DEFAULT_CHARSET = "UTF-8";
+    private static final String HTTP_DATE = "EEE, dd MMM yyyy HH:mm:ss zzz";
+    private static final HttpClient SHARED = new HttpClient();
+    private static Logger logger = LoggerFactory.getLogger(HttpClient.class);
+
+    private final Map<String, LinkedList<Long>> idleConnections = new HashMap<String, LinkedList<Long>>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong reusedConnections = new AtomicLong();
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private final AtomicLong decodedBytes = new AtomicLong();
+    private volatile int keepAliveConnections = 5;
+
+    /**
+     * Returns the client shared by all fetch engines
+     *
+     * @return the shared client
+     */
+    public static HttpClient getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Applies the connection settings to the http stack of the JVM. Host names are cached by the JVM, which reads the
+     * cache time only once, so this is called at startup before any host is resolved.
+     */
+    public static void configure() {
+        int connections = Math.max(1, Settings.KEEP_ALIVE_CONNECTIONS);
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", Integer.toString(connections));
+        Security.setProperty("networkaddress.cache.ttl", Integer.toString(Math.max(0, Settings.DNS_CACHE_TIME / 1000)));
+        SHARED.keepAliveConnections = connections;
+        logger.info("Keeping {} connections alive per host, caching host names for {} ms", connections,
+                Settings.DNS_CACHE_TIME);
+    }
+
+    /**
+     * Sends a GET request and returns the response once its headers are in
+     *
+     * @param address     url string to request
+     * @param conditional validators to send, null for an unconditional request
+     * @return the response, which must be closed
+     * @throws IOException when the request failed
+     */
+    HttpResponse get(String address, ConditionalRequest conditional) throws IOException {
+        URL url = new URL(address);
+        String host = url.getProtocol() + "://" + url.getHost().toLowerCase(Locale.ENGLISH) + ":" + url.getPort();
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        connection.setInstanceFollowRedirects(true);
+        connection.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+        connection.setRequestProperty("User-Agent", RobotsRules.USER_AGENT);
+        if (conditional != null) {
+            conditional.addHeaders(connection);
+        }
+
+        requests.incrementAndGet();
+        if (takeIdleConnection(host)) {
+            reusedConnections.incrementAndGet();
+        }
+        return new HttpResponse(this, host, connection, connection.getResponseCode());
+    }
+
+    /**
+     * Fetches a small text file, like a robots.txt
+     *
+     * @param address  url string to request
+     * @param maxBytes maximum amount of bytes to read, the rest is ignored
+     * @return the text, or null when the server answered with a client error like 404
+     * @throws IOException when the request failed or the server answered with a server error
+     */
+    public String getText(String address, int maxBytes) throws IOException {
+        HttpResponse response = get(address, null);
+        try {
+            int status = response.getStatus();
+            if (status >= 500) {
+                throw new IOException("HTTP error fetching " + address + ", status " + status);
+            }
+            if (status >= 400) {
+                response.discard();
+                return null;
+            }
+            String charset = HttpFetchEngine.charsetOf(response.getContentType());
+            InputStream in = response.getBody();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read = in.read(buffer);
+            while (read >= 0 && out.size() < maxBytes) {
+                out.write(buffer, 0, Math.min(read, maxBytes - out.size()));
+                read = in.read(buffer);
+            }
+            return out.toString(charset != null ? charset : DEFAULT_CHARSET);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Opens the body of an url as a stream, for files too large to read at once, like a sitemap
+     *
+     * @param address url string to request
+     * @return the decompressed body, closing it hands the connection back
+     * @throws IOException when the request failed or the server answered with an error
+     */
+    public InputStream openStream(String address) throws IOException {
+        final HttpResponse response = get(address, null);
+        if (response.getStatus() >= 400) {
+            response.discard();
+            throw new IOException("HTTP error fetching " + address + ", status " + response.getStatus());
+        }
+        return new FilterInputStream(response.getBody()) {
+            @Override
+            public void close() {
+                response.close();
+            }
+        };
+    }
+
+    /**
+     * Called by a closed response. Returns its connection to the pool of the host when it can be reused, and updates
+     * the metrics.
+     *
+     * @param host        host the response came from
+     * @param connection  connection of the response
+     * @param reusable    whether the response was read to the end
+     * @param transferred bytes of body that came over the wire
+     * @param decoded     bytes of body after decompression
+     */
+    void released(String host, HttpURLConnection connection, boolean reusable, long transferred, long decoded) {
+        if (reusable && !"close".equalsIgnoreCase(connection.getHeaderField("Connection"))) {
+            releaseIdleConnection(host, keepAliveOf(connection.getHeaderField("Keep-Alive")));
+        }
+        long totalTransferred = transferredBytes.addAndGet(transferred);
+        long totalDecoded = decodedBytes.addAndGet(decoded);
+        StatisticsTracker.updateMetric(Metric.CONNECTION_REUSE, getReuseRate());
+        StatisticsTracker.updateMetric(Metric.BYTES_SAVED, totalDecoded - totalTransferred);
+    }
+
+    /**
+     * Returns the percentage of requests that went over a connection kept alive from an earlier request
+     *
+     * @return reuse rate from 0 to 100
+     */
+    public double getReuseRate() {
+        long total = requests.get();
+        return total == 0 ? 0 : reusedConnections.get() * 100.0 / total;
+    }
+
+    /**
+     * Takes an idle connection of the host from the bookkeeping, the most recent first like HttpURLConnection does
+     *
+     * @param host host to take a connection of
+     * @return whether there was one which had not expired yet
+     */
+    private synchronized boolean takeIdleConnection(String host) {
+        LinkedList<Long> idle = idleConnections.get(host);
+        if (idle == null || idle.isEmpty()) {
+            return false;
+        }
+        if (idle.removeLast() > System.currentTimeMillis()) {
+            return true;
+        }
+        // The older connections expired before this one
+        idle.clear();
+        return false;
+    }
+
+    /**
+     * Adds an idle connection to the bookkeeping of the host, unless the pool of the host is full
+     *
+     * @param host      host the connection belongs to
+     * @param keepAlive time the server keeps the connection open
+     */
+    private synchronized void releaseIdleConnection(String host, long keepAlive) {
+        LinkedList<Long> idle = idleConnections.get(host);
+        if (idle == null) {
+            idle = new LinkedList<Long>();
+            idleConnections.put(host, idle);
+        }
+        if (idle.size() < keepAliveConnections) {
+            idle.addLast(System.currentTimeMillis() + keepAlive);
+        }
+    }
+
+    /**
+     * Reads the time to wait from a Retry-After header, which is either a number of seconds or a http date
+     *
+     * @param header value of the Retry-After header, may be null
+     * @param now    current time in milliseconds
+     * @return time to wait in milliseconds, or FetchResult.NO_RETRY_AFTER when there is no valid header
+     */
+    static long retryAfterOf(String header, long now) {
+        if (header == null) {
+            return FetchResult.NO_RETRY_AFTER;
+        }
+        String value = header.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // not a number of seconds, so it should be a date
+        }
+        SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0, format.parse(value).getTime() - now);
+        } catch (ParseException e) {
+            return FetchResult.NO_RETRY_AFTER;
+        }
+    }
+
+    /**
+     * Reads the time the server keeps a connection open from its Keep-Alive header, like "timeout=5, max=100"
+     *
+     * @param header value of the Keep-Alive header, may be null
+     * @return keep-alive time in milliseconds
+     */
+    static long keepAliveOf(String header) {
+        if (header == null) {
+            return DEFAULT_KEEP_ALIVE;
+        }
+        int start = header.toLowerCase(Locale.ENGLISH).indexOf(KEEP_ALIVE_TIMEOUT);
+        if (start < 0) {
+            return DEFAULT_KEEP_ALIVE;
+        }
+        String timeout = header.substring(start + KEEP_ALIVE_TIMEOUT.length());
+        int end = timeout.indexOf(',');
+        if (end >= 0) {
+            timeout = timeout.substring(0, end);
+        }
+        try {
+            return Long.parseLong(timeout.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            return DEFAULT_KEEP_ALIVE;
+        }
+    }
+}
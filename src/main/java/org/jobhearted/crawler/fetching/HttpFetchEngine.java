@@ -0,0 +1,217 @@
+package org.jobhearted.crawler.fetching;
+
+import org.jobhearted.crawler.management.Settings;
+import org.jobhearted.crawler.processing.objects.Url;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fetch engine on the shared HttpClient which fetches in the background, so a crawler can have several requests in
+ * flight and keeps its own thread free for processing the documents that came in. The fetches of all crawlers run on
+ * one shared executor, whose threads only exist while there are fetches in flight. Connections are kept alive and
+ * responses compressed by the HttpClient.
+ * <p/>
+ * Like Jsoup.connect, only text and xml responses are documents, other content types are reported as a file and a http
+ * error status as a failure. A document is handed back unparsed, the page pipeline parses it. The content type and
+ * length are checked on the headers, so the transfer of a file or a body larger than the maximum body size setting is
+ * aborted before its body is downloaded.
+ */
+public class HttpFetchEngine implements FetchEngine {
+    private static final ExecutorService SHARED_EXECUTOR = Executors.newCachedThreadPool();
+    private static final String CHARSET_PARAMETER = "charset=";
+    private static final int READ_BUFFER_SIZE = 8192;
+    private final int maxInFlight;
+    private final ExecutorService executor;
+    private final HttpClient client = HttpClient.getShared();
+
+    /**
+     * Creates an engine on the shared executor
+     *
+     * @param maxInFlight maximum amount of fetches in flight at once
+     */
+    public HttpFetchEngine(int maxInFlight) {
+        this(maxInFlight, SHARED_EXECUTOR);
+    }
+
+    /**
+     * Creates an engine which fetches on the given executor
+     *
+     * @param maxInFlight maximum amount of fetches in flight at once
+     * @param executor    executor to run the fetches on
+     */
+    public HttpFetchEngine(int maxInFlight, ExecutorService executor) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.executor = executor;
+    }
+
+    /**
+     * Starts fetching the url in the background, the callback is called from the thread of the executor
+     *
+     * @param url      Url to fetch
+     * @param callback callback to hand the result to
+     */
+    @Override
+    public void fetch(Url url, FetchCallback callback) {
+        fetch(url, url.getUrl(), ConditionalRequest.of(url), callback);
+    }
+
+    /**
+     * Starts the actual request in the background. The callback is always called, also when the request failed on
+     * something else than an IOException, like an url that is not http, so the crawler does not keep waiting for it.
+     *
+     * @param url         Url to put in the result
+     * @param address     url string to request
+     * @param conditional validators to send, null for an unconditional request
+     * @param callback    callback to hand the result to
+     */
+    void fetch(final Url url, final String address, final ConditionalRequest conditional,
+               final FetchCallback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                FetchResult result;
+                try {
+                    result = fetch(url, address, conditional);
+                } catch (RuntimeException e) {
+                    result = FetchResult.failed(url, new IOException("Could not fetch " + address, e));
+                }
+                callback.completed(result);
+            }
+        });
+    }
+
+    /**
+     * Returns the maximum amount of fetches in flight at once
+     *
+     * @return maximum in-flight fetches
+     */
+    @Override
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Does the actual request
+     *
+     * @param url         Url to put in the result
+     * @param address     url string to request
+     * @param conditional validators to send, null for an unconditional request
+     * @return the result
+     */
+    private FetchResult fetch(Url url, String address, ConditionalRequest conditional) {
+        long start = System.currentTimeMillis();
+        try {
+            HttpResponse response = client.get(address, conditional);
+            long responseTime = System.currentTimeMillis() - start;
+            long retryAfter = HttpClient.retryAfterOf(response.getHeader("Retry-After"), System.currentTimeMillis());
+            try {
+                return fetch(url, response).withResponse(response.getStatus(), responseTime, retryAfter);
+            } finally {
+                response.close();
+            }
+        } catch (IOException e) {
+            return FetchResult.failed(url, e);
+        }
+    }
+
+    /**
+     * Turns the response into the result
+     *
+     * @param url      Url to put in the result
+     * @param response response of the request
+     * @return the result
+     * @throws IOException when the body could not be read
+     */
+    private static FetchResult fetch(Url url, HttpResponse response) throws IOException {
+        int status = response.getStatus();
+        if (status == ConditionalRequest.NOT_MODIFIED) {
+            response.discard();
+            return FetchResult.notModified(url);
+        }
+        if (status >= 400) {
+            response.discard();
+            return FetchResult.failed(url, new IOException("HTTP error fetching URL, status " + status));
+        }
+
+        // Decided on the headers, the body of a file is never transferred
+        String contentType = response.getContentType();
+        if (!isDocument(contentType) || response.getContentLength() > Settings.MAX_BODY_SIZE) {
+            response.abort();
+            return FetchResult.file(url);
+        }
+        try {
+            // Read whole, the raw body is parsed by the page pipeline and kept for the page archive
+            byte[] body = readFully(response.getBody(Settings.MAX_BODY_SIZE));
+            return FetchResult.unparsed(url, body, charsetOf(contentType), response.getUrl(),
+                    response.getHeader(ConditionalRequest.ETAG), response.getHeader(ConditionalRequest.LAST_MODIFIED));
+        } catch (BodyTooLargeException e) {
+            // Without a Content-Length the size only shows while reading
+            response.abort();
+            return FetchResult.file(url);
+        }
+    }
+
+    /**
+     * Reads the stream to the end
+     *
+     * @param in stream to read
+     * @return the bytes read
+     * @throws IOException when the stream could not be read
+     */
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(READ_BUFFER_SIZE);
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Checks if the content type is one Jsoup can parse: text or xml
+     *
+     * @param contentType value of the Content-Type header, may be null
+     * @return whether it can be parsed
+     */
+    static boolean isDocument(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        String type = contentType.toLowerCase(Locale.ENGLISH);
+        return type.startsWith("text/") || type.startsWith("application/xml") || type.startsWith("application/xhtml+xml");
+    }
+
+    /**
+     * Returns the charset of the content type
+     *
+     * @param contentType value of the Content-Type header, may be null
+     * @return charset name, or null to let Jsoup detect it when there is none or it is not supported
+     */
+    static String charsetOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int start = contentType.toLowerCase(Locale.ENGLISH).indexOf(CHARSET_PARAMETER);
+        if (start < 0) {
+            return null;
+        }
+        String charset = contentType.substring(start + CHARSET_PARAMETER.length()).trim();
+        int end = charset.indexOf(';');
+        if (end >= 0) {
+            charset = charset.substring(0, end).trim();
+        }
+        charset = charset.replace("\"", "");
+        try {
+            return Charset.isSupported(charset) ? charset : null;
+        } catch (IllegalCharsetNameException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package org.jobhearted.crawler.fetching;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Response of a request of the HttpClient. The body is decompressed according to its Content-Encoding. Closing the
+ * response hands the connection back to the client, which can only reuse it when the body has been read to the end:
+ * the body of a document is parsed completely, the small body of an error or 304 is discarded with discard.
+ */
+class HttpResponse {
+    private static final int DISCARD_LIMIT = 64 * 1024;
+    private final HttpClient client;
+    private final String host;
+    private final HttpURLConnection connection;
+    private final int status;
+    private CountingInputStream transferred;
+    private CountingInputStream body;
+    private boolean closed;
+
+    /**
+     * Creates the response
+     *
+     * @param client     client which sent the request
+     * @param host       host the request went to
+     * @param connection connection of the request
+     * @param status     status code of the response
+     */
+    HttpResponse(HttpClient client, String host, HttpURLConnection connection, int status) {
+        this.client = client;
+        this.host = host;
+        this.connection = connection;
+        this.status = status;
+    }
+
+    /**
+     * Returns the status code of the response
+     *
+     * @return status code
+     */
+    int getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns a header of the response
+     *
+     * @param name name of the header
+     * @return value of the header, or null if there is none
+     */
+    String getHeader(String name) {
+        return connection.getHeaderField(name);
+    }
+
+    /**
+     * Returns the Content-Type of the response
+     *
+     * @return content type, or null if there is none
+     */
+    String getContentType() {
+        return connection.getContentType();
+    }
+
+    /**
+     * Returns the Content-Length of the response, which is the compressed length for a compressed body
+     *
+     * @return length in bytes, or -1 when the server did not say
+     */
+    long getContentLength() {
+        String length = connection.getHeaderField("Content-Length");
+        if (length == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the url the response came from, which differs from the requested one after a redirect
+     *
+     * @return url string
+     */
+    String getUrl() {
+        return connection.getURL().toString();
+    }
+
+    /**
+     * Returns the decompressed body of the response, also for an error status
+     *
+     * @return the body
+     * @throws IOException when the body could not be opened
+     */
+    InputStream getBody() throws IOException {
+        if (body == null) {
+            InputStream raw = status >= HttpURLConnection.HTTP_BAD_REQUEST ? connection.getErrorStream()
+                    : connection.getInputStream();
+            if (raw == null) {
+                raw = new EmptyInputStream();
+            }
+            transferred = new CountingInputStream(raw);
+            body = new CountingInputStream(decode(transferred, connection.getContentEncoding()));
+        }
+        return body;
+    }
+
+    /**
+     * Returns the decompressed body of the response, which throws a BodyTooLargeException when more than the given
+     * amount of bytes is read from it
+     *
+     * @param maxBytes maximum size of the decompressed body
+     * @return the body
+     * @throws IOException when the body could not be opened
+     */
+    InputStream getBody(final long maxBytes) throws IOException {
+        getBody();
+        final CountingInputStream counted = body;
+        return new FilterInputStream(counted) {
+            @Override
+            public int read() throws IOException {
+                int read = super.read();
+                checkSize();
+                return read;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                checkSize();
+                return read;
+            }
+
+            private void checkSize() throws BodyTooLargeException {
+                if (counted.getCount() > maxBytes) {
+                    throw new BodyTooLargeException(maxBytes);
+                }
+            }
+        };
+    }
+
+    /**
+     * Aborts the transfer of the body: the connection is closed instead of read to the end, so a large body costs no
+     * more bandwidth
+     */
+    void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        connection.disconnect();
+        client.released(host, connection, false, transferred != null ? transferred.getCount() : 0,
+                body != null ? body.getCount() : 0);
+    }
+
+    /**
+     * Reads the rest of a small body so the connection can be reused, and closes the response
+     */
+    void discard() {
+        try {
+            InputStream in = getBody();
+            byte[] buffer = new byte[4096];
+            while (body.getCount() < DISCARD_LIMIT && in.read(buffer) >= 0) {
+                // only reading it to the end
+            }
+        } catch (IOException e) {
+            // the connection is not reused
+        }
+        close();
+    }
+
+    /**
+     * Closes the response and hands the connection back to the client
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        boolean reusable = false;
+        try {
+            if (body == null) {
+                getBody();
+            }
+            reusable = body.isAtEnd();
+            body.close();
+        } catch (IOException e) {
+            reusable = false;
+        }
+        client.released(host, connection, reusable, transferred != null ? transferred.getCount() : 0,
+                body != null ? body.getCount() : 0);
+    }
+
+    /**
+     * Wraps the stream in a decompressing stream for the content encoding
+     *
+     * @param in       stream of the body as transferred
+     * @param encoding value of the Content-Encoding header, may be null
+     * @return stream of the decompressed body
+     * @throws IOException when the gzip header could not be read
+     */
+    private static InputStream decode(InputStream in, String encoding) throws IOException {
+        if (encoding == null) {
+            return in;
+        }
+        String type = encoding.trim().toLowerCase(Locale.ENGLISH);
+        if ("gzip".equals(type) || "x-gzip".equals(type)) {
+            return new GZIPInputStream(in);
+        }
+        if ("deflate".equals(type)) {
+            return new InflaterInputStream(in);
+        }
+        return in;
+    }
+
+    /**
+     * Stream counting the bytes read through it and whether its end was reached
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+        private boolean atEnd;
+
+        /**
+         * Wraps the stream
+         *
+         * @param in stream to count
+         */
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read < 0) {
+                atEnd = true;
+            } else {
+                count++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read < 0) {
+                atEnd = true;
+            } else {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        /**
+         * Returns the amount of bytes read
+         *
+         * @return bytes read
+         */
+        long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns whether the end of the stream was reached
+         *
+         * @return true when read to the end
+         */
+        boolean isAtEnd() {
+            return atEnd;
+        }
+    }
+
+    /**
+     * Body of a response which has none
+     */
+    private static class EmptyInputStream extends InputStream {
+        @Override
+        public int read() {
+            return -1;
+        }
+    }
+}
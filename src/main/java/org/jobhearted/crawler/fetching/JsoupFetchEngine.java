@@ -0,0 +1,90 @@
+package org.jobhearted.crawler.fetching;
+
+import org.jobhearted.crawler.management.Settings;
+import org.jobhearted.crawler.processing.RobotsRules;
+import org.jobhearted.crawler.processing.objects.Url;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+
+import java.io.IOException;
+
+/**
+ * Fetch engine using Jsoup.connect. Fetches on the calling thread, one url at a time, so the callback has been called
+ * when fetch returns. This is how the crawler always fetched, and the fallback when the HttpFetchEngine is not used.
+ * Like the HttpFetchEngine it hands a document back unparsed, the page pipeline parses it. Unlike it, the body of a
+ * file is read before its content type is checked, as Jsoup only hands out a response once the body has been read.
+ */
+public class JsoupFetchEngine implements FetchEngine {
+
+    /**
+     * Fetches the url and hands the result to the callback before returning
+     *
+     * @param url      Url to fetch
+     * @param callback callback to hand the result to
+     */
+    @Override
+    public void fetch(Url url, FetchCallback callback) {
+        callback.completed(fetch(url, url.getUrl(), ConditionalRequest.of(url)));
+    }
+
+    /**
+     * Does the actual request. Jsoup is told to hand out every response, the status and the content type are checked
+     * here in the same order as the HttpFetchEngine does, so a 304 is never taken for an error or a file.
+     *
+     * @param url         Url to put in the result
+     * @param address     url string to request
+     * @param conditional validators to send, null for an unconditional request
+     * @return the result
+     */
+    FetchResult fetch(Url url, String address, ConditionalRequest conditional) {
+        long start = System.currentTimeMillis();
+        try {
+            // A body larger than the maximum is cut off
+            Connection connection = Jsoup.connect(address).userAgent(RobotsRules.USER_AGENT)
+                    .maxBodySize(Settings.MAX_BODY_SIZE).ignoreHttpErrors(true).ignoreContentType(true);
+            if (conditional != null) {
+                conditional.addHeaders(connection);
+            }
+            Connection.Response response = connection.execute();
+            long responseTime = System.currentTimeMillis() - start;
+            long retryAfter = HttpClient.retryAfterOf(response.header("Retry-After"), System.currentTimeMillis());
+            return fetch(url, response).withResponse(response.statusCode(), responseTime, retryAfter);
+        } catch (IOException e) {
+            return FetchResult.failed(url, e);
+        }
+    }
+
+    /**
+     * Turns the response into the result
+     *
+     * @param url      Url to put in the result
+     * @param response response of the request
+     * @return the result
+     */
+    private static FetchResult fetch(Url url, Connection.Response response) {
+        int status = response.statusCode();
+        if (status == ConditionalRequest.NOT_MODIFIED) {
+            return FetchResult.notModified(url);
+        }
+        if (status >= 400) {
+            return FetchResult.failed(url, new IOException("HTTP error fetching URL, status " + status));
+        }
+        if (!HttpFetchEngine.isDocument(response.contentType())) {
+            return FetchResult.file(url);
+        }
+        // The raw body is parsed by the page pipeline and kept for the page archive
+        return FetchResult.unparsed(url, response.bodyAsBytes(), HttpFetchEngine.charsetOf(response.contentType()),
+                response.url().toExternalForm(), response.header(ConditionalRequest.ETAG),
+                response.header(ConditionalRequest.LAST_MODIFIED));
+    }
+
+    /**
+     * A Jsoup fetch blocks the caller, so there is never more than one in flight
+     *
+     * @return 1
+     */
+    @Override
+    public int getMaxInFlight() {
+        return 1;
+    }
+}
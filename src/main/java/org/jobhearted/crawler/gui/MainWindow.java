@@ -3,10 +3,13 @@ package org.jobhearted.crawler.gui;
 import org.jobhearted.crawler.management.CrawlManager;
 import org.jobhearted.crawler.management.CrawlmanagerState;
 import org.jobhearted.crawler.processing.objects.Flag;
+import org.jobhearted.crawler.statistics.Metric;
 import org.jobhearted.crawler.statistics.StatisticsTracker;
 import org.jobhearted.crawler.statistics.observers.StatisticObserver;
 
 import javax.swing.*;
+import java.awt.BorderLayout;
+import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.HashMap;
@@ -16,6 +19,9 @@ import java.util.Map;
  * The Bound class for the Main window GUI, containing general information concerning all crawlmanagers and urls, such
  * as the states and url flag counts.
  * <p/>
+ * The StatisticsTracker notifies from the threads of the crawlers, so every update is handed to the event dispatch
+ * thread before it touches the GUI or the data maps.
+ * <p/>
  * I'm very aware there are unchecked calls in this java file. It is currently a workaround for jenkins and sonar to
  * work with me, please bear with the IDE warnings
  */
@@ -51,6 +57,10 @@ public class MainWindow implements StatisticObserver {
             = new HashMap<CrawlManager, CrawlmanagerState>();
     private Map<CrawlManager, Map<Flag, Integer>> flagMap
             = new HashMap<CrawlManager, Map<Flag, Integer>>();
+    private Map<Metric, JTextField> metricTextfieldMap = new HashMap<Metric, JTextField>();
+    private JPanel panelCrawlDelays;
+    private Map<Integer, JLabel> crawlDelayLabelMap = new HashMap<Integer, JLabel>();
+    private Map<Integer, JTextField> crawlDelayTextfieldMap = new HashMap<Integer, JTextField>();
 
     /**
      * Constructor of the Main window
@@ -61,6 +71,7 @@ public class MainWindow implements StatisticObserver {
         // Sets default values for the data maps
         initializeCrawlerMap();
         initializeUrlMap();
+        initializeMetricsTab();
         // Add listeners to the UI buttons
         addButtonListeners();
 
@@ -172,6 +183,27 @@ public class MainWindow implements StatisticObserver {
         }
     }
 
+    /**
+     * Adds a tab with a text field per metric, followed by the crawl delay of every crawler. The tab is built here
+     * instead of in the form, as it only lists the values of the Metric enum and the crawlers.
+     */
+    private void initializeMetricsTab() {
+        JPanel panelMetrics = new JPanel(new GridLayout(0, 2));
+        for (Metric metric : Metric.values()) {
+            JTextField textField = new JTextField(WAITING_FOR_DATA);
+            textField.setEditable(false);
+            panelMetrics.add(new JLabel(metric.getName()));
+            panelMetrics.add(textField);
+            metricTextfieldMap.put(metric, textField);
+        }
+        panelCrawlDelays = new JPanel(new GridLayout(0, 2));
+        panelCrawlDelays.setBorder(BorderFactory.createTitledBorder("Crawl delay per crawler"));
+        JPanel tab = new JPanel(new BorderLayout());
+        tab.add(panelMetrics, BorderLayout.NORTH);
+        tab.add(panelCrawlDelays, BorderLayout.CENTER);
+        panelCrawlers.addTab("Metrics", tab);
+    }
+
     /**
      * this method is called when the observable StatisticsTracker has new information about an url for us.
      * Updated the info and recalculates the total for that flag.
@@ -181,7 +213,23 @@ public class MainWindow implements StatisticObserver {
      * @param newCount     New count of the urls which has that flag
      */
     @Override
-    public void updateFlag(CrawlManager crawlManager, Flag flag, int newCount) {
+    public void updateFlag(final CrawlManager crawlManager, final Flag flag, final int newCount) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                showFlagCount(crawlManager, flag, newCount);
+            }
+        });
+    }
+
+    /**
+     * Stores the new count of a flag and shows the new total for that flag
+     *
+     * @param crawlManager CrawlManager of which and url's flag was changed
+     * @param flag         The flag which has new information
+     * @param newCount     New count of the urls which has that flag
+     */
+    private void showFlagCount(CrawlManager crawlManager, Flag flag, int newCount) {
         // Check if the crawlmanager is in the flagMap
         if (flagMap.get(crawlManager) == null) {
             flagMap.put(crawlManager, createNewFlagMap());
@@ -214,11 +262,16 @@ public class MainWindow implements StatisticObserver {
      * @param newState     New state of the CrawlManager
      */
     @Override
-    public void updateCrawlerState(CrawlManager crawlManager, CrawlmanagerState newState) {
-        stateMap.put(crawlManager, newState);
+    public void updateCrawlerState(final CrawlManager crawlManager, final CrawlmanagerState newState) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                stateMap.put(crawlManager, newState);
 
-        // Update the general info panel in the GUI
-        updateGeneralManagerInformation();
+                // Update the general info panel in the GUI
+                updateGeneralManagerInformation();
+            }
+        });
     }
 
     /**
@@ -267,12 +320,79 @@ public class MainWindow implements StatisticObserver {
      * @param crawlManager CrawlManager that was removed
      */
     @Override
-    public void crawlerRemoved(CrawlManager crawlManager) {
+    public void crawlerRemoved(final CrawlManager crawlManager) {
         if (crawlManager != null) {
-            // Remove all traces of the data
-            stateMap.remove(crawlManager);
-            // Update the GUI
-            updateGeneralManagerInformation();
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    // Remove all traces of the data
+                    stateMap.remove(crawlManager);
+                    removeCrawlDelay(crawlManager.getID());
+                    // Update the GUI
+                    updateGeneralManagerInformation();
+                }
+            });
+        }
+    }
+
+    /**
+     * Observer method for the GUI. Shows the new value of a metric.
+     *
+     * @param metric Metric which has a new value
+     * @param value  New value of the metric
+     */
+    @Override
+    public void updateMetric(final Metric metric, final double value) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                metricTextfieldMap.get(metric).setText(metric.format(value));
+            }
+        });
+    }
+
+    /**
+     * Observer method for the GUI. Shows the new crawl delay of a crawler, adding a row for the crawler the first time.
+     *
+     * @param crawlManager CrawlManager of which the crawl delay changed
+     * @param delay        New crawl delay in milliseconds
+     */
+    @Override
+    public void updateCrawlDelay(CrawlManager crawlManager, final long delay) {
+        final int crawlerId = crawlManager.getID();
+        final String baseUrl = crawlManager.getBaseUrl();
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                JTextField textField = crawlDelayTextfieldMap.get(crawlerId);
+                if (textField == null) {
+                    JLabel label = new JLabel(baseUrl);
+                    textField = new JTextField();
+                    textField.setEditable(false);
+                    panelCrawlDelays.add(label);
+                    panelCrawlDelays.add(textField);
+                    panelCrawlDelays.revalidate();
+                    crawlDelayLabelMap.put(crawlerId, label);
+                    crawlDelayTextfieldMap.put(crawlerId, textField);
+                }
+                textField.setText(delay + " ms");
+            }
+        });
+    }
+
+    /**
+     * Removes the row of a crawler from the crawl delays
+     *
+     * @param crawlerId id of the crawler
+     */
+    private void removeCrawlDelay(int crawlerId) {
+        JLabel label = crawlDelayLabelMap.remove(crawlerId);
+        JTextField textField = crawlDelayTextfieldMap.remove(crawlerId);
+        if (label != null) {
+            panelCrawlDelays.remove(label);
+            panelCrawlDelays.remove(textField);
+            panelCrawlDelays.revalidate();
+            panelCrawlDelays.repaint();
         }
     }
 }
@@ -0,0 +1,179 @@
+package org.jobhearted.crawler.management;
+
+import org.jobhearted.crawler.fetching.FetchResult;
+
+/**
+ * Circuit breaker over the fetches of a crawler, which all go to the host of its site. It opens when more than half of
+ * the last WINDOW_SIZE fetches failed because of the host: the server did not answer or answered with a 5xx status.
+ * While open the crawler makes no requests, so an outage of the site does not use up the retries of its urls. Other
+ * crawlers keep running.
+ * <p/>
+ * Once the open time has passed, the breaker is half open and lets a single probe through. When the probe succeeds it
+ * closes, when it fails it opens again for twice as long, up to MAX_OPEN_TIME.
+ */
+class CircuitBreaker {
+    static final int WINDOW_SIZE = 20;
+    static final int MIN_FETCHES = 10;
+    static final double FAILURE_RATE = 0.5;
+    static final long MAX_OPEN_TIME = 3600000;
+    private final long initialOpenTime;
+    private final boolean[] window = new boolean[WINDOW_SIZE];
+    private int windowCount;
+    private int windowNext;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openTime;
+    private long openUntil;
+    private boolean probeInFlight;
+
+    /**
+     * The states of the breaker
+     */
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Creates the breaker of a crawler from the settings
+     */
+    CircuitBreaker() {
+        this(Settings.CIRCUIT_BREAKER_TIME);
+    }
+
+    /**
+     * Creates the breaker
+     *
+     * @param initialOpenTime time in milliseconds the breaker stays open the first time it opens
+     */
+    CircuitBreaker(long initialOpenTime) {
+        this.initialOpenTime = Math.max(1, initialOpenTime);
+        this.openTime = this.initialOpenTime;
+    }
+
+    /**
+     * Checks if a request may be made. Once the open time has passed a single probe is let through.
+     *
+     * @param now current time in milliseconds
+     * @return whether the crawler may fetch
+     */
+    boolean allowsRequest(long now) {
+        if (state == State.OPEN && now >= openUntil) {
+            state = State.HALF_OPEN;
+        }
+        return state == State.CLOSED || (state == State.HALF_OPEN && !probeInFlight);
+    }
+
+    /**
+     * Tells the breaker a request was made, which is the probe when it is half open
+     */
+    void requestStarted() {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = true;
+        }
+    }
+
+    /**
+     * Records the result of a fetch
+     *
+     * @param result result of the fetch
+     * @param now    current time in milliseconds
+     * @return whether the breaker changed its state
+     */
+    boolean record(FetchResult result, long now) {
+        boolean failure = isHostFailure(result);
+        State before = state;
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+            if (failure) {
+                open(now, Math.min(MAX_OPEN_TIME, openTime * 2));
+            } else {
+                close();
+            }
+        } else if (state == State.CLOSED) {
+            add(failure);
+            if (windowCount >= MIN_FETCHES && failures > windowCount * FAILURE_RATE) {
+                open(now, initialOpenTime);
+            }
+        }
+        // Fetches that were in flight when the breaker opened do not change it
+        return state != before;
+    }
+
+    /**
+     * Returns the state of the breaker
+     *
+     * @return state
+     */
+    State getState() {
+        return state;
+    }
+
+    /**
+     * Checks if the breaker is open: the host is failing and no requests are made
+     *
+     * @return whether it is open or waiting for its probe
+     */
+    boolean isOpen() {
+        return state != State.CLOSED;
+    }
+
+    /**
+     * Returns the time the breaker lets a probe through
+     *
+     * @return time in milliseconds, in the past when the breaker is not open
+     */
+    long getOpenUntil() {
+        return openUntil;
+    }
+
+    /**
+     * Checks if the fetch failed because of the host rather than because of the url
+     *
+     * @param result result of the fetch
+     * @return whether the host did not answer or answered with a server error
+     */
+    static boolean isHostFailure(FetchResult result) {
+        return result.getOutcome() == FetchResult.Outcome.FAILED
+                && (result.getStatus() == FetchResult.NO_STATUS || result.getStatus() >= 500);
+    }
+
+    /**
+     * Opens the breaker for the given time
+     */
+    private void open(long now, long time) {
+        state = State.OPEN;
+        openTime = time;
+        openUntil = now + time;
+    }
+
+    /**
+     * Closes the breaker and forgets the fetches before it opened
+     */
+    private void close() {
+        state = State.CLOSED;
+        openTime = initialOpenTime;
+        windowCount = 0;
+        windowNext = 0;
+        failures = 0;
+    }
+
+    /**
+     * Adds the outcome of a fetch to the window, pushing out the oldest one when it is full
+     */
+    private void add(boolean failure) {
+        if (windowCount == WINDOW_SIZE) {
+            if (window[windowNext]) {
+                failures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowNext] = failure;
+        if (failure) {
+            failures++;
+        }
+        windowNext = (windowNext + 1) % WINDOW_SIZE;
+    }
+}
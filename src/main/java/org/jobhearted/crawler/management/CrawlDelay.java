@@ -0,0 +1,110 @@
+package org.jobhearted.crawler.management;
+
+import org.jobhearted.crawler.fetching.FetchResult;
+
+/**
+ * Adaptive time between two crawls of a crawler. It starts at the crawl timeout setting and follows how the server of
+ * the site responds: while responses are fast the delay shrinks by a fixed step, a slow response, a 429 Too Many
+ * Requests or a 503 Service Unavailable doubles it. The delay stays between the crawl delay floor and ceiling settings.
+ * <p/>
+ * A Retry-After header and the Crawl-delay of the robots.txt are obeyed as they are, even beyond the ceiling, as the
+ * site asked for them.
+ */
+class CrawlDelay {
+    static final long SLOW_RESPONSE_TIME = 2000;
+    static final long DECREASE_STEP = 500;
+    static final int TOO_MANY_REQUESTS = 429;
+    static final int SERVICE_UNAVAILABLE = 503;
+    private final long floor;
+    private final long ceiling;
+    private long delay;
+    private long siteDelay;
+    private long resumeTime;
+
+    /**
+     * Creates the delay of a crawler from the settings
+     */
+    CrawlDelay() {
+        this(Settings.CRAWL_TIMEOUT, Settings.CRAWL_DELAY_MIN, Settings.CRAWL_DELAY_MAX);
+    }
+
+    /**
+     * Creates the delay
+     *
+     * @param initial delay to start with in milliseconds
+     * @param floor   shortest delay
+     * @param ceiling longest delay, raised to the floor when it is lower
+     */
+    CrawlDelay(long initial, long floor, long ceiling) {
+        this.floor = Math.max(0, floor);
+        this.ceiling = Math.max(this.floor, ceiling);
+        this.delay = clamp(initial);
+    }
+
+    /**
+     * Adapts the delay to the way the server answered a fetch. Fetches the server did not answer, like timeouts, leave
+     * the delay as it is, the retry policy of the url handles those.
+     *
+     * @param result result of the fetch
+     * @param now    current time in milliseconds
+     */
+    void record(FetchResult result, long now) {
+        int status = result.getStatus();
+        if (status == FetchResult.NO_STATUS) {
+            return;
+        }
+        if (result.getRetryAfter() != FetchResult.NO_RETRY_AFTER) {
+            resumeTime = Math.max(resumeTime, now + result.getRetryAfter());
+        }
+        if (status == TOO_MANY_REQUESTS || status == SERVICE_UNAVAILABLE
+                || result.getResponseTime() > SLOW_RESPONSE_TIME) {
+            delay = clamp(delay * 2);
+        } else if (status < 400) {
+            delay = clamp(delay - DECREASE_STEP);
+        }
+    }
+
+    /**
+     * Returns the current delay between two crawls, at least the Crawl-delay of the site
+     *
+     * @return delay in milliseconds
+     */
+    long getDelay() {
+        return Math.max(delay, siteDelay);
+    }
+
+    /**
+     * Sets the Crawl-delay the site asks for in its robots.txt, the delay never gets shorter than that
+     *
+     * @param siteDelay crawl delay of the site in milliseconds, negative when the site did not set one
+     */
+    void setSiteDelay(long siteDelay) {
+        this.siteDelay = Math.max(0, siteDelay);
+    }
+
+    /**
+     * Returns the time of the next crawl after a crawl at the given time
+     *
+     * @param now time of the crawl in milliseconds
+     * @return time of the next crawl, at least the current delay later and not before a Retry-After has passed
+     */
+    long nextCrawlTime(long now) {
+        return Math.max(now + getDelay(), resumeTime);
+    }
+
+    /**
+     * Returns the time a Retry-After of the server has passed
+     *
+     * @return time in milliseconds, 0 when the server never asked to wait
+     */
+    long getResumeTime() {
+        return resumeTime;
+    }
+
+    /**
+     * Keeps a delay between the floor and the ceiling
+     */
+    private long clamp(long value) {
+        return Math.max(floor, Math.min(ceiling, value));
+    }
+}
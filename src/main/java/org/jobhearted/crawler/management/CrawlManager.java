@@ -1,23 +1,31 @@
 package org.jobhearted.crawler.management;
 
+import org.javalite.activejdbc.Base;
 import org.javalite.activejdbc.Model;
+import org.jobhearted.crawler.archive.PageArchive;
 import org.jobhearted.crawler.database.Database;
+import org.jobhearted.crawler.fetching.*;
 import org.jobhearted.crawler.processing.Blacklist;
 import org.jobhearted.crawler.processing.DocumentProcessor;
+import org.jobhearted.crawler.processing.FileClassifier;
+import org.jobhearted.crawler.processing.SitemapParser;
+import org.jobhearted.crawler.processing.UrlCanonicalizer;
+import org.jobhearted.crawler.processing.UrlFingerprint;
 import org.jobhearted.crawler.processing.objects.Flag;
 import org.jobhearted.crawler.processing.objects.Url;
 import org.jobhearted.crawler.statistics.StatisticsTracker;
-import org.jsoup.Jsoup;
-import org.jsoup.UnsupportedMimeTypeException;
-import org.jsoup.nodes.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.Date;
-import java.util.List;
-
-import static java.lang.Thread.sleep;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Crawl Manager handles crawling of a certain domain. Uses the blacklist class to check the urls for validness.
@@ -27,16 +35,44 @@ public class CrawlManager extends Model implements Runnable {
     private static final String COL_ID = "id";
     private static final String COL_BASE_URL = "base_url";
     private static Logger logger = LoggerFactory.getLogger(CrawlManager.class);
+    private static final long PAUSE_CHECK_TIME = 1000;
+    private static final int SITEMAP_BATCHES_PER_STEP = 10;
+    private static final String DISCOVERY_SITEMAP = "sitemap";
+    private static final String DISCOVERY_BOTH = "both";
     private static Flag[] flagPriority = {Flag.FOUND, Flag.RETRY, Flag.RECRAWL};
     //State fields
     private CrawlmanagerState state;
     //Fields used for crawling
     private UrlList urlList;
+    private RecrawlScheduler recrawlScheduler;
+    private UrlWriter urlWriter;
+    private PageArchive pageArchive;
+    private FetchEngine fetchEngine;
+    private PagePipeline pipeline;
+    // Urls from the start of their fetch until their document has been processed, fetching counts those still fetching
+    private final Set<Url> inFlight = new HashSet<Url>();
+    private int fetching;
+    private final BlockingQueue<PageJob> completions = new LinkedBlockingQueue<PageJob>();
+    private final Queue<PageJob> waitingForPipeline = new ArrayDeque<PageJob>();
+    private final FetchCallback fetchCallback = new FetchCallback() {
+        @Override
+        public void completed(FetchResult result) {
+            complete(new PageJob(CrawlManager.this, processor, result));
+        }
+    };
+    private long nextCrawlTime;
+    private CrawlDelay crawlDelay;
+    private RetryBackoff<Url> retryBackoff;
+    private CircuitBreaker circuitBreaker;
+    private SitemapDiscovery sitemapDiscovery;
+    private long nextSitemapCheck;
+    private volatile PolitenessScheduler scheduler;
+    private final ReentrantLock lock = new ReentrantLock();
     // Fields used for processing
     private DocumentProcessor processor;
     private Blacklist blacklist;
-    // Fields used for recrawl checking
-    private Date lastRecrawlChecked;
+    private final FileClassifier fileClassifier = new FileClassifier();
+    private UrlCanonicalizer canonicalizer;
 
     /**
      * Initializes the crawler by calling the relevant functions
@@ -44,74 +80,387 @@ public class CrawlManager extends Model implements Runnable {
     public void initialize() {
         StatisticsTracker.registerCrawler(this);
         blacklist = new Blacklist(this);
-        initializeList();
+        canonicalizer = UrlCanonicalizer.createCanonicalizer(this);
+        recrawlScheduler = new RecrawlScheduler();
+        urlWriter = new UrlWriter(this);
+        fetchEngine = createFetchEngine();
+        pipeline = PagePipeline.getShared();
+        crawlDelay = new CrawlDelay();
+        StatisticsTracker.updateCrawlDelay(this, crawlDelay.getDelay());
+        retryBackoff = new RetryBackoff<Url>();
+        circuitBreaker = new CircuitBreaker();
+        pageArchive = openPageArchive();
         checkForRecrawl();
+        initializeList();
         processor = DocumentProcessor.createProcessor(this);
     }
 
     /**
-     * Checks if a recrawl check is needed and if so executes it.
+     * Flags the visited urls that have not been visited for longer than their recrawl interval for recrawling. Done with
+     * a single update in the database before the url list is loaded, so the visited urls don't have to be in memory.
+     * The visited urls that are not due yet are scheduled by the RecrawlScheduler while the list loads.
      */
     private void checkForRecrawl() {
-        long recrawlCheckTime = 10 * 60 * 1000;
-
-        Date now = new Date();
-        if (lastRecrawlChecked == null || now.getTime() - lastRecrawlChecked.getTime() > recrawlCheckTime) {
-            for (Url url : urlList.getAllWithFlag(Flag.VISITED)) {
-                if (url.getLastVisited() != null && now.getTime() - url.getLastVisited().getTime() > Settings.RECRAWL_TIME) {
-                    url.setFlag(Flag.RECRAWL);
-                }
-            }
-        }
-
-        lastRecrawlChecked = now;
+        Timestamp now = new Timestamp(new Date().getTime());
+        int count = Url.update(Url.COL_FLAG + " = ?",
+                Url.COL_CRAWLER_ID + " = ? AND " + Url.COL_FLAG + " = ? AND TIMESTAMPADD(SECOND, COALESCE("
+                        + Url.COL_RECRAWL_INTERVAL + ", ?) DIV 1000, " + Url.COL_LAST_SEEN + ") < ?",
+                Flag.RECRAWL.toString(), getID(), Flag.VISITED.toString(), Settings.RECRAWL_TIME, now);
+        logger.info("Flagged {} urls of crawler {} for recrawling", count, getID());
     }
 
     /**
-     * Initializes the Url List the Crawlmanager works with to do it's job.
+     * Initializes the Url List the Crawlmanager works with to do it's job. Only the first page of every flag we crawl
+     * is loaded right away, the statistics get their counts from a single aggregate query. The other urls are loaded
+     * in the background by the FrontierLoader while the crawler is already running.
      */
     private void initializeList() {
-        // Initialize the list
-        urlList = new UrlList();
-        List<Url> list = Url.find("crawler_id = ?", this.getInteger("id"));
+        Map<Flag, Integer> flagCounts = countUrlsPerFlag();
+        StatisticsTracker.setFlagCounts(this, flagCounts);
 
-        // Register the urls at the statistics
-        for (Url u : list) {
-            u.setParentCrawlmanager(this);
-            urlList.add(u);
-            StatisticsTracker.switchFlag(this, null, u.getFlag());
+        int total = 0;
+        for (int count : flagCounts.values()) {
+            total += count;
         }
 
-        if (list.isEmpty()) {
+        // Initialize the list
+        urlList = new UrlList(this, Settings.FRONTIER_MEMORY_LIMIT, restoreSeenFilter(total));
+
+        if (total == 0) {
+            urlList.markComplete();
             Url url = new Url();
             url.setParentCrawlmanager(this);
             url.setFlag(Flag.FOUND);
-            url.setString(Url.COL_URL, this.getString(COL_BASE_URL));
+            String canonical = canonicalizer.canonicalize(getBaseUrl());
+            url.setString(Url.COL_URL, canonical != null ? canonical : getBaseUrl());
             this.addUrlToList(url);
+        } else {
+            for (Flag flag : flagPriority) {
+                List<Url> page = Url.find(Url.COL_CRAWLER_ID + " = ? AND " + Url.COL_FLAG + " = ?", getID(), flag.toString())
+                        .orderBy(Url.COL_ID).limit(FrontierLoader.PAGE_SIZE);
+                for (Url u : page) {
+                    loadUrl(u);
+                }
+            }
+            FrontierLoader.start(this);
         }
     }
 
     /**
-     * Main method of the crawl manager. While running loops to crawl an url and send it to the processor
+     * Restores the seen url filter saved by the previous run and adds the urls created after it was saved. When there
+     * is no saved filter, it is too small for the current amount of urls or it covers urls the database does not have,
+     * an empty one is returned which is filled while the url list loads.
+     *
+     * @param total amount of urls the crawler has
+     * @return the seen url filter
      */
-    @Override
-    public void run() {
-        // open DB conn for this thread
+    private SeenUrlFilter restoreSeenFilter(int total) {
+        SeenUrlFilter filter = SeenUrlFilter.load(getID());
+        if (filter == null || filter.capacity() < total) {
+            return new SeenUrlFilter(total * 2);
+        }
+        Object maxId = Base.firstCell("SELECT MAX(" + Url.COL_ID + ") FROM " + Url.getTableName() + " WHERE "
+                + Url.COL_CRAWLER_ID + " = ?", getID());
+        if (!filter.matches(maxId != null ? ((Number) maxId).longValue() : 0)) {
+            logger.warn("The saved seen url filter of crawler {} does not match the database, rebuilding it", getID());
+            return new SeenUrlFilter(total * 2);
+        }
+
+        List<Map> page;
+        do {
+            page = Base.findAll("SELECT " + Url.COL_ID + " AS id, " + Url.COL_URL + " AS url FROM " + Url.getTableName()
+                            + " WHERE " + Url.COL_CRAWLER_ID + " = ? AND " + Url.COL_ID + " > ? ORDER BY " + Url.COL_ID
+                            + " LIMIT " + FrontierLoader.PAGE_SIZE, getID(), filter.getLastUrlId());
+            for (Map row : page) {
+                String url = row.get("url").toString();
+                String canonical = canonicalizer.canonicalize(url);
+                filter.put(UrlFingerprint.of(canonical != null ? canonical : url));
+                filter.coverUrlId(((Number) row.get("id")).longValue());
+            }
+        } while (page.size() == FrontierLoader.PAGE_SIZE);
+
+        filter.markComplete();
+        logger.info("Restored the seen url filter of crawler {}", getID());
+        return filter;
+    }
+
+    /**
+     * Adds an url loaded from the database to the url list under its canonical spelling. An url stored under another
+     * spelling is updated in the database, unless its canonical url is already known. Then it is a duplicate and it is
+     * left out of the list.
+     * <p/>
+     * Called by the FrontierLoader on its own thread while the crawler runs, so it holds the lock of the crawler like
+     * a step does: the file classifier, the recrawl scheduler and the statistics are only touched by one of them at a
+     * time.
+     *
+     * @param url Url loaded from the database
+     * @return whether the url was added to the list
+     */
+    boolean loadUrl(Url url) {
+        lock.lock();
         try {
-            Database.openDatabaseConnection();
+            url.setParentCrawlmanager(this);
+            String canonical = canonicalizer.canonicalize(url.getUrl());
+            if (canonical != null && !canonical.equals(url.getUrl())) {
+                if (isKnownUrl(canonical)) {
+                    logger.debug("Leaving out {}, it is a duplicate of {}", url.getUrl(), canonical);
+                    StatisticsTracker.switchFlag(this, url.getFlag(), null);
+                    return false;
+                }
+                url.setString(Url.COL_URL, canonical);
+                urlWriter.write(url);
+            }
+            if (!urlList.load(url)) {
+                return false;
+            }
+            if (url.getFlag() == Flag.FILE) {
+                fileClassifier.learn(url.getUrl(), true);
+            } else if (url.getFlag() == Flag.VISITED) {
+                scheduleRecrawl(url);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            while (this.state != CrawlmanagerState.STOPPING) {
+    /**
+     * Schedules the recrawl of a visited url, its recrawl interval after its last visit
+     *
+     * @param url visited Url
+     */
+    private void scheduleRecrawl(Url url) {
+        Timestamp lastVisited = url.getLastVisited();
+        if (lastVisited != null && url.getId() != null) {
+            recrawlScheduler.schedule(url.getLong(Url.COL_ID), lastVisited.getTime(),
+                    lastVisited.getTime() + url.getRecrawlInterval());
+        }
+    }
 
-                while (this.state == CrawlmanagerState.PAUSING || this.state == CrawlmanagerState.PAUSED) {
-                    this.setState(CrawlmanagerState.PAUSED);
-                    sleepForPause();
+    /**
+     * Flags all urls whose recrawl is due for recrawling. The scheduler only knows the ids of the urls, the due urls are
+     * looked up in the database in pages, and the instance in the url list is used when the url is resident.
+     */
+    private void promoteDueRecrawls() {
+        long now = System.currentTimeMillis();
+        Map<Long, RecrawlScheduler.ScheduledRecrawl> due =
+                new LinkedHashMap<Long, RecrawlScheduler.ScheduledRecrawl>();
+        RecrawlScheduler.ScheduledRecrawl recrawl;
+        while ((recrawl = recrawlScheduler.pollDue(now)) != null) {
+            // An url visited again is scheduled again, the latest visit decides
+            RecrawlScheduler.ScheduledRecrawl other = due.get(recrawl.getUrlId());
+            if (other == null || other.getLastVisited() < recrawl.getLastVisited()) {
+                due.put(recrawl.getUrlId(), recrawl);
+            }
+            if (due.size() == FrontierLoader.PAGE_SIZE) {
+                promoteRecrawls(due);
+                due.clear();
+            }
+        }
+        if (!due.isEmpty()) {
+            promoteRecrawls(due);
+        }
+    }
+
+    /**
+     * Flags the urls of due recrawls for recrawling. Urls spilled to disk are restored first. A recrawl is skipped when
+     * the url is no longer visited, or has been visited again since it was scheduled.
+     *
+     * @param due due recrawl per url id
+     */
+    private void promoteRecrawls(Map<Long, RecrawlScheduler.ScheduledRecrawl> due) {
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < due.size(); i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        List<Url> stored = Url.where(Url.COL_ID + " IN (" + placeholders + ")", due.keySet().toArray());
+        for (Url storedUrl : stored) {
+            RecrawlScheduler.ScheduledRecrawl recrawl = due.get(storedUrl.getLong(Url.COL_ID));
+            Url url = urlList.get(storedUrl.getUrl());
+            if (url == null) {
+                url = storedUrl;
+                url.setParentCrawlmanager(this);
+                if (!urlList.restoreSpilled(url)) {
+                    continue;
                 }
+            }
 
-                // do the crawling :)
-                doTheCrawl();
+            // The database keeps whole seconds, a visit since the schedule is at least a second later
+            Timestamp lastVisited = url.getLastVisited();
+            if (url.getFlag() == Flag.VISITED && lastVisited != null
+                    && lastVisited.getTime() < recrawl.getLastVisited() + 1000) {
+                url.setFlag(Flag.RECRAWL);
+                urlWriter.write(url);
             }
+        }
+    }
 
-            this.setState(CrawlmanagerState.STOPPED);
+    /**
+     * Starts reading the sitemaps of the site when the discovery mode uses them and they are due, and adds the urls
+     * found so far to the frontier. Only a few batches are added per step, so a large sitemap does not hold up the
+     * crawl.
+     *
+     * @param now current time in milliseconds
+     */
+    private void discoverFromSitemaps(long now) {
+        if (!DISCOVERY_SITEMAP.equals(Settings.DISCOVERY_MODE) && !DISCOVERY_BOTH.equals(Settings.DISCOVERY_MODE)) {
+            return;
+        }
+        if (now >= nextSitemapCheck) {
+            if (sitemapDiscovery == null) {
+                sitemapDiscovery = new SitemapDiscovery(getID(), blacklist.getSitemaps());
+            }
+            sitemapDiscovery.start();
+            nextSitemapCheck = now + Settings.SITEMAP_CHECK_TIME;
+        }
+        for (int i = 0; i < SITEMAP_BATCHES_PER_STEP; i++) {
+            List<SitemapDiscovery.Entry> batch = sitemapDiscovery.pollBatch();
+            if (batch == null) {
+                return;
+            }
+            seedFromSitemap(batch, now);
+        }
+    }
+
+    /**
+     * Adds the new urls of a batch from the sitemaps to the frontier. The lastmod of a sitemap tells when a page
+     * changes, so new urls with a lastmod start at the longest recrawl interval. Known urls visited before their lastmod
+     * are scheduled for recrawling right away.
+     *
+     * @param batch urls found in the sitemaps
+     * @param now   current time in milliseconds
+     */
+    private void seedFromSitemap(List<SitemapDiscovery.Entry> batch, long now) {
+        Map<String, Long> modified = new HashMap<String, Long>();
+        int added = 0;
+        for (SitemapDiscovery.Entry entry : batch) {
+            String canonical = canonicalizer.canonicalize(entry.getLocation());
+            if (canonical == null) {
+                continue;
+            }
+            boolean hasLastModified = entry.getLastModified() != SitemapParser.NO_LAST_MODIFIED;
+            if (isKnownUrl(canonical)) {
+                if (hasLastModified) {
+                    modified.put(canonical, entry.getLastModified());
+                }
+            } else if (blacklist.urlAllowed(canonical)) {
+                Url url = new Url();
+                url.setString(Url.COL_URL, canonical);
+                url.setParentCrawlmanager(this);
+                url.setFlag(Flag.FOUND);
+                if (hasLastModified) {
+                    url.setLong(Url.COL_RECRAWL_INTERVAL, (long) Settings.RECRAWL_MAX_TIME);
+                }
+                addUrlToList(url);
+                added++;
+            }
+        }
+        int recrawls = scheduleModifiedRecrawls(modified, now);
+        logger.debug("Added {} urls from the sitemaps of crawler {}, {} modified urls to recrawl",
+                new Object[]{added, getID(), recrawls});
+    }
+
+    /**
+     * Schedules the recrawl of the visited urls which were modified after their last visit. The visits of the whole
+     * batch are looked up with one query. The schedule holds the lastmod instead of the last visit, so the recrawl is
+     * skipped when the url is visited again first.
+     *
+     * @param modified lastmod per known url
+     * @param now      current time in milliseconds
+     * @return amount of urls scheduled
+     */
+    private int scheduleModifiedRecrawls(Map<String, Long> modified, long now) {
+        if (modified.isEmpty()) {
+            return 0;
+        }
+        List<Object> params = new ArrayList<Object>();
+        params.add(getID());
+        params.add(Flag.VISITED.toString());
+        StringBuilder placeholders = new StringBuilder();
+        for (String url : modified.keySet()) {
+            placeholders.append(placeholders.length() == 0 ? "?" : ", ?");
+            params.add(url);
+        }
+        List<Map> rows = Base.findAll("SELECT " + Url.COL_ID + " AS id, " + Url.COL_URL + " AS url, " + Url.COL_LAST_SEEN
+                + " AS last_visited FROM " + Url.getTableName() + " WHERE " + Url.COL_CRAWLER_ID + " = ? AND " + Url.COL_FLAG + " = ? AND "
+                + Url.COL_URL + " IN (" + placeholders + ")", params.toArray());
+
+        int scheduled = 0;
+        for (Map row : rows) {
+            String url = row.get("url").toString();
+            Date lastVisited = (Date) row.get("last_visited");
+            long lastModified = modified.get(url);
+            if (lastVisited != null && lastVisited.getTime() < lastModified) {
+                recrawlScheduler.schedule(((Number) row.get("id")).longValue(), lastModified, now);
+                scheduled++;
+            }
+        }
+        return scheduled;
+    }
+
+    /**
+     * Returns whether the crawler discovers urls by following the links of the pages it visits. In the sitemap
+     * discovery mode it only does so until the sitemaps have been read, or when they turned out to list no urls at all,
+     * so the crawler never runs dry.
+     *
+     * @return whether links are followed
+     */
+    public boolean followsLinks() {
+        if (!DISCOVERY_SITEMAP.equals(Settings.DISCOVERY_MODE)) {
+            return true;
+        }
+        return sitemapDiscovery == null || !sitemapDiscovery.isFinished() || sitemapDiscovery.getUrlCount() == 0;
+    }
+
+    /**
+     * Counts the urls of this crawler per flag with one GROUP BY query
+     *
+     * @return count per flag, flags without urls are left out
+     */
+    private Map<Flag, Integer> countUrlsPerFlag() {
+        Map<Flag, Integer> counts = new EnumMap<Flag, Integer>(Flag.class);
+        List<Map> rows = Base.findAll("SELECT " + Url.COL_FLAG + " AS flag, COUNT(*) AS total FROM " + Url.getTableName()
+                + " WHERE " + Url.COL_CRAWLER_ID + " = ? GROUP BY " + Url.COL_FLAG, getID());
+        for (Map row : rows) {
+            counts.put(Flag.valueOf(row.get("flag").toString()), ((Number) row.get("total")).intValue());
+        }
+        return counts;
+    }
+
+    /**
+     * Checks if the url is already known to this crawler. The seen url filter rejects most new urls right away, the
+     * others are looked up in the url list. While the url list is still being loaded in the background, urls that are
+     * not in memory yet are looked up in the database.
+     *
+     * @param url url string to check
+     * @return whether the url is known
+     */
+    public boolean isKnownUrl(String url) {
+        if (!urlList.mightContain(url)) {
+            return false;
+        }
+        if (urlList.contains(url)) {
+            return true;
+        }
+        return !urlList.isComplete()
+                && Url.count(Url.COL_CRAWLER_ID + " = ? AND " + Url.COL_URL + " = ?", getID(), url) > 0;
+    }
+
+    /**
+     * Main method of the crawl manager when it runs on its own thread. While running loops over the steps of the
+     * crawler, processing the fetches and documents that complete while it waits for the next step.
+     */
+    @Override
+    public void run() {
+        // open DB conn for this thread
+        try {
+            Database.openDatabaseConnection();
+
+            long nextStep = step();
+            while (nextStep >= 0) {
+                processFetchResults(nextStep);
+                nextStep = step();
+            }
         } catch (Exception e) {
             // Catching any exception during thread execution for both debugging as logging
             logger.warn("CrawlManager made a hard crash!", e);
@@ -119,95 +468,467 @@ public class CrawlManager extends Model implements Runnable {
     }
 
     /**
-     * Executes a crawl. Gets the url, sends it to the crawl function and sleeps for the time necessary to
-     * adhere to the policy
+     * Does one step of the crawler, without waiting: handles a state change, processes the completed fetches and
+     * documents, hands the documents waiting for room to the page pipeline and crawls an url when the policy allows it.
+     * Used by run and by the PolitenessScheduler, which runs the steps of many crawlers on a few threads.
+     *
+     * The step holds the lock of the crawler, which a fetch of the Jsoup engine and the database calls block in. It is
+     * a ReentrantLock rather than the monitor of the crawler, as a virtual thread blocking inside a synchronized method
+     * pins its carrier thread.
+     *
+     * @return the time in milliseconds the crawler wants its next step, or -1 when it has stopped
      */
-    private void doTheCrawl() {
-        // create a Date for later detemination of execution length
-        Date timeStarted = new Date();
+    long step() {
+        lock.lock();
+        try {
+            return doStep();
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        Url urlToCrawl = getUrlToCrawl();
+    /**
+     * Does the step while holding the lock
+     *
+     * @return the time in milliseconds the crawler wants its next step, or -1 when it has stopped
+     */
+    private long doStep() {
+        if (this.state == CrawlmanagerState.STOPPING) {
+            finishFetchesInFlight();
+            urlWriter.close();
+            saveState();
+            if (pageArchive != null) {
+                pageArchive.close();
+            }
+            this.setState(CrawlmanagerState.STOPPED);
+            return -1;
+        }
+        if (this.state == CrawlmanagerState.PAUSING || this.state == CrawlmanagerState.PAUSED) {
+            if (this.state == CrawlmanagerState.PAUSING) {
+                saveState();
+                this.setState(CrawlmanagerState.PAUSED);
+            }
+            return System.currentTimeMillis() + PAUSE_CHECK_TIME;
+        }
 
-        if (urlToCrawl != null) {
-            crawlUrl(urlToCrawl);
+        PageJob job;
+        while ((job = completions.poll()) != null) {
+            finish(job);
         }
+        submitWaitingPages();
 
-        Date timeEnded = new Date();
-        sleepForPolicy(timeStarted, timeEnded);
+        // do the crawling :)
+        return doTheCrawl();
+    }
+
+    /**
+     * Executes a crawl when the policy allows it. Gets the url and starts fetching it when the fetch engine has room
+     * for another fetch. The time until the next crawl is the crawl delay, which adapts to how the server responds and
+     * follows the Crawl-delay of the robots.txt. While the circuit breaker is open the crawler does not fetch at all,
+     * until the breaker lets a probe through. Neither does it while the page pipeline has no room for its documents.
+     *
+     * @return time of the next crawl, adhering to the policy
+     */
+    private long doTheCrawl() {
+        long now = System.currentTimeMillis();
+        applyGeneratedIds();
+        discoverFromSitemaps(now);
+        promoteDueRecrawls();
+        if (now < nextCrawlTime) {
+            return nextCrawlTime;
+        }
+        if (!circuitBreaker.allowsRequest(now)) {
+            nextCrawlTime = Math.max(crawlDelay.nextCrawlTime(now), circuitBreaker.getOpenUntil());
+            return nextCrawlTime;
+        }
+
+        if (fetching < fetchEngine.getMaxInFlight() && waitingForPipeline.isEmpty()) {
+            Url urlToCrawl = getUrlToCrawl(now);
+
+            if (urlToCrawl != null) {
+                circuitBreaker.requestStarted();
+                crawlUrl(urlToCrawl);
+            }
+        }
+        long delay = crawlDelay.getDelay();
+        crawlDelay.setSiteDelay(blacklist.getCrawlDelay());
+        publishCrawlDelay(delay);
+        nextCrawlTime = crawlDelay.nextCrawlTime(now);
+        return nextCrawlTime;
     }
 
     /**
      * Checks the url list for the url of highest priority to crawl. To priority is defined in the static field
-     * flagPriority, first in the array is higher.
+     * flagPriority, first in the array is higher. Urls waiting for their retry time are parked in the list until it
+     * has passed. So are urls found since the last batch of the UrlWriter: the vacature of the page needs the id of
+     * its url, and the list unparks the url when the next batch supplies it.
      *
+     * @param now current time in milliseconds
      * @return Url up for crawling next
      */
-    private Url getUrlToCrawl() {
+    private Url getUrlToCrawl(long now) {
         Url found;
 
+        for (Url ready : retryBackoff.pollReady(now)) {
+            urlList.unpark(ready);
+        }
         for (Flag flag : flagPriority) {
-            found = urlList.getFirstWithFlag(flag);
+            found = urlList.getFirstWithFlag(flag, inFlight);
             while (found != null) {
-                if (blacklist.urlAllowed(found.getUrl())) {
-                    return found;
-                } else {
+                if (!blacklist.urlAllowed(found.getUrl())) {
                     urlList.remove(found);
-                    found.delete();
-                    found = urlList.getFirstWithFlag(flag);
+                    urlWriter.delete(found);
+                } else if (fileClassifier.isLikelyFile(found.getUrl())) {
+                    // Not worth a crawl slot, the extension says it is a file
+                    logger.debug("Url {} is most likely a file, not fetching it", found.getUrl());
+                    found.setFlag(Flag.FILE);
+                    urlWriter.write(found);
+                } else if (found.getId() == null) {
+                    urlList.park(found);
+                } else {
+                    return found;
                 }
+                found = urlList.getFirstWithFlag(flag, inFlight);
             }
         }
         return null;
     }
 
     /**
-     * Actually crawls the url. Retrieves the document of the url and sends it to the processor.
+     * Actually crawls the url. Starts fetching the document of the url, the result is handled by finishCrawl when it
+     * comes in.
      *
      * @param url Url to visit
      */
     private void crawlUrl(Url url) {
+        logger.info("Crawling " + url.getString("url"));
+        inFlight.add(url);
+        fetching++;
+        fetchEngine.fetch(url, fetchCallback);
+    }
+
+    /**
+     * Hands a completed fetch or processed document to the crawler and wakes it. Called from the threads of the fetch
+     * engine and the page pipeline.
+     *
+     * @param job the job of the url
+     */
+    private void complete(PageJob job) {
+        completions.add(job);
+        PolitenessScheduler currentScheduler = scheduler;
+        if (currentScheduler != null) {
+            currentScheduler.wake(this);
+        }
+    }
+
+    /**
+     * Called by the page pipeline when it is done with a document of this crawler
+     *
+     * @param job the job of the document
+     */
+    void pageProcessed(PageJob job) {
+        complete(job);
+    }
+
+    /**
+     * Handles a job that came back to the crawler
+     *
+     * @param job a completed fetch or a processed document
+     */
+    private void finish(PageJob job) {
+        if (job.isProcessed()) {
+            finishProcessing(job);
+        } else {
+            finishCrawl(job);
+        }
+    }
+
+    /**
+     * Handles a completed fetch: sends a document to the page pipeline, or updates the flag of an url that was not
+     * modified since the last visit, turned out to be a file or could not be fetched. A document is archived right
+     * away, its url is updated once the pipeline processed it.
+     *
+     * @param job the job of the fetch
+     */
+    private void finishCrawl(PageJob job) {
+        FetchResult result = job.getResult();
+        Url url = result.getUrl();
+        fetching--;
+        adaptCrawlDelay(result);
+        recordForCircuitBreaker(result);
+        if (result.getOutcome() == FetchResult.Outcome.DOCUMENT) {
+            if (pageArchive != null && result.getBody() != null) {
+                pageArchive.store(url.getUrl(), result.getCharset(), result.getBody(), System.currentTimeMillis());
+            }
+            job.setFollowLinks(followsLinks());
+            waitingForPipeline.add(job);
+            submitWaitingPages();
+            return;
+        }
+
+        inFlight.remove(url);
         try {
-            logger.info("Crawling " + url.getString("url"));
-            Document document = Jsoup.connect(url.getString("url")).get();
-            processor.processDocument(url, document);
+            switch (result.getOutcome()) {
+                case NOT_MODIFIED:
+                    // Nothing to process, only the visit counts
+                    logger.debug("Url {} was not modified", url.getUrl());
+                    url.setFlag(Flag.VISITED);
+                    url.adaptRecrawlInterval(false);
+                    scheduleRecrawl(url);
+                    break;
+                case FILE:
+                    logger.debug("Url {} was file!", url.getUrl());
+                    url.setFlag(Flag.FILE);
+                    fileClassifier.learn(url.getUrl(), true);
+                    break;
+                default:
+                    logger.debug("Url connection timed out.", result.getError());
+                    if (circuitBreaker.isOpen() && url.getFlag() == Flag.RETRY) {
+                        // The site is down, the url is not to blame for this try
+                        logger.debug("Not counting the failed retry of {} while the site is down", url.getUrl());
+                    } else {
+                        url.failedConnection();
+                    }
+                    scheduleRetry(url);
+                    break;
+            }
+        } finally {
+            urlWriter.write(url);
+        }
+    }
+
+    /**
+     * Handles a document processed by the page pipeline: adds the links found in it and marks its url visited. When
+     * the pipeline failed on it, the url is tried again later like a failed fetch.
+     *
+     * @param job the job of the document
+     */
+    private void finishProcessing(PageJob job) {
+        FetchResult result = job.getResult();
+        Url url = result.getUrl();
+        inFlight.remove(url);
+        try {
+            if (job.hasFailed()) {
+                logger.warn("Could not process the document of {}", url.getUrl(), job.getError());
+                url.failedConnection();
+                scheduleRetry(url);
+                return;
+            }
+            if (job.followsLinks()) {
+                processor.processLinks(job.getPage());
+            }
+            url.setValidators(result.getEtag(), result.getLastModified());
             url.setFlag(Flag.VISITED);
-        } catch (UnsupportedMimeTypeException e) {
-            logger.debug("Url was file!", e);
-            url.setFlag(Flag.FILE);
-        } catch (IOException e) {
-            logger.debug("Url connection timed out.", e);
-            url.failedConnection();
+            url.adaptRecrawlInterval(job.hasChanged());
+            scheduleRecrawl(url);
+            fileClassifier.learn(url.getUrl(), false);
         } finally {
-            url.saveIt();
+            urlWriter.write(url);
+        }
+    }
+
+    /**
+     * Makes an url flagged for retrying wait for its retry time, parked in the url list so the crawler does not have
+     * to skip it on every crawl. An url spilled to disk cannot be parked, it may be retried before its time.
+     *
+     * @param url Url that failed
+     */
+    private void scheduleRetry(Url url) {
+        if (url.getFlag() == Flag.RETRY) {
+            retryBackoff.schedule(url, url.getInteger(Url.COL_RETRIES), System.currentTimeMillis());
+            urlList.park(url);
         }
     }
 
     /**
-     * Function called at the end of each crawl. Sleeps for the remaining time to adhere to the timeout policy,
-     * reducing stress on the webserver of the website being crawled
+     * Hands the documents waiting for room to the page pipeline, in the order they were fetched, until it is full
+     */
+    private void submitWaitingPages() {
+        while (!waitingForPipeline.isEmpty() && pipeline.offer(waitingForPipeline.peek())) {
+            waitingForPipeline.poll();
+        }
+    }
+
+    /**
+     * Adapts the crawl delay to the way the server answered the fetch. A Retry-After of the server also holds off the
+     * crawl that was already planned.
      *
-     * @param startTime Time the crawl started
-     * @param endTime   Time the crawl ended
+     * @param result result of the fetch
      */
-    private void sleepForPolicy(Date startTime, Date endTime) {
-        long timeToSleep = Settings.CRAWL_TIMEOUT - (endTime.getTime() - startTime.getTime());
+    private void adaptCrawlDelay(FetchResult result) {
+        long delay = crawlDelay.getDelay();
+        crawlDelay.record(result, System.currentTimeMillis());
+        nextCrawlTime = Math.max(nextCrawlTime, crawlDelay.getResumeTime());
+        publishCrawlDelay(delay);
+    }
 
-        if (timeToSleep > 0) {
+    /**
+     * Records the fetch in the circuit breaker and logs when it opens or closes
+     *
+     * @param result result of the fetch
+     */
+    private void recordForCircuitBreaker(FetchResult result) {
+        long now = System.currentTimeMillis();
+        if (circuitBreaker.record(result, now)) {
+            if (circuitBreaker.isOpen()) {
+                logger.warn("The site of crawler {} keeps failing, pausing it for {} s", getID(),
+                        (circuitBreaker.getOpenUntil() - now) / 1000);
+                nextCrawlTime = Math.max(nextCrawlTime, circuitBreaker.getOpenUntil());
+            } else {
+                logger.info("The site of crawler {} is back, resuming the crawl", getID());
+            }
+        }
+    }
+
+    /**
+     * Tells the StatisticsTracker about the crawl delay when it changed
+     *
+     * @param previousDelay crawl delay before the change
+     */
+    private void publishCrawlDelay(long previousDelay) {
+        if (crawlDelay.getDelay() != previousDelay) {
+            logger.debug("Crawl delay of crawler {} is now {} ms", getID(), crawlDelay.getDelay());
+            StatisticsTracker.updateCrawlDelay(this, crawlDelay.getDelay());
+        }
+    }
+
+    /**
+     * Processes the fetches and documents that complete until the given time. This also makes the crawler wait the
+     * remaining time to adhere to the timeout policy, reducing stress on the webserver of the website being crawled.
+     * Only used when the crawler runs on its own thread.
+     *
+     * @param until time in milliseconds to stop waiting
+     */
+    private void processFetchResults(long until) {
+        long timeToWait = until - System.currentTimeMillis();
+        while (timeToWait > 0) {
             try {
-                sleep(timeToSleep);
+                PageJob job = completions.poll(timeToWait, TimeUnit.MILLISECONDS);
+                if (job != null) {
+                    finish(job);
+                }
+            } catch (InterruptedException e) {
+                logger.debug("", e);
+                return;
+            }
+            timeToWait = until - System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Waits for the fetches still in flight and for their documents to be processed by the page pipeline, giving up
+     * when none completes within the crawl timeout
+     */
+    private void finishFetchesInFlight() {
+        long giveUpTime = System.currentTimeMillis() + Settings.CRAWL_TIMEOUT;
+        while (!inFlight.isEmpty()) {
+            try {
+                submitWaitingPages();
+                long timeToWait = giveUpTime - System.currentTimeMillis();
+                if (!waitingForPipeline.isEmpty()) {
+                    // Look again for room in the pipeline while waiting
+                    timeToWait = Math.min(timeToWait, PAUSE_CHECK_TIME);
+                }
+                PageJob job = timeToWait > 0 ? completions.poll(timeToWait, TimeUnit.MILLISECONDS) : null;
+                if (job != null) {
+                    finish(job);
+                    giveUpTime = System.currentTimeMillis() + Settings.CRAWL_TIMEOUT;
+                } else if (System.currentTimeMillis() >= giveUpTime) {
+                    logger.warn("Gave up waiting for {} fetches of crawler {}", inFlight.size(), getID());
+                    return;
+                }
             } catch (InterruptedException e) {
                 logger.debug("", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Creates the fetch engine set in the settings. In the virtual execution mode the http engine runs every fetch in
+     * flight on its own virtual thread.
+     *
+     * @return the fetch engine
+     */
+    private static FetchEngine createFetchEngine() {
+        if ("http".equalsIgnoreCase(Settings.FETCH_ENGINE)) {
+            ExecutorService virtualExecutor = "virtual".equalsIgnoreCase(Settings.EXECUTION_MODE)
+                    ? VirtualThreads.sharedExecutor() : null;
+            if (virtualExecutor != null) {
+                return new HttpFetchEngine(Settings.FETCH_IN_FLIGHT, virtualExecutor);
+            }
+            return new HttpFetchEngine(Settings.FETCH_IN_FLIGHT);
+        }
+        return new JsoupFetchEngine();
+    }
+
+    /**
+     * Opens the archive the fetched pages of this crawler are stored in, a directory per crawler in the page archive
+     * directory
+     *
+     * @return the archive, or null when pages are not archived or the archive could not be opened
+     */
+    private PageArchive openPageArchive() {
+        if (Settings.PAGE_ARCHIVE == null || Settings.PAGE_ARCHIVE.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return PageArchive.open(archiveDirectoryOf(getID()));
+        } catch (IOException e) {
+            logger.warn("Could not open the page archive of crawler {}, pages are not archived", getID(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the directory of the page archive of a crawler
+     *
+     * @param crawlerId id of the crawler
+     * @return directory of its archive
+     */
+    static File archiveDirectoryOf(int crawlerId) {
+        return new File(Settings.PAGE_ARCHIVE.trim(), Integer.toString(crawlerId));
+    }
+
+    /**
+     * Gives the urls inserted by the UrlWriter their database id
+     */
+    private void applyGeneratedIds() {
+        for (Map.Entry<String, Long> entry : urlWriter.drainGeneratedIds().entrySet()) {
+            urlList.assignId(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Writes the urls queued by the UrlWriter and saves the state of the crawler kept outside the database to disk, so
+     * the next start can pick it up. Called when the crawler pauses or stops and when the application shuts down, it
+     * holds the lock of the crawler so the shutdown does not save in the middle of a step.
+     */
+    public void saveState() {
+        lock.lock();
+        try {
+            if (urlWriter != null) {
+                urlWriter.flush();
             }
+            if (pageArchive != null) {
+                pageArchive.flush();
+            }
+            if (urlList != null) {
+                urlList.saveSeenFilter();
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
-     * Adds the url to the url list after saving it to the database, so all data is consistent
+     * Adds the url to the url list and queues it for saving to the database. The UrlWriter inserts it in the
+     * background, the url gets its id when the crawl loop applies the generated ids.
      *
      * @param url Url to add
      */
     public void addUrlToList(Url url) {
-        url.saveIt();
+        urlWriter.write(url);
         this.urlList.add(url);
     }
 
@@ -232,6 +953,15 @@ public class CrawlManager extends Model implements Runnable {
         this.state = newState;
     }
 
+    /**
+     * Sets the scheduler running the steps of this crawler, which is woken when a fetch completes
+     *
+     * @param scheduler the scheduler
+     */
+    void setScheduler(PolitenessScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
     /**
      * Returns the current UrlList. Used in the blacklist for checking if the url already exists in our data.
      *
@@ -241,6 +971,15 @@ public class CrawlManager extends Model implements Runnable {
         return urlList;
     }
 
+    /**
+     * Returns the canonicalizer of this crawler, which every url passes before it enters the url list
+     *
+     * @return UrlCanonicalizer
+     */
+    public UrlCanonicalizer getCanonicalizer() {
+        return canonicalizer;
+    }
+
     /**
      * Returns the current Blacklist Class, used for GUI blacklist editing
      *
@@ -282,12 +1021,4 @@ public class CrawlManager extends Model implements Runnable {
             return getBaseUrl() + " - LOADING";
         }
     }
-
-    private void sleepForPause() {
-        try {
-            sleep(1000);
-        } catch (InterruptedException e) {
-            logger.warn("", e);
-        }
-    }
 }
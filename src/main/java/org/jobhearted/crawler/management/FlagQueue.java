@@ -0,0 +1,205 @@
+package org.jobhearted.crawler.management;
+
+import org.jobhearted.crawler.processing.objects.Flag;
+import org.jobhearted.crawler.processing.objects.Url;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Queue of the urls with one flag, used by the UrlList. The head of the queue is kept in memory. When a memory limit is
+ * set, urls beyond that limit are appended to a FrontierSpillFile and read back once the head has been drained.
+ * <p/>
+ * An url in memory can be parked: it stays in the queue, but is not handed out until it is unparked, which puts it at
+ * the tail of the in-memory part again. The crawler parks the urls it cannot crawl yet, so it does not have to skip
+ * them on every crawl.
+ *
+ * @see UrlList
+ * @see FrontierSpillFile
+ */
+class FlagQueue {
+    private static Logger logger = LoggerFactory.getLogger(FlagQueue.class);
+    private final Flag flag;
+    private final int memoryLimit;
+    private final LinkedHashSet<Url> resident = new LinkedHashSet<Url>();
+    private final Set<Url> parked = new HashSet<Url>();
+    private final FrontierSpillFile spillFile;
+    private int staleRecords;
+
+    /**
+     * Creates the queue
+     *
+     * @param crawlerId   id of the crawler, used for naming the spill file
+     * @param flag        flag of the urls in this queue
+     * @param memoryLimit maximum amount of urls kept in memory, 0 for no limit
+     */
+    FlagQueue(int crawlerId, Flag flag, int memoryLimit) {
+        this(flag, memoryLimit, memoryLimit > 0 ? new FrontierSpillFile(crawlerId, flag) : null);
+    }
+
+    /**
+     * Creates the queue on the given spill file
+     *
+     * @param flag        flag of the urls in this queue
+     * @param memoryLimit maximum amount of urls kept in memory, 0 for no limit
+     * @param spillFile   file the urls beyond the limit are spilled to, null when there is no limit
+     */
+    FlagQueue(Flag flag, int memoryLimit, FrontierSpillFile spillFile) {
+        this.flag = flag;
+        this.memoryLimit = memoryLimit;
+        this.spillFile = spillFile;
+    }
+
+    /**
+     * Adds the url at the tail of the queue. It is kept in memory when it fits and nothing is waiting on disk,
+     * otherwise it is spilled to disk. Should the disk fail, the url stays in memory.
+     *
+     * @param url Url to add
+     * @return true if the url is kept in memory, false if it was spilled to disk
+     */
+    boolean offer(Url url) {
+        if (spillFile == null || (spillFile.size() == 0 && resident.size() + parked.size() < memoryLimit)) {
+            resident.add(url);
+            return true;
+        }
+
+        try {
+            spillFile.append(url);
+            return false;
+        } catch (IOException e) {
+            logger.warn("Could not spill url to disk, keeping it in memory", e);
+            resident.add(url);
+            return true;
+        }
+    }
+
+    /**
+     * Puts an url in memory at the tail of the in-memory part, regardless of the memory limit. Used for urls read back
+     * from disk and for spilled urls that are needed in memory again.
+     *
+     * @param url Url to keep
+     */
+    void keep(Url url) {
+        resident.add(url);
+    }
+
+    /**
+     * Registers that a record in the spill file no longer belongs to this queue, because its url has been taken back
+     * into memory. The record is skipped when it is read back.
+     */
+    void markStale() {
+        staleRecords++;
+    }
+
+    /**
+     * Registers that a stale record has been read back and skipped
+     */
+    void dropStale() {
+        staleRecords--;
+    }
+
+    /**
+     * Parks an url in memory, so it is not handed out until it is unparked
+     *
+     * @param url Url to park
+     * @return whether the url was in memory and not parked yet
+     */
+    boolean park(Url url) {
+        if (!resident.remove(url)) {
+            return false;
+        }
+        parked.add(url);
+        return true;
+    }
+
+    /**
+     * Puts a parked url back at the tail of the in-memory part
+     *
+     * @param url Url to unpark
+     * @return whether the url was parked
+     */
+    boolean unpark(Url url) {
+        if (!parked.remove(url)) {
+            return false;
+        }
+        resident.add(url);
+        return true;
+    }
+
+    /**
+     * Removes the url from the in-memory part of the queue, parked or not
+     *
+     * @param url Url to remove
+     * @return whether the url was in memory
+     */
+    boolean remove(Url url) {
+        return resident.remove(url) || parked.remove(url);
+    }
+
+    /**
+     * Returns the first url of the queue in memory that is not parked, without removing it
+     *
+     * @return first url or null if there is none in memory
+     */
+    Url peek() {
+        Iterator<Url> iterator = resident.iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * Returns the first url of the queue in memory that is not parked or excluded, without removing it
+     *
+     * @param excluded urls to skip
+     * @return first url or null if there is none in memory
+     */
+    Url peek(Collection<Url> excluded) {
+        if (excluded.isEmpty()) {
+            return peek();
+        }
+        for (Url url : resident) {
+            if (!excluded.contains(url)) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the next part of the queue from disk. The caller does so when no url in memory can be handed out, which
+     * may be while the urls in memory are being fetched. The urls are not put in memory yet, the caller keeps those
+     * that are not stale.
+     *
+     * @param crawlManager crawlmanager the restored urls belong to
+     * @return urls that were read back from disk
+     */
+    List<Url> refill(CrawlManager crawlManager) {
+        if (spillFile == null || spillFile.size() == 0) {
+            return Collections.emptyList();
+        }
+
+        try {
+            return spillFile.read(memoryLimit, flag, crawlManager);
+        } catch (IOException e) {
+            logger.warn("Could not read the spilled {} urls of crawler {}",
+                    new Object[]{flag, crawlManager.getID(), e});
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Returns the total amount of urls in the queue, both in memory and on disk
+     *
+     * @return size of the queue
+     */
+    int size() {
+        return resident.size() + parked.size() + (spillFile != null ? spillFile.size() - staleRecords : 0);
+    }
+}
@@ -0,0 +1,73 @@
+package org.jobhearted.crawler.management;
+
+import org.jobhearted.crawler.database.Database;
+import org.jobhearted.crawler.processing.objects.Url;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the urls of a crawler into its UrlList in the background, page by page, while the crawler is already running.
+ * Urls already in the list, like the first pages loaded at startup, are skipped. When all pages are loaded the list is
+ * marked complete.
+ * <p/>
+ * The loaders of all crawlers share a small pool of threads, so starting many crawlers does not open as many database
+ * connections.
+ */
+class FrontierLoader implements Runnable {
+    static final int PAGE_SIZE = 1000;
+    private static final int LOADER_THREADS = 2;
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(LOADER_THREADS);
+    private static Logger logger = LoggerFactory.getLogger(FrontierLoader.class);
+    private final CrawlManager crawlManager;
+
+    /**
+     * Creates a loader for the crawlmanager
+     *
+     * @param crawlManager crawlmanager to load the urls of
+     */
+    private FrontierLoader(CrawlManager crawlManager) {
+        this.crawlManager = crawlManager;
+    }
+
+    /**
+     * Starts loading the urls of the crawlmanager in the background
+     *
+     * @param crawlManager crawlmanager to load the urls of
+     */
+    static void start(CrawlManager crawlManager) {
+        EXECUTOR.submit(new FrontierLoader(crawlManager));
+    }
+
+    /**
+     * Loads all pages of urls by ascending id, so each page query can use the primary key.
+     */
+    @Override
+    public void run() {
+        try {
+            Database.openDatabaseConnection();
+            long lastId = 0;
+            int loaded = 0;
+            List<Url> page;
+            do {
+                page = Url.find(Url.COL_CRAWLER_ID + " = ? AND " + Url.COL_ID + " > ?", crawlManager.getID(), lastId)
+                        .orderBy(Url.COL_ID).limit(PAGE_SIZE);
+                for (Url url : page) {
+                    if (crawlManager.loadUrl(url)) {
+                        loaded++;
+                    }
+                    lastId = url.getID();
+                }
+            } while (page.size() == PAGE_SIZE);
+
+            crawlManager.getUrlList().markComplete();
+            logger.info("Loaded {} more urls for crawler {} in the background", loaded, crawlManager.getID());
+        } catch (Exception e) {
+            // The list stays incomplete, so membership checks keep asking the database
+            logger.warn("Failed to load the urls of crawler {}", crawlManager.getID(), e);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package org.jobhearted.crawler.management;
+
+import org.jobhearted.crawler.processing.objects.Flag;
+import org.jobhearted.crawler.processing.objects.Url;
+
+import java.io.*;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append log holding the tail of a flag queue of the UrlList when it does not fit in memory. Urls are appended at the
+ * end and read back in the same order, so the queue keeps its order. The database stays the source of truth, the file
+ * is only a cache and is thrown away when the crawler starts.
+ * <p/>
+ * Every record contains the id, retries, first and last visited time, recrawl interval, the url itself and the cache
+ * validators, enough to restore the Url without asking the database.
+ */
+class FrontierSpillFile {
+    public static final String FRONTIER_DIRECTORY = "frontier";
+    private static final int RECORD_HEADER_SIZE = 8 + 4 + 8 + 8 + 8 + 4;
+    private static final int NO_TEXT = -1;
+    private static final long NO_VALUE = -1;
+    private static final String CHARSET = "UTF-8";
+
+    private final File file;
+    private DataOutputStream out;
+    private long readPosition;
+    private long writePosition;
+    private int size;
+
+    /**
+     * Creates the spill file of the given queue. Any file left behind by a previous run is deleted.
+     *
+     * @param crawlerId id of the crawler the queue belongs to
+     * @param flag      flag of the queue
+     */
+    FrontierSpillFile(int crawlerId, Flag flag) {
+        this(fileOf(crawlerId, flag));
+    }
+
+    /**
+     * Creates a spill file at the given location. Any file left behind by a previous run is deleted.
+     *
+     * @param file location of the file
+     */
+    FrontierSpillFile(File file) {
+        this.file = file;
+        if (file.exists() && !file.delete()) {
+            throw new IllegalStateException("Could not delete old frontier file " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Appends the url at the end of the file
+     *
+     * @param url Url to append
+     * @throws IOException when the file could not be written
+     */
+    void append(Url url) throws IOException {
+        if (out == null) {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        }
+        byte[] urlBytes = url.getUrl().getBytes(CHARSET);
+        Integer retries = url.getInteger(Url.COL_RETRIES);
+        Long recrawlInterval = url.getLong(Url.COL_RECRAWL_INTERVAL);
+
+        out.writeLong(url.getId() != null ? url.getLong(Url.COL_ID) : NO_VALUE);
+        out.writeInt(retries != null ? retries : 0);
+        out.writeLong(timeOf(url.getTimestamp(Url.COL_FIRST_SEEN)));
+        out.writeLong(timeOf(url.getTimestamp(Url.COL_LAST_SEEN)));
+        out.writeLong(recrawlInterval != null ? recrawlInterval : NO_VALUE);
+        out.writeInt(urlBytes.length);
+        out.write(urlBytes);
+        int validatorSize = writeText(url.getEtag()) + writeText(url.getLastModified());
+
+        writePosition += RECORD_HEADER_SIZE + urlBytes.length + validatorSize;
+        size++;
+    }
+
+    /**
+     * Reads the next urls from the file and restores them. When everything has been read the file is truncated, so
+     * a drained queue does not keep using disk space.
+     *
+     * @param max          maximum amount of urls to read
+     * @param flag         flag to give the restored urls
+     * @param crawlManager crawlmanager the urls belong to
+     * @return restored urls, in the order they were appended
+     * @throws IOException when the file could not be read
+     */
+    List<Url> read(int max, Flag flag, CrawlManager crawlManager) throws IOException {
+        List<Url> urls = new ArrayList<Url>();
+        if (size == 0) {
+            return urls;
+        }
+        out.flush();
+
+        FileInputStream fileStream = new FileInputStream(file);
+        try {
+            fileStream.getChannel().position(readPosition);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(fileStream));
+            while (urls.size() < max && size > 0) {
+                long id = in.readLong();
+                int retries = in.readInt();
+                long firstVisited = in.readLong();
+                long lastVisited = in.readLong();
+                long recrawlInterval = in.readLong();
+                byte[] urlBytes = new byte[in.readInt()];
+                in.readFully(urlBytes);
+                byte[] etag = readText(in);
+                byte[] lastModified = readText(in);
+
+                Url url = restore(id, retries, firstVisited, lastVisited, recrawlInterval,
+                        new String(urlBytes, CHARSET), flag, crawlManager);
+                url.setValidators(textOf(etag), textOf(lastModified));
+                urls.add(url);
+                readPosition += RECORD_HEADER_SIZE + urlBytes.length + sizeOf(etag) + sizeOf(lastModified);
+                size--;
+            }
+        } finally {
+            fileStream.close();
+        }
+
+        if (readPosition == writePosition) {
+            truncate();
+        }
+        return urls;
+    }
+
+    /**
+     * Returns the amount of urls in the file which have not been read yet
+     *
+     * @return amount of urls
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Empties the file
+     *
+     * @throws IOException when the file could not be emptied
+     */
+    private void truncate() throws IOException {
+        out.close();
+        out = null;
+        new FileOutputStream(file).close();
+        readPosition = 0;
+        writePosition = 0;
+    }
+
+    /**
+     * Returns the spill file of a queue in the frontier directory
+     */
+    private static File fileOf(int crawlerId, Flag flag) {
+        File directory = new File(FRONTIER_DIRECTORY);
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IllegalStateException("Could not create the frontier directory " + directory.getAbsolutePath());
+        }
+        return new File(directory, crawlerId + "-" + flag.toString().toLowerCase() + ".log");
+    }
+
+    /**
+     * Creates the Url model of a record
+     */
+    private static Url restore(long id, int retries, long firstVisited, long lastVisited, long recrawlInterval,
+                               String urlString, Flag flag, CrawlManager crawlManager) {
+        Url url = new Url();
+        if (id != NO_VALUE) {
+            url.setLong(Url.COL_ID, id);
+        }
+        url.setString(Url.COL_URL, urlString);
+        url.setString(Url.COL_FLAG, flag.toString());
+        url.setInteger(Url.COL_RETRIES, retries);
+        if (firstVisited != NO_VALUE) {
+            url.setTimestamp(Url.COL_FIRST_SEEN, new Timestamp(firstVisited));
+        }
+        if (lastVisited != NO_VALUE) {
+            url.setTimestamp(Url.COL_LAST_SEEN, new Timestamp(lastVisited));
+        }
+        if (recrawlInterval != NO_VALUE) {
+            url.setLong(Url.COL_RECRAWL_INTERVAL, recrawlInterval);
+        }
+        url.setParentCrawlmanager(crawlManager);
+        return url;
+    }
+
+    /**
+     * Writes a text which may be null, prefixed with its length
+     *
+     * @return amount of bytes written
+     */
+    private int writeText(String text) throws IOException {
+        if (text == null) {
+            out.writeInt(NO_TEXT);
+            return 4;
+        }
+        byte[] bytes = text.getBytes(CHARSET);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        return 4 + bytes.length;
+    }
+
+    /**
+     * Reads a text written by writeText
+     *
+     * @return the bytes of the text, or null when no text was written
+     */
+    private static byte[] readText(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == NO_TEXT) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the text of bytes read by readText
+     */
+    private static String textOf(byte[] bytes) throws UnsupportedEncodingException {
+        return bytes != null ? new String(bytes, CHARSET) : null;
+    }
+
+    /**
+     * Returns the amount of bytes a text read by readText took in the file
+     */
+    private static int sizeOf(byte[] bytes) {
+        return 4 + (bytes != null ? bytes.length : 0);
+    }
+
+    /**
+     * Returns the time of a timestamp, or NO_VALUE when it is not set
+     */
+    private static long timeOf(Timestamp timestamp) {
+        return timestamp != null ? timestamp.getTime() : NO_VALUE;
+    }
+}
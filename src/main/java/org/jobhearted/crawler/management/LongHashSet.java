@@ -0,0 +1,143 @@
+package org.jobhearted.crawler.management;
+
+/**
+ * Set of primitive longs using open addressing with linear probing. Takes 8 to 16 bytes per entry, where a
+ * HashSet of Longs takes around 50, which matters when keeping fingerprints of millions of urls on the heap.
+ */
+class LongHashSet {
+    private static final int MINIMUM_CAPACITY = 16;
+    // Zero marks an empty slot, so the value zero is stored in a separate field
+    private long[] slots;
+    private boolean containsZero;
+    private int size;
+
+    /**
+     * Creates an empty set
+     */
+    LongHashSet() {
+        slots = new long[MINIMUM_CAPACITY];
+    }
+
+    /**
+     * Adds the value to the set
+     *
+     * @param value value to add
+     * @return whether the value was not in the set yet
+     */
+    boolean add(long value) {
+        if (value == 0) {
+            boolean added = !containsZero;
+            containsZero = true;
+            if (added) {
+                size++;
+            }
+            return added;
+        }
+
+        int slot = findSlot(slots, value);
+        if (slots[slot] == value) {
+            return false;
+        }
+        slots[slot] = value;
+        size++;
+        if (size * 2 > slots.length) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the value is in the set
+     *
+     * @param value value to check
+     * @return whether the set contains the value
+     */
+    boolean contains(long value) {
+        if (value == 0) {
+            return containsZero;
+        }
+        return slots[findSlot(slots, value)] == value;
+    }
+
+    /**
+     * Removes the value from the set. Shifts the entries after it back, so no tombstones are needed.
+     *
+     * @param value value to remove
+     * @return whether the value was in the set
+     */
+    boolean remove(long value) {
+        if (value == 0) {
+            boolean removed = containsZero;
+            containsZero = false;
+            if (removed) {
+                size--;
+            }
+            return removed;
+        }
+
+        int mask = slots.length - 1;
+        int slot = findSlot(slots, value);
+        if (slots[slot] != value) {
+            return false;
+        }
+
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            long entry = slots[next];
+            if (entry == 0) {
+                break;
+            }
+            int home = home(entry, mask);
+            // move the entry back if its home slot is not cyclically between the emptied slot and its current slot
+            if ((slot <= next) ? (slot >= home || home > next) : (slot >= home && home > next)) {
+                slots[slot] = entry;
+                slot = next;
+            }
+        }
+        slots[slot] = 0;
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns the amount of values in the set
+     *
+     * @return size of the set
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Doubles the capacity of the set and rehashes all entries
+     */
+    private void grow() {
+        long[] newSlots = new long[slots.length * 2];
+        for (long entry : slots) {
+            if (entry != 0) {
+                newSlots[findSlot(newSlots, entry)] = entry;
+            }
+        }
+        slots = newSlots;
+    }
+
+    /**
+     * Finds the slot containing the value, or the empty slot where it should go
+     */
+    private static int findSlot(long[] table, long value) {
+        int mask = table.length - 1;
+        int slot = home(value, mask);
+        while (table[slot] != 0 && table[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the preferred slot of the value
+     */
+    private static int home(long value, int mask) {
+        return (int) (value ^ (value >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,185 @@
+package org.jobhearted.crawler.management;
+
+import org.jobhearted.crawler.database.Database;
+import org.jobhearted.crawler.fetching.FetchResult;
+import org.jobhearted.crawler.processing.DocumentProcessor;
+import org.jobhearted.crawler.processing.ExtractedPage;
+import org.jobhearted.crawler.processing.objects.Url;
+import org.jsoup.nodes.Document;
+
+/**
+ * A completed fetch on its way from the fetch engine, through the page pipeline, back to its crawler. It is handed to
+ * the crawler twice: when the fetch completes, and for a document once the pipeline processed it. Every step of the
+ * pipeline is skipped once one of them failed.
+ */
+class PageJob {
+    private final CrawlManager crawlManager;
+    private final DocumentProcessor processor;
+    private final FetchResult result;
+    private boolean followLinks;
+    private Document document;
+    private ExtractedPage page;
+    private boolean changed;
+    private Exception error;
+    private volatile boolean processed;
+
+    /**
+     * Creates the job of a completed fetch
+     *
+     * @param crawlManager crawler that fetched the url
+     * @param processor    processor of the crawler
+     * @param result       result of the fetch
+     */
+    PageJob(CrawlManager crawlManager, DocumentProcessor processor, FetchResult result) {
+        this.crawlManager = crawlManager;
+        this.processor = processor;
+        this.result = result;
+    }
+
+    /**
+     * Sets whether the links of the document are followed, decided by the crawler before the job enters the pipeline
+     *
+     * @param followLinks whether links are followed
+     */
+    void setFollowLinks(boolean followLinks) {
+        this.followLinks = followLinks;
+    }
+
+    /**
+     * Parses the document, the first step of the pipeline
+     */
+    void parse() {
+        if (error != null) {
+            return;
+        }
+        try {
+            document = result.parse();
+        } catch (Exception e) {
+            error = e;
+        }
+    }
+
+    /**
+     * Extracts the links and the vacature of the document, the second step of the pipeline. The document is let go of
+     * afterwards.
+     */
+    void extract() {
+        if (error != null) {
+            return;
+        }
+        try {
+            page = processor.extract(result.getUrl(), document, followLinks);
+        } catch (Exception e) {
+            error = e;
+        } finally {
+            document = null;
+        }
+    }
+
+    /**
+     * Saves the vacature, the last step of the pipeline. Opens a database connection for the thread when it has none.
+     */
+    void persist() {
+        if (error != null) {
+            return;
+        }
+        try {
+            Database.openDatabaseConnection();
+            changed = processor.persist(page);
+        } catch (Exception e) {
+            error = e;
+        }
+    }
+
+    /**
+     * Hands the processed job back to its crawler
+     */
+    void finish() {
+        processed = true;
+        crawlManager.pageProcessed(this);
+    }
+
+    /**
+     * Stops the job, it goes back to its crawler without the remaining steps
+     *
+     * @param cause why it stopped
+     */
+    void fail(Exception cause) {
+        if (error == null) {
+            error = cause;
+        }
+        finish();
+    }
+
+    /**
+     * Returns the url that was fetched
+     *
+     * @return Url
+     */
+    Url getUrl() {
+        return result.getUrl();
+    }
+
+    /**
+     * Returns the result of the fetch
+     *
+     * @return FetchResult
+     */
+    FetchResult getResult() {
+        return result;
+    }
+
+    /**
+     * Checks if the pipeline is done with the job
+     *
+     * @return whether it has been processed
+     */
+    boolean isProcessed() {
+        return processed;
+    }
+
+    /**
+     * Checks if a step of the pipeline failed
+     *
+     * @return whether it failed
+     */
+    boolean hasFailed() {
+        return error != null;
+    }
+
+    /**
+     * Returns what was extracted from the document
+     *
+     * @return the page, null when the job failed before it was extracted
+     */
+    ExtractedPage getPage() {
+        return page;
+    }
+
+    /**
+     * Returns whether the vacatures of the url changed
+     *
+     * @return whether they changed
+     */
+    boolean hasChanged() {
+        return changed;
+    }
+
+    /**
+     * Returns whether the links of the document were followed
+     *
+     * @return whether links are followed
+     */
+    boolean followsLinks() {
+        return followLinks;
+    }
+
+    /**
+     * Returns why a step of the pipeline failed
+     *
+     * @return the error, null when no step failed
+     */
+    Exception getError() {
+        return error;
+    }
+}
@@ -0,0 +1,100 @@
+package org.jobhearted.crawler.management;
+
+import org.jobhearted.crawler.statistics.Metric;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes the documents fetched by all crawlers in stages, each with its own threads and bounded queue: parse turns
+ * the raw body into a document, extract finds the links and the vacature in it and persist saves the vacature, which
+ * may call the geocoding API. The crawler only hands a document over and gets it back once it has been saved, so a
+ * slow save never delays its next fetch.
+ * <p/>
+ * Parsing and extraction need only the CPU and get a thread per core, whatever the amount of sites being crawled. The
+ * persist stage gets the amount of threads of the persist workers setting, each with its own database connection.
+ * When the pipeline falls behind, its full queues hold up the stage before it, and in the end the crawlers, which do
+ * not fetch while the pipeline has no room for their documents.
+ *
+ * @see PageJob
+ */
+class PagePipeline {
+    private static Logger logger = LoggerFactory.getLogger(PagePipeline.class);
+    private static PagePipeline shared;
+    private final PipelineStage parseStage;
+    private final PipelineStage extractStage;
+    private final PipelineStage persistStage;
+
+    /**
+     * Creates the pipeline and starts the threads of its stages
+     *
+     * @param cpuThreads     threads of the parse and of the extract stage
+     * @param persistThreads threads of the persist stage
+     * @param queueSize      pages each stage queues
+     */
+    PagePipeline(int cpuThreads, int persistThreads, int queueSize) {
+        parseStage = new PipelineStage("parse", cpuThreads, queueSize, Metric.PARSE_QUEUE, Metric.PARSE_TIME);
+        extractStage = new PipelineStage("extract", cpuThreads, queueSize, Metric.EXTRACT_QUEUE, Metric.EXTRACT_TIME);
+        persistStage = new PipelineStage("persist", persistThreads, queueSize, Metric.PERSIST_QUEUE,
+                Metric.PERSIST_TIME);
+    }
+
+    /**
+     * Returns the pipeline shared by all crawlers, created from the settings on first use
+     *
+     * @return the pipeline
+     */
+    static synchronized PagePipeline getShared() {
+        if (shared == null) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            shared = new PagePipeline(cores, Settings.PERSIST_WORKERS, Settings.PIPELINE_QUEUE_SIZE);
+            logger.info("Started the page pipeline with {} parse and extract threads and {} persist threads", cores,
+                    Math.max(1, Settings.PERSIST_WORKERS));
+        }
+        return shared;
+    }
+
+    /**
+     * Hands a fetched document to the pipeline when the parse stage has room for it. Once processed, the job is handed
+     * back to its crawler, also when a stage failed.
+     *
+     * @param job the job of the document
+     * @return whether the pipeline took it
+     */
+    boolean offer(final PageJob job) {
+        return parseStage.offer(new Runnable() {
+            @Override
+            public void run() {
+                job.parse();
+                handOver(job, extractStage, new Runnable() {
+                    @Override
+                    public void run() {
+                        job.extract();
+                        handOver(job, persistStage, new Runnable() {
+                            @Override
+                            public void run() {
+                                job.persist();
+                                job.finish();
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Hands the job to the next stage, waiting while it is full. A failed job skips the remaining stages.
+     */
+    private static void handOver(PageJob job, PipelineStage next, Runnable task) {
+        if (job.hasFailed()) {
+            job.finish();
+            return;
+        }
+        try {
+            next.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail(e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.jobhearted.crawler.management;
+
+import org.jobhearted.crawler.statistics.Metric;
+import org.jobhearted.crawler.statistics.StatisticsTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stage of the page pipeline: a fixed amount of threads working off a bounded queue. When the queue is full, offer
+ * refuses the task and put waits for room, so a stage that falls behind holds up the stage before it instead of piling
+ * up pages in memory. After every task the stage reports the length of its queue and its average time per task.
+ *
+ * @see PagePipeline
+ */
+class PipelineStage {
+    private static Logger logger = LoggerFactory.getLogger(PipelineStage.class);
+    private final String name;
+    private final Metric queueMetric;
+    private final Metric timeMetric;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong tasks = new AtomicLong();
+    private final AtomicLong totalTime = new AtomicLong();
+
+    /**
+     * Creates the stage and starts its threads
+     *
+     * @param name        name of the stage, used for its threads
+     * @param threads     amount of threads
+     * @param queueSize   amount of tasks the queue holds
+     * @param queueMetric metric the length of the queue is reported as
+     * @param timeMetric  metric the average time per task is reported as
+     */
+    PipelineStage(final String name, int threads, int queueSize, Metric queueMetric, Metric timeMetric) {
+        this.name = name;
+        this.queueMetric = queueMetric;
+        this.timeMetric = timeMetric;
+        int size = Math.max(1, threads);
+        executor = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "pipeline-" + name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // The threads always run, so tasks can be queued directly
+        executor.prestartAllCoreThreads();
+    }
+
+    /**
+     * Queues the task when there is room
+     *
+     * @param task task to run
+     * @return whether it was queued, false when the queue is full
+     */
+    boolean offer(Runnable task) {
+        return executor.getQueue().offer(timed(task));
+    }
+
+    /**
+     * Queues the task, waiting for room when the queue is full
+     *
+     * @param task task to run
+     * @throws InterruptedException when interrupted while waiting
+     */
+    void put(Runnable task) throws InterruptedException {
+        executor.getQueue().put(timed(task));
+    }
+
+    /**
+     * Returns the amount of tasks waiting in the queue
+     *
+     * @return queued tasks
+     */
+    int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns the average time of a task
+     *
+     * @return time in milliseconds
+     */
+    double getAverageTime() {
+        long count = tasks.get();
+        return count == 0 ? 0 : totalTime.get() / (count * 1000000.0);
+    }
+
+    /**
+     * Wraps the task so its time is measured and the metrics are reported after it
+     */
+    private Runnable timed(final Runnable task) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.warn("A task of the {} stage failed", name, e);
+                } finally {
+                    totalTime.addAndGet(System.nanoTime() - start);
+                    tasks.incrementAndGet();
+                    StatisticsTracker.updateMetric(queueMetric, getQueued());
+                    StatisticsTracker.updateMetric(timeMetric, getAverageTime());
+                }
+            }
+        };
+    }
+}
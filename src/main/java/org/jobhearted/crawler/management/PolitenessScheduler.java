@@ -0,0 +1,192 @@
+package org.jobhearted.crawler.management;
+
+import org.jobhearted.crawler.database.Database;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Runs many crawlers on a few threads. Every crawler crawls one site, its next step is held in a delay queue until the
+ * time its host is ready for the next request. A dispatcher thread takes the steps that are due and runs them on a
+ * small shared worker pool. A step never sleeps, it returns the time the crawler wants its next step, so the amount of
+ * threads does not depend on the amount of sites being crawled.
+ * <p/>
+ * A crawler with fetches in flight can be woken when one completes, so the result is processed right away instead of
+ * at its next step.
+ *
+ * @see CrawlManager#step()
+ */
+public class PolitenessScheduler {
+    private static Logger logger = LoggerFactory.getLogger(PolitenessScheduler.class);
+    private final DelayQueue<ScheduledStep> queue = new DelayQueue<ScheduledStep>();
+    private final Map<CrawlManager, ScheduledStep> steps = new IdentityHashMap<CrawlManager, ScheduledStep>();
+    private final ExecutorService workers;
+
+    /**
+     * Creates the scheduler and starts its dispatcher thread
+     *
+     * @param workerThreads amount of threads running the steps of the crawlers
+     */
+    public PolitenessScheduler(int workerThreads) {
+        this(Executors.newFixedThreadPool(Math.max(1, workerThreads)));
+    }
+
+    /**
+     * Creates the scheduler on the given workers and starts its dispatcher thread
+     *
+     * @param workers executor running the steps of the crawlers
+     */
+    public PolitenessScheduler(ExecutorService workers) {
+        this.workers = workers;
+        Thread dispatcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        }, "politeness-scheduler");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Adds the crawler to the scheduler, its first step is run right away
+     *
+     * @param crawlManager crawler to run
+     */
+    public synchronized void register(CrawlManager crawlManager) {
+        crawlManager.setScheduler(this);
+        ScheduledStep step = new ScheduledStep(crawlManager);
+        steps.put(crawlManager, step);
+        step.readyAt = System.currentTimeMillis();
+        queue.add(step);
+    }
+
+    /**
+     * Runs the next step of the crawler as soon as possible. When the step is running, the next one follows right after.
+     *
+     * @param crawlManager crawler to wake
+     */
+    public synchronized void wake(CrawlManager crawlManager) {
+        ScheduledStep step = steps.get(crawlManager);
+        if (step == null) {
+            return;
+        }
+        if (step.running) {
+            step.wakeRequested = true;
+        } else if (queue.remove(step)) {
+            step.readyAt = System.currentTimeMillis();
+            queue.add(step);
+        }
+    }
+
+    /**
+     * Returns the amount of crawlers in the scheduler
+     *
+     * @return amount of crawlers
+     */
+    public synchronized int size() {
+        return steps.size();
+    }
+
+    /**
+     * Takes the steps that are due and hands them to the workers
+     */
+    private void dispatch() {
+        while (true) {
+            try {
+                final ScheduledStep step = queue.take();
+                synchronized (this) {
+                    step.running = true;
+                }
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        runStep(step);
+                    }
+                });
+            } catch (InterruptedException e) {
+                logger.warn("Politeness scheduler interrupted, no more crawls are dispatched", e);
+                return;
+            } catch (RejectedExecutionException e) {
+                logger.warn("Workers of the politeness scheduler shut down, no more crawls are dispatched", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs a step of a crawler and schedules its next one. A crawler which stopped or crashed is removed.
+     *
+     * @param step step to run
+     */
+    private void runStep(ScheduledStep step) {
+        long next;
+        try {
+            Database.openDatabaseConnection();
+            next = step.crawlManager.step();
+        } catch (Exception e) {
+            // Catching any exception during the step for both debugging as logging
+            logger.warn("CrawlManager made a hard crash!", e);
+            next = -1;
+        }
+
+        synchronized (this) {
+            step.running = false;
+            if (next < 0) {
+                steps.remove(step.crawlManager);
+                return;
+            }
+            step.readyAt = step.wakeRequested ? System.currentTimeMillis() : next;
+            step.wakeRequested = false;
+            queue.add(step);
+        }
+    }
+
+    /**
+     * The next step of a crawler, due at the time its host is ready
+     */
+    private static class ScheduledStep implements Delayed {
+        private final CrawlManager crawlManager;
+        private volatile long readyAt;
+        private boolean running;
+        private boolean wakeRequested;
+
+        /**
+         * Creates the step of a crawler
+         *
+         * @param crawlManager crawler to run
+         */
+        ScheduledStep(CrawlManager crawlManager) {
+            this.crawlManager = crawlManager;
+        }
+
+        /**
+         * Returns the time left until the step is due
+         *
+         * @param unit unit to return the time in
+         * @return time left, zero or negative when due
+         */
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Orders the steps on the time they are due
+         *
+         * @param other step to compare to
+         * @return negative when this step is due first
+         */
+        @Override
+        public int compareTo(Delayed other) {
+            long difference = getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS);
+            if (difference == 0) {
+                return 0;
+            }
+            return difference < 0 ? -1 : 1;
+        }
+    }
+}
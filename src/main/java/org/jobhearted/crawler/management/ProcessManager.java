@@ -7,8 +7,8 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * The process Manager handles all the different crawlers in our arsenal. handles things like pausing them,
@@ -17,12 +17,15 @@ import java.util.concurrent.ThreadPoolExecutor;
 public class ProcessManager {
     private static Logger logger = LoggerFactory.getLogger(ProcessManager.class);
     List<CrawlManager> crawlManagerList;
-    ThreadPoolExecutor crawlExecutor;
+    ExecutorService crawlExecutor;
+    PolitenessScheduler scheduler;
 
 
     /**
      * Initializes the process manager, used for governing the crawlers and supplying other functions.
-     * Opens the database connection, initializes the crawl managers and starts them.
+     * Opens the database connection, initializes the crawl managers and starts them. In the scheduled execution mode
+     * all crawlers run on the few threads of a PolitenessScheduler, in the virtual mode every crawler gets its own
+     * virtual thread, otherwise every crawler gets its own thread.
      *
      * @throws SQLException Throws this exception when database connection fails
      */
@@ -33,18 +36,54 @@ public class ProcessManager {
         }
         Database.openDatabaseConnection();
 
-        // initialize each crawler and then submit it to the executor
+        // initialize each crawler and then submit it to the executor or scheduler
         crawlManagerList = CrawlManager.findAll();
-        crawlExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(crawlManagerList.size());
+        boolean scheduled = "scheduled".equalsIgnoreCase(Settings.EXECUTION_MODE);
+        if (scheduled) {
+            scheduler = new PolitenessScheduler(Settings.CRAWL_WORKERS);
+        } else {
+            crawlExecutor = createCrawlExecutor(crawlManagerList.size());
+        }
 
         for (CrawlManager crawlManager : crawlManagerList) {
             logger.info("Initializing CrawlManager with id {}  for base url {}", crawlManager.getString("base_url"), crawlManager.getString("id"));
             crawlManager.initialize();
-            crawlExecutor.submit(crawlManager);
+            if (scheduled) {
+                crawlManager.setState(CrawlmanagerState.PAUSED);
+                scheduler.register(crawlManager);
+            } else {
+                crawlExecutor.submit(crawlManager);
+                crawlManager.setState(CrawlmanagerState.PAUSED);
+            }
             logger.debug("CrawlManager {} succesfully started!", crawlManager.getString("id"));
-            crawlManager.setState(CrawlmanagerState.PAUSED);
         }
 
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (CrawlManager crawlManager : crawlManagerList) {
+                    crawlManager.saveState();
+                }
+            }
+        }));
+    }
+
+    /**
+     * Creates the executor the crawlers run on in the thread and virtual execution modes. Falls back to a thread per
+     * crawler when the JVM has no virtual threads.
+     *
+     * @param crawlers amount of crawlers
+     * @return the executor
+     */
+    private static ExecutorService createCrawlExecutor(int crawlers) {
+        if ("virtual".equalsIgnoreCase(Settings.EXECUTION_MODE)) {
+            ExecutorService executor = VirtualThreads.newExecutor();
+            if (executor != null) {
+                return executor;
+            }
+            logger.warn("This JVM has no virtual threads, giving every crawler its own thread");
+        }
+        return Executors.newFixedThreadPool(Math.max(1, crawlers));
     }
 
     /**
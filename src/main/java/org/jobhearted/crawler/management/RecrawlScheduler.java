@@ -0,0 +1,143 @@
+package org.jobhearted.crawler.management;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the visited urls of a crawler ordered on the time they are due for a recrawl. Scheduling and taking the next
+ * due url are O(log n), checking if anything is due is O(1), so the crawler can check on every crawl.
+ * <p/>
+ * Every visited url has an entry, so the entries are kept small: the database id of the url and two times, in a binary
+ * heap of three long arrays instead of an object per url. That is 24 bytes per url, whatever the length of the url.
+ */
+class RecrawlScheduler {
+    private static final int INITIAL_CAPACITY = 64;
+    private long[] urlIds = new long[INITIAL_CAPACITY];
+    private long[] lastVisits = new long[INITIAL_CAPACITY];
+    private long[] dueTimes = new long[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Schedules a recrawl of the url
+     *
+     * @param urlId       database id of the url to recrawl
+     * @param lastVisited time the url was visited, used to recognize entries made obsolete by a later visit
+     * @param dueAt       time the url should be recrawled
+     */
+    synchronized void schedule(long urlId, long lastVisited, long dueAt) {
+        if (size == dueTimes.length) {
+            urlIds = Arrays.copyOf(urlIds, size * 2);
+            lastVisits = Arrays.copyOf(lastVisits, size * 2);
+            dueTimes = Arrays.copyOf(dueTimes, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (dueTimes[parent] <= dueAt) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        set(i, urlId, lastVisited, dueAt);
+    }
+
+    /**
+     * Takes the next recrawl that is due
+     *
+     * @param now current time
+     * @return the recrawl, or null if none is due yet
+     */
+    synchronized ScheduledRecrawl pollDue(long now) {
+        if (size == 0 || dueTimes[0] > now) {
+            return null;
+        }
+        ScheduledRecrawl due = new ScheduledRecrawl(urlIds[0], lastVisits[0]);
+        size--;
+        if (size > 0) {
+            siftDown(urlIds[size], lastVisits[size], dueTimes[size]);
+        }
+        return due;
+    }
+
+    /**
+     * Returns the amount of scheduled recrawls
+     *
+     * @return amount of recrawls
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Puts the entry in the root of the heap and moves it down to its place
+     */
+    private void siftDown(long urlId, long lastVisited, long dueAt) {
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && dueTimes[child + 1] < dueTimes[child]) {
+                child++;
+            }
+            if (dueAt <= dueTimes[child]) {
+                break;
+            }
+            move(child, i);
+            i = child;
+        }
+        set(i, urlId, lastVisited, dueAt);
+    }
+
+    /**
+     * Copies the entry at one index of the heap to another
+     */
+    private void move(int from, int to) {
+        set(to, urlIds[from], lastVisits[from], dueTimes[from]);
+    }
+
+    /**
+     * Sets the entry at an index of the heap
+     */
+    private void set(int i, long urlId, long lastVisited, long dueAt) {
+        urlIds[i] = urlId;
+        lastVisits[i] = lastVisited;
+        dueTimes[i] = dueAt;
+    }
+
+    /**
+     * A recrawl that is due, as handed out by pollDue
+     */
+    static class ScheduledRecrawl {
+        private final long urlId;
+        private final long lastVisited;
+
+        /**
+         * Creates the scheduled recrawl
+         *
+         * @param urlId       database id of the url to recrawl
+         * @param lastVisited time the url was visited
+         */
+        ScheduledRecrawl(long urlId, long lastVisited) {
+            this.urlId = urlId;
+            this.lastVisited = lastVisited;
+        }
+
+        /**
+         * Returns the database id of the url to recrawl
+         *
+         * @return url id
+         */
+        long getUrlId() {
+            return urlId;
+        }
+
+        /**
+         * Returns the time of the visit the recrawl was scheduled for
+         *
+         * @return time in milliseconds
+         */
+        long getLastVisited() {
+            return lastVisited;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package org.jobhearted.crawler.management;
+
+import org.javalite.activejdbc.Base;
+import org.jobhearted.crawler.archive.ArchivedPage;
+import org.jobhearted.crawler.archive.PageArchive;
+import org.jobhearted.crawler.database.Database;
+import org.jobhearted.crawler.processing.DocumentProcessor;
+import org.jobhearted.crawler.processing.ExtractedPage;
+import org.jobhearted.crawler.processing.VacatureBatch;
+import org.jobhearted.crawler.processing.objects.Url;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Processes the pages in the page archive of a crawler again, without fetching them. Used after the process settings of
+ * a crawler changed, to rebuild its vacatures from the pages it already fetched instead of crawling the whole site
+ * again. Runs instead of the crawlers, started with the -reprocess argument.
+ * <p/>
+ * The archive is scanned on the calling thread, which collects the pages in batches of BATCH_SIZE. Every batch is
+ * parsed and extracted on one of the worker threads, one per core, and its vacatures are then saved by a VacatureBatch
+ * in JDBC batches, in a single transaction. All workers share one offline DocumentProcessor. The rate in pages per
+ * second is logged while it runs.
+ */
+public class Reprocessor {
+    static final int BATCH_SIZE = 200;
+    private static final long REPORT_INTERVAL = 10000;
+    private static Logger logger = LoggerFactory.getLogger(Reprocessor.class);
+
+    private final CrawlManager crawlManager;
+    private final ExecutorService workers;
+    private final int threads;
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong unknown = new AtomicLong();
+
+    /**
+     * Creates the reprocessor of a crawler
+     *
+     * @param crawlManager crawler to process the pages of
+     * @param workers      threads to process the batches on
+     * @param threads      amount of worker threads
+     */
+    private Reprocessor(CrawlManager crawlManager, ExecutorService workers, int threads) {
+        this.crawlManager = crawlManager;
+        this.workers = workers;
+        this.threads = threads;
+    }
+
+    /**
+     * Processes the archived pages of the given crawlers again, one crawler after the other
+     *
+     * @param crawlerIds ids of the crawlers, all crawlers when empty
+     */
+    public static void reprocess(Collection<Integer> crawlerIds) {
+        if (!Database.loadSettings()) {
+            logger.error("Could not load the database settings, nothing is reprocessed");
+            return;
+        }
+        Database.openDatabaseConnection();
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            List<CrawlManager> crawlManagers = CrawlManager.findAll();
+            for (CrawlManager crawlManager : crawlManagers) {
+                if (crawlerIds.isEmpty() || crawlerIds.contains(crawlManager.getID())) {
+                    new Reprocessor(crawlManager, workers, threads).run();
+                }
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Scans the archive of the crawler and waits until all batches have been processed
+     */
+    private void run() {
+        File directory = CrawlManager.archiveDirectoryOf(crawlManager.getID());
+        if (!directory.isDirectory()) {
+            logger.warn("Crawler {} has no page archive in {}, nothing to reprocess", crawlManager.getID(), directory);
+            return;
+        }
+        PageArchive archive;
+        try {
+            archive = PageArchive.open(directory);
+        } catch (IOException e) {
+            logger.warn("Could not open the page archive of crawler {}", crawlManager.getID(), e);
+            return;
+        }
+        logger.info("Reprocessing {} pages of crawler {} on {} threads",
+                new Object[]{archive.size(), crawlManager.getID(), threads});
+
+        // Loaded here as it reads the process settings from the database, shared by all workers
+        final DocumentProcessor processor = DocumentProcessor.createOfflineProcessor(crawlManager);
+        // Keeps the scan from reading the archive into memory faster than the workers process it
+        final Semaphore batchesQueued = new Semaphore(threads * 2);
+        // The batches not known to be done yet, so at most about as many as the semaphore lets through
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        final long start = System.currentTimeMillis();
+
+        PageBatcher batcher = new PageBatcher() {
+            private long nextReport = start + REPORT_INTERVAL;
+
+            @Override
+            void submit(final List<ArchivedPage> batch) throws InterruptedException {
+                batchesQueued.acquire();
+                removeDone(futures);
+                futures.add(workers.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            processBatch(batch, processor);
+                        } finally {
+                            batchesQueued.release();
+                        }
+                    }
+                }));
+                long now = System.currentTimeMillis();
+                if (now >= nextReport) {
+                    report(start, now, "Reprocessed");
+                    nextReport = now + REPORT_INTERVAL;
+                }
+            }
+        };
+        try {
+            archive.scan(batcher);
+            batcher.finish();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read the page archive of crawler {}", crawlManager.getID(), e);
+        } catch (InterruptedException e) {
+            logger.warn("Interrupted while reprocessing crawler {}", crawlManager.getID(), e);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.warn("Reprocessing crawler {} failed", crawlManager.getID(), e);
+        }
+        report(start, System.currentTimeMillis(), "Finished reprocessing");
+    }
+
+    /**
+     * Processes a batch of pages. The urls of the pages are looked up with a single query, pages of urls the crawler no
+     * longer knows are skipped. The pages are extracted first, their vacatures are then saved in one transaction.
+     *
+     * @param pages     pages to process
+     * @param processor processor to process them with
+     */
+    private void processBatch(List<ArchivedPage> pages, DocumentProcessor processor) {
+        Database.openDatabaseConnection();
+        int unreadable = 0;
+        int withoutUrl = 0;
+        try {
+            Map<String, Url> urls = findUrls(pages);
+            List<ExtractedPage> extracted = new ArrayList<ExtractedPage>(pages.size());
+            for (ArchivedPage page : pages) {
+                Url url = urls.get(page.getUrl());
+                if (url == null) {
+                    withoutUrl++;
+                    continue;
+                }
+                try {
+                    // An offline processor never follows links
+                    extracted.add(processor.extract(url, page.parse(), false));
+                } catch (IOException e) {
+                    logger.warn("Could not read the archived page of {}", page.getUrl(), e);
+                    unreadable++;
+                }
+            }
+            Base.openTransaction();
+            new VacatureBatch(extracted).write();
+            Base.commitTransaction();
+            processed.addAndGet(extracted.size());
+            failed.addAndGet(unreadable);
+            unknown.addAndGet(withoutUrl);
+        } catch (Exception e) {
+            logger.warn("Could not reprocess a batch of {} pages of crawler {}",
+                    new Object[]{pages.size(), crawlManager.getID(), e});
+            failed.addAndGet(pages.size());
+            try {
+                Base.rollbackTransaction();
+            } catch (Exception rollbackFailure) {
+                logger.debug("Rollback failed", rollbackFailure);
+            }
+        }
+    }
+
+    /**
+     * Removes the batches that are done from the list. Their failures were already logged by processBatch.
+     */
+    private static void removeDone(List<Future<?>> futures) {
+        Iterator<Future<?>> iterator = futures.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Looks up the urls of the pages with one query
+     *
+     * @return url per url string
+     */
+    private Map<String, Url> findUrls(List<ArchivedPage> pages) {
+        StringBuilder placeholders = new StringBuilder();
+        Object[] params = new Object[pages.size() + 1];
+        params[0] = crawlManager.getID();
+        for (int i = 0; i < pages.size(); i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+            params[i + 1] = pages.get(i).getUrl();
+        }
+        List<Url> found = Url.where(Url.COL_CRAWLER_ID + " = ? AND " + Url.COL_URL + " IN (" + placeholders + ")",
+                params);
+        Map<String, Url> urls = new HashMap<String, Url>();
+        for (Url url : found) {
+            urls.put(url.getUrl(), url);
+        }
+        return urls;
+    }
+
+    /**
+     * Logs the progress and the rate in pages per second
+     */
+    private void report(long start, long now, String what) {
+        double seconds = Math.max(1, now - start) / 1000.0;
+        logger.info(String.format("%s %d pages of crawler %d in %.1f s, %.1f pages/s (%d failed, %d without url)",
+                what, processed.get(), crawlManager.getID(), seconds, processed.get() / seconds, failed.get(),
+                unknown.get()));
+    }
+
+    /**
+     * Collects the pages of a scan into batches
+     */
+    private abstract static class PageBatcher implements PageArchive.PageVisitor {
+        private List<ArchivedPage> batch = new ArrayList<ArchivedPage>(BATCH_SIZE);
+        private boolean interrupted;
+
+        @Override
+        public boolean visit(ArchivedPage page) {
+            batch.add(page);
+            if (batch.size() == BATCH_SIZE) {
+                return flush();
+            }
+            return true;
+        }
+
+        /**
+         * Submits the last batch
+         *
+         * @throws InterruptedException when the scan was interrupted
+         */
+        void finish() throws InterruptedException {
+            if (interrupted) {
+                throw new InterruptedException();
+            }
+            if (!batch.isEmpty()) {
+                submit(batch);
+            }
+        }
+
+        /**
+         * Submits the batch that is full and starts a new one
+         */
+        private boolean flush() {
+            try {
+                submit(batch);
+                batch = new ArrayList<ArchivedPage>(BATCH_SIZE);
+                return true;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                return false;
+            }
+        }
+
+        /**
+         * Hands a batch to the workers
+         *
+         * @param batch pages of the batch
+         * @throws InterruptedException when interrupted while waiting for room
+         */
+        abstract void submit(List<ArchivedPage> batch) throws InterruptedException;
+    }
+}
@@ -0,0 +1,125 @@
+package org.jobhearted.crawler.management;
+
+import java.util.*;
+
+/**
+ * Keeps the urls of a crawler that failed waiting until their retry time, so the crawler does not try a failing url
+ * again on its next crawl. The wait grows exponentially with the number of retries of the url, from the minimum to the
+ * maximum retry backoff setting, and is jittered so urls that failed together are not all retried at once.
+ * <p/>
+ * The waiting urls are ordered on their retry time, so taking the urls whose retry time has passed is O(log n) per url
+ * and checking that none has is O(1), however many urls are waiting.
+ * <p/>
+ * The retry times are only kept in memory: after a restart the urls waiting for a retry can be retried right away.
+ *
+ * @param <T> type of the urls
+ */
+class RetryBackoff<T> {
+    private final long minimum;
+    private final long maximum;
+    private final Random random;
+    private final PriorityQueue<Retry<T>> retries = new PriorityQueue<Retry<T>>();
+
+    /**
+     * Creates the backoff of a crawler from the settings
+     */
+    RetryBackoff() {
+        this(Settings.RETRY_BACKOFF_MIN, Settings.RETRY_BACKOFF_MAX, new Random());
+    }
+
+    /**
+     * Creates the backoff
+     *
+     * @param minimum wait after the first failure in milliseconds
+     * @param maximum longest wait, raised to the minimum when it is lower
+     * @param random  source of the jitter
+     */
+    RetryBackoff(long minimum, long maximum, Random random) {
+        this.minimum = Math.max(1, minimum);
+        this.maximum = Math.max(this.minimum, maximum);
+        this.random = random;
+    }
+
+    /**
+     * Makes a failed url wait for its retry
+     *
+     * @param url     the url, flagged for retrying
+     * @param retries number of times the url failed
+     * @param now     current time in milliseconds
+     * @return time of the retry
+     */
+    long schedule(T url, int retries, long now) {
+        long retryTime = now + waitOf(retries);
+        this.retries.add(new Retry<T>(url, retryTime));
+        return retryTime;
+    }
+
+    /**
+     * Returns the wait before the given retry: the minimum doubled for every earlier failure, up to the maximum. The
+     * actual wait is a random time between half of that and all of it.
+     *
+     * @param retries number of times the url failed
+     * @return wait in milliseconds
+     */
+    long waitOf(int retries) {
+        long wait = minimum;
+        for (int i = 1; i < retries && wait < maximum; i++) {
+            wait *= 2;
+        }
+        wait = Math.min(wait, maximum);
+        long half = wait / 2;
+        return half + (long) (random.nextDouble() * (wait - half));
+    }
+
+    /**
+     * Takes the urls whose retry time has passed, in the order of their retry time
+     *
+     * @param now current time in milliseconds
+     * @return the urls that may be retried, empty when none is ready
+     */
+    List<T> pollReady(long now) {
+        if (retries.isEmpty() || retries.peek().retryTime > now) {
+            return Collections.emptyList();
+        }
+        List<T> ready = new ArrayList<T>();
+        while (!retries.isEmpty() && retries.peek().retryTime <= now) {
+            ready.add(retries.poll().url);
+        }
+        return ready;
+    }
+
+    /**
+     * Checks if any url is waiting for its retry
+     *
+     * @return whether there are waiting urls
+     */
+    boolean hasWaiting() {
+        return !retries.isEmpty();
+    }
+
+    /**
+     * An url waiting for its retry time
+     *
+     * @param <T> type of the url
+     */
+    private static class Retry<T> implements Comparable<Retry<T>> {
+        private final T url;
+        private final long retryTime;
+
+        /**
+         * Creates the waiting url
+         *
+         * @param url       the url
+         * @param retryTime time of the retry
+         */
+        Retry(T url, long retryTime) {
+            this.url = url;
+            this.retryTime = retryTime;
+        }
+
+        @Override
+        public int compareTo(Retry<T> other) {
+            return retryTime < other.retryTime ? -1 : (retryTime == other.retryTime ? 0 : 1);
+        }
+    }
+}
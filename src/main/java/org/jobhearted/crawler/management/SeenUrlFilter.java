@@ -0,0 +1,232 @@
+package org.jobhearted.crawler.management;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+
+/**
+ * Bloom filter over the fingerprints of all urls a crawler knows. Answers "definitely new" for an url without touching
+ * the url list or the database, a "maybe" still needs an exact check. Takes 10 bits per url for about 1% false
+ * positives.
+ * <p/>
+ * The filter is saved to disk together with the highest url id it covers, so at startup only the urls added after that
+ * id have to be read from the database to bring it up to date.
+ */
+class SeenUrlFilter {
+    private static Logger logger = LoggerFactory.getLogger(SeenUrlFilter.class);
+    private static final int FILE_MAGIC = 0x5345454e;
+    private static final int FILE_HEADER_SIZE = 4 + 8 + 4;
+    private static final int BITS_PER_URL = 10;
+    private static final int HASH_FUNCTIONS = 7;
+    private static final int MINIMUM_CAPACITY = 100000;
+    private final long[] bits;
+    private final long bitCount;
+    private long lastUrlId;
+    private volatile boolean complete;
+
+    /**
+     * Creates an empty filter
+     *
+     * @param expectedUrls amount of urls the filter should hold without losing precision
+     */
+    SeenUrlFilter(int expectedUrls) {
+        this(new long[(int) ((Math.max(expectedUrls, MINIMUM_CAPACITY) * (long) BITS_PER_URL + 63) / 64)]);
+    }
+
+    /**
+     * Creates a filter on the given bits
+     *
+     * @param bits bits of the filter
+     */
+    private SeenUrlFilter(long[] bits) {
+        this.bits = bits;
+        this.bitCount = bits.length * 64L;
+    }
+
+    /**
+     * Adds the fingerprint of an url to the filter
+     *
+     * @param fingerprint fingerprint of the url
+     */
+    void put(long fingerprint) {
+        long hash1 = fingerprint;
+        long hash2 = (fingerprint >>> 32) | (fingerprint << 32) | 1;
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            long bit = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitCount;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Checks if an url with the fingerprint may have been added
+     *
+     * @param fingerprint fingerprint of the url
+     * @return false if it was definitely not added, true if it might have been
+     */
+    boolean mightContain(long fingerprint) {
+        long hash1 = fingerprint;
+        long hash2 = (fingerprint >>> 32) | (fingerprint << 32) | 1;
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            long bit = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitCount;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Registers the database id of an added url, so a saved filter knows which urls it covers
+     *
+     * @param urlId id of the url
+     */
+    void coverUrlId(long urlId) {
+        lastUrlId = Math.max(lastUrlId, urlId);
+    }
+
+    /**
+     * Returns the highest url id covered by the filter
+     *
+     * @return url id
+     */
+    long getLastUrlId() {
+        return lastUrlId;
+    }
+
+    /**
+     * Checks if the filter was saved for the urls in the database: it can not cover a higher id than the database has,
+     * that filter belongs to a database which was replaced or emptied since
+     *
+     * @param maxUrlId highest id of the urls of the crawler in the database, 0 when it has none
+     * @return whether the filter can be brought up to date from the database
+     */
+    boolean matches(long maxUrlId) {
+        return lastUrlId <= maxUrlId;
+    }
+
+    /**
+     * Returns the amount of urls the filter can hold without losing precision
+     *
+     * @return capacity
+     */
+    long capacity() {
+        return bitCount / BITS_PER_URL;
+    }
+
+    /**
+     * Marks that all urls of the crawler have been added, from then on a "definitely new" answer can be trusted
+     */
+    void markComplete() {
+        complete = true;
+    }
+
+    /**
+     * Returns whether all urls of the crawler have been added
+     *
+     * @return whether the filter is complete
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Saves the filter in the frontier directory. Only complete filters are saved.
+     *
+     * @param crawlerId id of the crawler the filter belongs to
+     */
+    void save(int crawlerId) {
+        save(fileOf(crawlerId));
+    }
+
+    /**
+     * Saves the filter in the given file, replacing it. Only complete filters are saved.
+     *
+     * @param file file to save to
+     */
+    void save(File file) {
+        if (!complete) {
+            return;
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            try {
+                out.writeInt(FILE_MAGIC);
+                out.writeLong(lastUrlId);
+                out.writeInt(bits.length);
+                for (long word : bits) {
+                    out.writeLong(word);
+                }
+            } finally {
+                out.close();
+            }
+            if ((file.exists() && !file.delete()) || !temporary.renameTo(file)) {
+                logger.warn("Could not replace the seen url filter {}", file.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            logger.warn("Could not save the seen url filter {}", file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Loads the saved filter of a crawler
+     *
+     * @param crawlerId id of the crawler
+     * @return the filter, or null if there is no usable saved filter
+     */
+    static SeenUrlFilter load(int crawlerId) {
+        return load(fileOf(crawlerId));
+    }
+
+    /**
+     * Loads a filter saved in the given file. A file which is not a filter, is cut off or does not have the length its
+     * header promises is not used.
+     *
+     * @param file file to load
+     * @return the filter, or null if the file does not exist or is not usable
+     */
+    static SeenUrlFilter load(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != FILE_MAGIC) {
+                    logger.warn("Ignoring invalid seen url filter {}", file.getAbsolutePath());
+                    return null;
+                }
+                long lastUrlId = in.readLong();
+                int words = in.readInt();
+                if (lastUrlId < 0 || words <= 0 || file.length() != FILE_HEADER_SIZE + words * 8L) {
+                    logger.warn("Ignoring damaged seen url filter {}", file.getAbsolutePath());
+                    return null;
+                }
+                long[] bits = new long[words];
+                for (int i = 0; i < bits.length; i++) {
+                    bits[i] = in.readLong();
+                }
+                SeenUrlFilter filter = new SeenUrlFilter(bits);
+                filter.lastUrlId = lastUrlId;
+                return filter;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not load the seen url filter {}", file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the file the filter of a crawler is saved in
+     */
+    private static File fileOf(int crawlerId) {
+        File directory = new File(FrontierSpillFile.FRONTIER_DIRECTORY);
+        if (!directory.exists() && !directory.mkdirs()) {
+            logger.warn("Could not create the frontier directory {}", directory.getAbsolutePath());
+        }
+        return new File(directory, crawlerId + ".bloom");
+    }
+}
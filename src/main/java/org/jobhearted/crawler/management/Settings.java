@@ -19,13 +19,55 @@ public class Settings {
     private static final String SETTING_RETRY_POLICY = "retry_policy";
     private static final String SETTING_RECRAWL_TIME = "recrawl_time";
     private static final String SETTING_RECRAWL_CHECK_TIME = "recrawl_check_time";
+    private static final String SETTING_RECRAWL_MIN_TIME = "recrawl_min_time";
+    private static final String SETTING_RECRAWL_MAX_TIME = "recrawl_max_time";
+    private static final String SETTING_FRONTIER_MEMORY_LIMIT = "frontier_memory_limit";
+    private static final String SETTING_FETCH_ENGINE = "fetch_engine";
+    private static final String SETTING_FETCH_IN_FLIGHT = "fetch_in_flight";
+    private static final String SETTING_EXECUTION_MODE = "execution_mode";
+    private static final String SETTING_CRAWL_WORKERS = "crawl_workers";
+    private static final String SETTING_KEEP_ALIVE_CONNECTIONS = "keep_alive_connections";
+    private static final String SETTING_DNS_CACHE_TIME = "dns_cache_time";
+    private static final String SETTING_CRAWL_DELAY_MIN = "crawl_delay_min";
+    private static final String SETTING_CRAWL_DELAY_MAX = "crawl_delay_max";
+    private static final String SETTING_ROBOTS_CACHE_TIME = "robots_cache_time";
+    private static final String SETTING_DISCOVERY_MODE = "discovery_mode";
+    private static final String SETTING_SITEMAP_CHECK_TIME = "sitemap_check_time";
+    private static final String SETTING_MAX_BODY_SIZE = "max_body_size";
+    private static final String SETTING_PAGE_ARCHIVE = "page_archive";
+    private static final String SETTING_RETRY_BACKOFF_MIN = "retry_backoff_min";
+    private static final String SETTING_RETRY_BACKOFF_MAX = "retry_backoff_max";
+    private static final String SETTING_CIRCUIT_BREAKER_TIME = "circuit_breaker_time";
+    private static final String SETTING_PIPELINE_QUEUE_SIZE = "pipeline_queue_size";
+    private static final String SETTING_PERSIST_WORKERS = "persist_workers";
     private static final String CONFIG_FILE = "jobhearted.cfg";
 
     // Settings
     public static int RECRAWL_TIME; // time to recrawl in miliseconds, default is 1 day
     public static int RETRY_POLICY; // Time the crawler will revisit the page before it is marker dead.
-    public static int CRAWL_TIMEOUT; // Time in which maximum 1 crawl can occur. Default is 10 seconds
+    public static int CRAWL_TIMEOUT; // Initial time between two crawls, adapted by the crawl delay. Default is 10 seconds
     public static int RECRAWL_CHECK_TIME; // How often the crawlmanager check for recrawl, default is 10 minutes
+    public static int RECRAWL_MIN_TIME; // Shortest recrawl time an url can adapt to, default is 1 hour
+    public static int RECRAWL_MAX_TIME; // Longest recrawl time an url can adapt to, default is 7 days
+    public static int FRONTIER_MEMORY_LIMIT; // Urls per flag a crawler keeps in memory before spilling to disk, 0 is no limit
+    public static String FETCH_ENGINE; // Engine used to fetch pages, "jsoup" or "http". Default is jsoup
+    public static int FETCH_IN_FLIGHT; // Fetches a crawler may have in flight at once with the http engine, default is 2
+    public static String EXECUTION_MODE; // "thread", "virtual" (a virtual thread per crawler) or "scheduled"
+    public static int CRAWL_WORKERS; // Threads of the politeness scheduler running all crawlers, default is 4
+    public static int KEEP_ALIVE_CONNECTIONS; // Idle connections kept open per host for reuse, default is 5
+    public static int DNS_CACHE_TIME; // Time a resolved host name is cached in miliseconds, default is 5 minutes
+    public static int CRAWL_DELAY_MIN; // Shortest time between two crawls the crawl delay can adapt to, default is 1 second
+    public static int CRAWL_DELAY_MAX; // Longest time between two crawls the crawl delay can back off to, default is 2 minutes
+    public static int ROBOTS_CACHE_TIME; // Time the robots.txt of a site is cached in miliseconds, default is 1 day
+    public static String DISCOVERY_MODE; // "links" follows every link, "sitemap" seeds from the sitemaps, "both" does both
+    public static int SITEMAP_CHECK_TIME; // How often the sitemaps of a site are read again in miliseconds, default is 1 day
+    public static int MAX_BODY_SIZE; // Largest page in bytes the crawler downloads, larger ones count as a file. Default is 2 MB
+    public static String PAGE_ARCHIVE; // Directory the fetched pages are archived in for reprocessing, empty to not archive them
+    public static int RETRY_BACKOFF_MIN; // Wait before retrying a failed url in miliseconds, doubled for every retry. Default is 1 minute
+    public static int RETRY_BACKOFF_MAX; // Longest wait before retrying a failed url in miliseconds, default is 6 hours
+    public static int CIRCUIT_BREAKER_TIME; // Time a crawler pauses when its site keeps failing in miliseconds, doubled while it does. Default is 5 minutes
+    public static int PIPELINE_QUEUE_SIZE; // Pages each stage of the page pipeline queues before the crawlers hold off fetching, default is 32
+    public static int PERSIST_WORKERS; // Threads of the page pipeline writing vacatures to the database, each with its own connection. Default is 4
 
     /**
      * Reads the settings from the configuration file.
@@ -39,6 +81,28 @@ public class Settings {
             RETRY_POLICY = Integer.parseInt(configFile.getProperty(SETTING_RETRY_POLICY));
             RECRAWL_TIME = Integer.parseInt(configFile.getProperty(SETTING_RECRAWL_TIME));
             RECRAWL_CHECK_TIME = Integer.parseInt(configFile.getProperty(SETTING_RECRAWL_CHECK_TIME));
+            // Settings added later fall back to their default, so older configuration files stay valid
+            FRONTIER_MEMORY_LIMIT = Integer.parseInt(configFile.getProperty(SETTING_FRONTIER_MEMORY_LIMIT, "0"));
+            RECRAWL_MIN_TIME = Integer.parseInt(configFile.getProperty(SETTING_RECRAWL_MIN_TIME, "3600000"));
+            RECRAWL_MAX_TIME = Integer.parseInt(configFile.getProperty(SETTING_RECRAWL_MAX_TIME, "604800000"));
+            FETCH_ENGINE = configFile.getProperty(SETTING_FETCH_ENGINE, "jsoup");
+            FETCH_IN_FLIGHT = Integer.parseInt(configFile.getProperty(SETTING_FETCH_IN_FLIGHT, "2"));
+            EXECUTION_MODE = configFile.getProperty(SETTING_EXECUTION_MODE, "thread");
+            CRAWL_WORKERS = Integer.parseInt(configFile.getProperty(SETTING_CRAWL_WORKERS, "4"));
+            KEEP_ALIVE_CONNECTIONS = Integer.parseInt(configFile.getProperty(SETTING_KEEP_ALIVE_CONNECTIONS, "5"));
+            DNS_CACHE_TIME = Integer.parseInt(configFile.getProperty(SETTING_DNS_CACHE_TIME, "300000"));
+            CRAWL_DELAY_MIN = Integer.parseInt(configFile.getProperty(SETTING_CRAWL_DELAY_MIN, "1000"));
+            CRAWL_DELAY_MAX = Integer.parseInt(configFile.getProperty(SETTING_CRAWL_DELAY_MAX, "120000"));
+            ROBOTS_CACHE_TIME = Integer.parseInt(configFile.getProperty(SETTING_ROBOTS_CACHE_TIME, "86400000"));
+            DISCOVERY_MODE = configFile.getProperty(SETTING_DISCOVERY_MODE, "links");
+            SITEMAP_CHECK_TIME = Integer.parseInt(configFile.getProperty(SETTING_SITEMAP_CHECK_TIME, "86400000"));
+            MAX_BODY_SIZE = Integer.parseInt(configFile.getProperty(SETTING_MAX_BODY_SIZE, "2097152"));
+            PAGE_ARCHIVE = configFile.getProperty(SETTING_PAGE_ARCHIVE, "archive");
+            RETRY_BACKOFF_MIN = Integer.parseInt(configFile.getProperty(SETTING_RETRY_BACKOFF_MIN, "60000"));
+            RETRY_BACKOFF_MAX = Integer.parseInt(configFile.getProperty(SETTING_RETRY_BACKOFF_MAX, "21600000"));
+            CIRCUIT_BREAKER_TIME = Integer.parseInt(configFile.getProperty(SETTING_CIRCUIT_BREAKER_TIME, "300000"));
+            PIPELINE_QUEUE_SIZE = Integer.parseInt(configFile.getProperty(SETTING_PIPELINE_QUEUE_SIZE, "32"));
+            PERSIST_WORKERS = Integer.parseInt(configFile.getProperty(SETTING_PERSIST_WORKERS, "4"));
         } catch (IOException e) {
             LOGGER.warn("Unable to open settings file, loading defaults!", e);
             createDefaultSettingsFile();
@@ -58,6 +122,27 @@ public class Settings {
         configFile.put(SETTING_CRAWL_TIMEOUT, Integer.toString(CRAWL_TIMEOUT));
         configFile.put(SETTING_RECRAWL_TIME, Integer.toString(RECRAWL_TIME));
         configFile.put(SETTING_RECRAWL_CHECK_TIME, Integer.toString(RECRAWL_CHECK_TIME));
+        configFile.put(SETTING_FRONTIER_MEMORY_LIMIT, Integer.toString(FRONTIER_MEMORY_LIMIT));
+        configFile.put(SETTING_RECRAWL_MIN_TIME, Integer.toString(RECRAWL_MIN_TIME));
+        configFile.put(SETTING_RECRAWL_MAX_TIME, Integer.toString(RECRAWL_MAX_TIME));
+        configFile.put(SETTING_FETCH_ENGINE, FETCH_ENGINE);
+        configFile.put(SETTING_FETCH_IN_FLIGHT, Integer.toString(FETCH_IN_FLIGHT));
+        configFile.put(SETTING_EXECUTION_MODE, EXECUTION_MODE);
+        configFile.put(SETTING_CRAWL_WORKERS, Integer.toString(CRAWL_WORKERS));
+        configFile.put(SETTING_KEEP_ALIVE_CONNECTIONS, Integer.toString(KEEP_ALIVE_CONNECTIONS));
+        configFile.put(SETTING_DNS_CACHE_TIME, Integer.toString(DNS_CACHE_TIME));
+        configFile.put(SETTING_CRAWL_DELAY_MIN, Integer.toString(CRAWL_DELAY_MIN));
+        configFile.put(SETTING_CRAWL_DELAY_MAX, Integer.toString(CRAWL_DELAY_MAX));
+        configFile.put(SETTING_ROBOTS_CACHE_TIME, Integer.toString(ROBOTS_CACHE_TIME));
+        configFile.put(SETTING_DISCOVERY_MODE, DISCOVERY_MODE);
+        configFile.put(SETTING_SITEMAP_CHECK_TIME, Integer.toString(SITEMAP_CHECK_TIME));
+        configFile.put(SETTING_MAX_BODY_SIZE, Integer.toString(MAX_BODY_SIZE));
+        configFile.put(SETTING_PAGE_ARCHIVE, PAGE_ARCHIVE);
+        configFile.put(SETTING_RETRY_BACKOFF_MIN, Integer.toString(RETRY_BACKOFF_MIN));
+        configFile.put(SETTING_RETRY_BACKOFF_MAX, Integer.toString(RETRY_BACKOFF_MAX));
+        configFile.put(SETTING_CIRCUIT_BREAKER_TIME, Integer.toString(CIRCUIT_BREAKER_TIME));
+        configFile.put(SETTING_PIPELINE_QUEUE_SIZE, Integer.toString(PIPELINE_QUEUE_SIZE));
+        configFile.put(SETTING_PERSIST_WORKERS, Integer.toString(PERSIST_WORKERS));
         try {
             configFile.store(new FileOutputStream(CONFIG_FILE), " This is the General settings file for the JobHearted Crawl application \r\n Last saved:");
         } catch (IOException e) {
@@ -74,6 +159,27 @@ public class Settings {
         RETRY_POLICY = 5;
         RECRAWL_TIME = 86400001;
         RECRAWL_CHECK_TIME = 600000;
+        FRONTIER_MEMORY_LIMIT = 0;
+        RECRAWL_MIN_TIME = 3600000;
+        RECRAWL_MAX_TIME = 604800000;
+        FETCH_ENGINE = "jsoup";
+        FETCH_IN_FLIGHT = 2;
+        EXECUTION_MODE = "thread";
+        CRAWL_WORKERS = 4;
+        KEEP_ALIVE_CONNECTIONS = 5;
+        DNS_CACHE_TIME = 300000;
+        CRAWL_DELAY_MIN = 1000;
+        CRAWL_DELAY_MAX = 120000;
+        ROBOTS_CACHE_TIME = 86400000;
+        DISCOVERY_MODE = "links";
+        SITEMAP_CHECK_TIME = 86400000;
+        MAX_BODY_SIZE = 2097152;
+        PAGE_ARCHIVE = "archive";
+        RETRY_BACKOFF_MIN = 60000;
+        RETRY_BACKOFF_MAX = 21600000;
+        CIRCUIT_BREAKER_TIME = 300000;
+        PIPELINE_QUEUE_SIZE = 32;
+        PERSIST_WORKERS = 4;
 
         saveSettings();
     }
@@ -0,0 +1,225 @@
+package org.jobhearted.crawler.management;
+
+import org.jobhearted.crawler.fetching.HttpClient;
+import org.jobhearted.crawler.processing.SitemapParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Discovers the urls of a site from its sitemaps in the background. Sitemap indexes are followed to the sitemaps they
+ * list, breadth first, up to MAX_SITEMAPS per run. The urls found are handed to the crawl thread in batches, which
+ * adds them to the frontier with seedFromSitemap.
+ * <p/>
+ * A discovery keeps the lastmod of the sitemaps it read, so a later run skips the sitemaps of an index that did not
+ * change since. Like the FrontierLoader, the discoveries of all crawlers share a small pool of threads.
+ *
+ * @see CrawlManager#seedFromSitemap(List)
+ */
+class SitemapDiscovery implements Runnable, SitemapParser.Listener {
+    static final int BATCH_SIZE = 500;
+    static final int MAX_SITEMAPS = 1000;
+    private static final int DISCOVERY_THREADS = 2;
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(DISCOVERY_THREADS);
+    private static Logger logger = LoggerFactory.getLogger(SitemapDiscovery.class);
+    private final int crawlerId;
+    private final List<String> roots;
+    private final Queue<List<Entry>> batches = new ConcurrentLinkedQueue<List<Entry>>();
+    private final Map<String, Long> sitemapLastModified = new HashMap<String, Long>();
+    private volatile boolean running;
+    private volatile boolean finished;
+    private volatile int urlCount;
+    // State of the current run, only used by the thread of the run
+    private Deque<String> pending;
+    private Set<String> seen;
+    private List<Entry> currentBatch;
+    private Map<String, Long> listedLastModified;
+    private int found;
+
+    /**
+     * Creates the discovery of a crawler
+     *
+     * @param crawlerId id of the crawler, for logging
+     * @param roots     urls of the sitemaps to start from
+     */
+    SitemapDiscovery(int crawlerId, List<String> roots) {
+        this.crawlerId = crawlerId;
+        this.roots = new ArrayList<String>(roots);
+    }
+
+    /**
+     * Starts a run in the background, unless one is still running
+     */
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        EXECUTOR.submit(this);
+    }
+
+    /**
+     * Takes the next batch of urls found
+     *
+     * @return the batch, or null when there is none waiting
+     */
+    List<Entry> pollBatch() {
+        return batches.poll();
+    }
+
+    /**
+     * Returns whether a run has finished
+     *
+     * @return true after the first run
+     */
+    boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Returns the amount of urls the last run found
+     *
+     * @return amount of urls
+     */
+    int getUrlCount() {
+        return urlCount;
+    }
+
+    /**
+     * Reads the sitemaps, starting at the roots
+     */
+    @Override
+    public void run() {
+        pending = new ArrayDeque<String>(roots);
+        seen = new HashSet<String>(roots);
+        listedLastModified = new HashMap<String, Long>();
+        currentBatch = new ArrayList<Entry>();
+        found = 0;
+        int read = 0;
+        try {
+            while (!pending.isEmpty() && read < MAX_SITEMAPS) {
+                String sitemap = pending.poll();
+                read++;
+                try {
+                    InputStream in = HttpClient.getShared().openStream(sitemap);
+                    try {
+                        SitemapParser.parse(in, this);
+                    } finally {
+                        in.close();
+                    }
+                    Long lastModified = listedLastModified.remove(sitemap);
+                    if (lastModified != null) {
+                        sitemapLastModified.put(sitemap, lastModified);
+                    }
+                } catch (IOException e) {
+                    logger.warn("Could not read sitemap {} of crawler {}", new Object[]{sitemap, crawlerId, e});
+                }
+                politenessDelay();
+            }
+        } finally {
+            if (!currentBatch.isEmpty()) {
+                batches.add(currentBatch);
+            }
+            urlCount = found;
+            finished = true;
+            running = false;
+        }
+        logger.info("Read {} sitemaps of crawler {}, found {} urls", new Object[]{read, crawlerId, found});
+    }
+
+    /**
+     * Adds an url of a sitemap to the current batch, handing the batch to the crawl thread when it is full
+     *
+     * @param location     url of the page
+     * @param lastModified time the page last changed, or SitemapParser.NO_LAST_MODIFIED
+     */
+    @Override
+    public void url(String location, long lastModified) {
+        currentBatch.add(new Entry(location, lastModified));
+        found++;
+        if (currentBatch.size() == BATCH_SIZE) {
+            batches.add(currentBatch);
+            currentBatch = new ArrayList<Entry>();
+        }
+    }
+
+    /**
+     * Queues a sitemap of an index for reading, unless it was read in this run or did not change since a previous one
+     *
+     * @param location     url of the sitemap
+     * @param lastModified time the sitemap last changed, or SitemapParser.NO_LAST_MODIFIED
+     */
+    @Override
+    public void sitemap(String location, long lastModified) {
+        if (seen.add(location) && changed(location, lastModified)) {
+            pending.add(location);
+            if (lastModified != SitemapParser.NO_LAST_MODIFIED) {
+                listedLastModified.put(location, lastModified);
+            }
+        }
+    }
+
+    /**
+     * Checks if a sitemap changed since a previous run read it
+     *
+     * @return true when it changed or has no lastmod
+     */
+    private boolean changed(String sitemap, long lastModified) {
+        Long previous = sitemapLastModified.get(sitemap);
+        return lastModified == SitemapParser.NO_LAST_MODIFIED || previous == null || previous < lastModified;
+    }
+
+    /**
+     * Waits the shortest crawl delay between two sitemaps, as they come from the same site as the pages
+     */
+    private static void politenessDelay() {
+        try {
+            Thread.sleep(Settings.CRAWL_DELAY_MIN);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * An url listed in a sitemap
+     */
+    static class Entry {
+        private final String location;
+        private final long lastModified;
+
+        /**
+         * Creates the entry
+         *
+         * @param location     url of the page
+         * @param lastModified time the page last changed, or SitemapParser.NO_LAST_MODIFIED
+         */
+        Entry(String location, long lastModified) {
+            this.location = location;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Returns the url of the page
+         *
+         * @return url string
+         */
+        String getLocation() {
+            return location;
+        }
+
+        /**
+         * Returns the time the page last changed
+         *
+         * @return time in milliseconds, or SitemapParser.NO_LAST_MODIFIED
+         */
+        long getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -1,39 +1,359 @@
 package org.jobhearted.crawler.management;
 
+import org.javalite.activejdbc.Base;
+import org.jobhearted.crawler.processing.UrlFingerprint;
 import org.jobhearted.crawler.processing.objects.Flag;
 import org.jobhearted.crawler.processing.objects.Url;
+import org.jobhearted.crawler.statistics.StatisticsTracker;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
- * List of Urls which has some functions that are useful for the crawler.
+ * Frontier of Urls used by the crawler. Every flag has its own insertion ordered queue and all urls are indexed on their
+ * url string, so selecting the next url, switching flags and checking membership are all constant time operations.
+ * <p/>
+ * With a memory limit set, each flag queue only keeps its head in memory and spills the rest to a file on disk. Of the
+ * spilled urls only a 64-bit fingerprint stays on the heap, for the membership checks. An url which got its database id
+ * while it was spilled looks it up when it is read back.
+ * <p/>
+ * All urls that enter the list are also put in a SeenUrlFilter, which can tell an url is new without an exact lookup.
+ * <p/>
+ * The list keeps the StatisticsTracker up to date: adding an url counts it for its flag, removing it uncounts it and
+ * a flag switch of an url in the list moves the count from the old to the new flag.
+ *
+ * @see FlagQueue
+ * @see SeenUrlFilter
  */
-public class UrlList extends ArrayList<Url> {
+public class UrlList {
+    private final CrawlManager crawlManager;
+    private final Map<String, Url> index = new HashMap<String, Url>();
+    private final LongHashSet spilled = new LongHashSet();
+    private final Map<Flag, FlagQueue> queues = new EnumMap<Flag, FlagQueue>(Flag.class);
+    private final SeenUrlFilter seenFilter;
+    private volatile boolean complete;
 
     /**
-     * Gets the first url in the list with the parameter flag given
+     * Creates an empty url list for the given crawl manager
+     *
+     * @param crawlManager CrawlManager the urls belong to, used for the statistics
+     * @param memoryLimit  maximum amount of urls per flag kept in memory, 0 to keep everything in memory
+     * @param seenFilter   filter of all urls the crawler knows, complete when restored from disk
+     */
+    UrlList(CrawlManager crawlManager, int memoryLimit, SeenUrlFilter seenFilter) {
+        this.crawlManager = crawlManager;
+        this.seenFilter = seenFilter;
+        for (Flag flag : Flag.values()) {
+            queues.put(flag, new FlagQueue(crawlManager.getID(), flag, memoryLimit));
+        }
+    }
+
+    /**
+     * Adds the url to the tail of the queue of its flag. Urls which are already in the list are ignored.
+     *
+     * @param url Url to add
+     * @return whether the url was added
+     */
+    public synchronized boolean add(Url url) {
+        if (contains(url.getUrl())) {
+            return false;
+        }
+        Flag flag = url.getFlag();
+        enqueue(url, flag);
+        StatisticsTracker.switchFlag(crawlManager, null, flag);
+        return true;
+    }
+
+    /**
+     * Adds an url loaded from the database to the list. Unlike add, it is not counted at the StatisticsTracker,
+     * as the counts of urls in the database are set in one go when the crawler starts.
+     *
+     * @param url Url to add
+     * @return whether the url was added
+     */
+    public synchronized boolean load(Url url) {
+        if (contains(url.getUrl())) {
+            return false;
+        }
+        enqueue(url, url.getFlag());
+        return true;
+    }
+
+    /**
+     * Marks that all urls of the crawler in the database have been loaded into the list
+     */
+    public void markComplete() {
+        seenFilter.markComplete();
+        complete = true;
+    }
+
+    /**
+     * Returns whether all urls of the crawler in the database have been loaded. Until then, an url which is not in the
+     * list may still be in the database.
+     *
+     * @return whether the list is complete
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Removes the url from the list
+     *
+     * @param url Url to remove
+     * @return whether the url was in the list
+     */
+    public synchronized boolean remove(Url url) {
+        if (index.get(url.getUrl()) != url) {
+            return false;
+        }
+        Flag flag = url.getFlag();
+        index.remove(url.getUrl());
+        queues.get(flag).remove(url);
+        StatisticsTracker.switchFlag(crawlManager, flag, null);
+        return true;
+    }
+
+    /**
+     * Moves the url from the queue of the old flag to the tail of the queue of the new flag. Called by the url itself
+     * when its flag is changed, urls that are not in this list are ignored.
+     *
+     * @param url     Url which switched flags
+     * @param oldFlag Flag the url had
+     * @param newFlag Flag the url has now
+     */
+    public synchronized void switchFlag(Url url, Flag oldFlag, Flag newFlag) {
+        if (oldFlag == newFlag || index.get(url.getUrl()) != url) {
+            return;
+        }
+        queues.get(oldFlag).remove(url);
+        index.remove(url.getUrl());
+        enqueue(url, newFlag);
+        StatisticsTracker.switchFlag(crawlManager, oldFlag, newFlag);
+    }
+
+    /**
+     * Returns the url with the given url string, if it is in memory
+     *
+     * @param url url string to look up
+     * @return the Url, or null if it is not in the list or spilled to disk
+     */
+    public synchronized Url get(String url) {
+        return index.get(url);
+    }
+
+    /**
+     * Takes a spilled url back into memory, so it can switch flags like any other url in the list. The url is usually
+     * loaded from the database, its record in the spill file is skipped when read back.
+     *
+     * @param url spilled Url, with the flag it was spilled with
+     * @return whether the url was spilled
+     */
+    public synchronized boolean restoreSpilled(Url url) {
+        if (index.containsKey(url.getUrl()) || !spilled.remove(url.getFingerprint())) {
+            return false;
+        }
+        FlagQueue queue = queues.get(url.getFlag());
+        queue.markStale();
+        queue.keep(url);
+        index.put(url.getUrl(), url);
+        return true;
+    }
+
+    /**
+     * Parks the url in the queue of its flag: it stays in the list, but getFirstWithFlag skips it until it is
+     * unparked. Urls which are not in memory are ignored.
+     *
+     * @param url Url to park
+     * @return whether the url was parked
+     */
+    public synchronized boolean park(Url url) {
+        return index.get(url.getUrl()) == url && queues.get(url.getFlag()).park(url);
+    }
+
+    /**
+     * Puts a parked url back at the tail of the queue of its flag. An url which switched flags in the meantime is no
+     * longer parked.
+     *
+     * @param url Url to unpark
+     * @return whether the url was parked
+     */
+    public synchronized boolean unpark(Url url) {
+        return index.get(url.getUrl()) == url && queues.get(url.getFlag()).unpark(url);
+    }
+
+    /**
+     * Gives the url with the given url string the id it got when it was inserted in the database, and unparks it when
+     * it was parked waiting for its id. A spilled url looks its id up in the database when it is read back.
+     *
+     * @param url url string of the inserted url
+     * @param id  database id of the url
+     */
+    public synchronized void assignId(String url, long id) {
+        Url resident = index.get(url);
+        if (resident != null) {
+            if (resident.getId() == null) {
+                resident.setLong(Url.COL_ID, id);
+                queues.get(resident.getFlag()).unpark(resident);
+            }
+            seenFilter.coverUrlId(id);
+        } else if (spilled.size() > 0 && spilled.contains(UrlFingerprint.of(url))) {
+            seenFilter.coverUrlId(id);
+        }
+    }
+
+    /**
+     * Checks if an url with the given url string is in the list
+     *
+     * @param url url string to check
+     * @return whether it is in the list
+     */
+    public synchronized boolean contains(String url) {
+        return index.containsKey(url) || (spilled.size() > 0 && spilled.contains(UrlFingerprint.of(url)));
+    }
+
+    /**
+     * Quick check on the seen url filter, which does not need an exact lookup. Answers true while the filter is still
+     * being filled.
+     *
+     * @param url url string to check
+     * @return false if the crawler definitely does not know the url, true if it might
+     */
+    public synchronized boolean mightContain(String url) {
+        return !seenFilter.isComplete() || seenFilter.mightContain(UrlFingerprint.of(url));
+    }
+
+    /**
+     * Saves the seen url filter to disk, so the next start does not have to rebuild it
+     */
+    public synchronized void saveSeenFilter() {
+        seenFilter.save(crawlManager.getID());
+    }
+
+    /**
+     * Checks if the url is in the list
+     *
+     * @param url Url to check
+     * @return whether it is in the list
+     */
+    public boolean contains(Url url) {
+        return contains(url.getUrl());
+    }
+
+    /**
+     * Gets the first url in the list with the parameter flag given. Reads the next part of the queue from disk when
+     * there is no url in memory to hand out.
      *
      * @param flag Flag of the url you want
      * @return The url if there is one found. If not, returns null
      */
-    public Url getFirstWithFlag(Flag flag) {
-        for (Url url : this) {
-            if (url.getFlag().equals(flag)) {
-                return url;
+    public synchronized Url getFirstWithFlag(Flag flag) {
+        return getFirstWithFlag(flag, Collections.<Url>emptySet());
+    }
+
+    /**
+     * Gets the first url in the list with the parameter flag given which is not excluded, like the urls that are being
+     * fetched. Reads the next part of the queue from disk when all urls in memory are excluded or parked, until an url
+     * is found or the queue on disk is drained too.
+     *
+     * @param flag     Flag of the url you want
+     * @param excluded urls to skip
+     * @return The url if there is one found. If not, returns null
+     */
+    public synchronized Url getFirstWithFlag(Flag flag, Collection<Url> excluded) {
+        FlagQueue queue = queues.get(flag);
+        Url first = queue.peek(excluded);
+        while (first == null) {
+            List<Url> urls = queue.refill(crawlManager);
+            if (urls.isEmpty()) {
+                return null;
             }
+            List<Url> withoutId = new ArrayList<Url>();
+            for (Url url : urls) {
+                if (spilled.remove(url.getFingerprint())) {
+                    if (url.getId() == null) {
+                        withoutId.add(url);
+                    }
+                    queue.keep(url);
+                    index.put(url.getUrl(), url);
+                } else {
+                    queue.dropStale();
+                }
+            }
+            if (!withoutId.isEmpty()) {
+                findStoredIds(withoutId);
+            }
+            first = queue.peek(excluded);
         }
-        return null;
+        return first;
+    }
+
+    /**
+     * Returns the amount of urls with the given flag
+     *
+     * @param flag Flag to count
+     * @return the amount of urls
+     */
+    public synchronized int countWithFlag(Flag flag) {
+        return queues.get(flag).size();
     }
 
-    public UrlList getAllWithFlag(Flag flag) {
-        UrlList toReturn = new UrlList();
+    /**
+     * Returns the amount of urls in the list
+     *
+     * @return size of the list
+     */
+    public synchronized int size() {
+        return index.size() + spilled.size();
+    }
 
-        for(Url url : this) {
-            if(url.getFlag().equals(flag)) {
-                toReturn.add(url);
+    /**
+     * Looks up the ids of urls read back from disk which were spilled before they were inserted, with one query. An
+     * url the UrlWriter has not inserted yet gets its id from assignId.
+     *
+     * @param urls Urls read back without an id
+     */
+    private void findStoredIds(List<Url> urls) {
+        Map<String, Url> byUrl = new HashMap<String, Url>();
+        StringBuilder placeholders = new StringBuilder();
+        Object[] params = new Object[urls.size() + 1];
+        params[0] = crawlManager.getID();
+        for (int i = 0; i < urls.size(); i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+            params[i + 1] = urls.get(i).getUrl();
+            byUrl.put(urls.get(i).getUrl(), urls.get(i));
+        }
+        List<Map> rows = Base.findAll("SELECT " + Url.COL_ID + " AS id, " + Url.COL_URL + " AS url FROM "
+                + Url.getTableName() + " WHERE " + Url.COL_CRAWLER_ID + " = ? AND " + Url.COL_URL + " IN ("
+                + placeholders + ")", params);
+        for (Map row : rows) {
+            Url url = byUrl.get(row.get("url").toString());
+            if (url != null && url.getId() == null) {
+                url.setLong(Url.COL_ID, ((Number) row.get("id")).longValue());
             }
         }
+    }
 
-        return toReturn;
+    /**
+     * Puts the url at the tail of the queue of the flag and indexes it in memory or as spilled
+     *
+     * @param url  Url to enqueue
+     * @param flag Flag of the queue
+     */
+    private void enqueue(Url url, Flag flag) {
+        seenFilter.put(url.getFingerprint());
+        if (url.getId() != null) {
+            seenFilter.coverUrlId(url.getLong(Url.COL_ID));
+        }
+        if (queues.get(flag).offer(url)) {
+            index.put(url.getUrl(), url);
+        } else {
+            spilled.add(url.getFingerprint());
+        }
     }
 }
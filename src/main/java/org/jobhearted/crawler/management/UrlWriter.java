@@ -0,0 +1,456 @@
+package org.jobhearted.crawler.management;
+
+import org.javalite.activejdbc.Base;
+import org.jobhearted.crawler.database.Database;
+import org.jobhearted.crawler.processing.objects.Url;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence of the Urls of a crawler. The crawl thread only takes a snapshot of an url and hands it to
+ * the writer, the database work is done in the background in JDBC batches: one batch of inserts, one of updates and one
+ * of deletes per flush, in a single transaction. Snapshots of the same url are coalesced, only the latest is written.
+ * <p/>
+ * A flush happens when BATCH_SIZE urls are waiting or FLUSH_INTERVAL has passed, and on request by flush(), which
+ * waits until everything is written. The writers of all crawlers share a small pool of threads.
+ * <p/>
+ * A batch that failed is queued again. Once a snapshot was part of BATCH_ATTEMPTS failed batches it is written on its
+ * own, so a single bad row does not hold up the rows behind it. A row that the database refuses then is dropped, other
+ * failures, like a lost connection, queue it again.
+ * <p/>
+ * New urls get their id when they are inserted. The writer cannot set it on the Url itself, as the crawl thread owns
+ * it, so the crawl thread collects the ids with drainGeneratedIds.
+ */
+class UrlWriter {
+    static final int BATCH_SIZE = 500;
+    static final long FLUSH_INTERVAL = 1000;
+    static final int BATCH_ATTEMPTS = 3;
+    private static final int WRITER_THREADS = 2;
+    private static final ScheduledExecutorService EXECUTOR = Executors.newScheduledThreadPool(WRITER_THREADS);
+    private static Logger logger = LoggerFactory.getLogger(UrlWriter.class);
+    private static final String INSERT = "INSERT INTO " + Url.getTableName() + " (" + Url.COL_CRAWLER_ID + ", "
+            + Url.COL_URL + ", " + Url.COL_FLAG + ", " + Url.COL_RETRIES + ", " + Url.COL_FIRST_SEEN + ", "
+            + Url.COL_LAST_SEEN + ", " + Url.COL_RECRAWL_INTERVAL + ", " + Url.COL_ETAG + ", " + Url.COL_LAST_MODIFIED
+            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE = "UPDATE " + Url.getTableName() + " SET " + Url.COL_CRAWLER_ID + " = ?, "
+            + Url.COL_URL + " = ?, " + Url.COL_FLAG + " = ?, " + Url.COL_RETRIES + " = ?, " + Url.COL_FIRST_SEEN
+            + " = ?, " + Url.COL_LAST_SEEN + " = ?, " + Url.COL_RECRAWL_INTERVAL + " = ?, " + Url.COL_ETAG + " = ?, "
+            + Url.COL_LAST_MODIFIED + " = ? WHERE " + Url.COL_ID + " = ?";
+    private static final String DELETE = "DELETE FROM " + Url.getTableName() + " WHERE " + Url.COL_CRAWLER_ID
+            + " = ? AND " + Url.COL_URL + " = ?";
+
+    private final CrawlManager crawlManager;
+    private final Object flushLock = new Object();
+    private final ScheduledFuture<?> periodicFlush;
+    private Map<String, UrlSnapshot> pending = new LinkedHashMap<String, UrlSnapshot>();
+    private final Map<String, Long> assignedIds = new HashMap<String, Long>();
+    private final Map<String, Long> generatedIds = new LinkedHashMap<String, Long>();
+
+    /**
+     * Creates the writer of a crawler and schedules its periodic flush
+     *
+     * @param crawlManager crawlmanager the urls belong to
+     */
+    UrlWriter(CrawlManager crawlManager) {
+        this.crawlManager = crawlManager;
+        periodicFlush = EXECUTOR.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                writePending();
+            }
+        }, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues the current state of the url for writing. Inserts it when it has no id yet, updates it otherwise.
+     *
+     * @param url Url to write
+     */
+    void write(Url url) {
+        queue(new UrlSnapshot(url, false));
+    }
+
+    /**
+     * Queues the deletion of the url. A queued insert of the url is dropped.
+     *
+     * @param url Url to delete
+     */
+    void delete(Url url) {
+        queue(new UrlSnapshot(url, true));
+    }
+
+    /**
+     * Writes everything that is queued and waits until it is in the database
+     */
+    void flush() {
+        try {
+            EXECUTOR.submit(new Runnable() {
+                @Override
+                public void run() {
+                    writePending();
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            logger.warn("Interrupted while flushing the urls of crawler {}", crawlManager.getID(), e);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.warn("Failed to flush the urls of crawler {}", crawlManager.getID(), e);
+        }
+    }
+
+    /**
+     * Stops the periodic flush of the writer and writes what is still queued, waiting until it is in the database.
+     * Called when the crawler stops.
+     */
+    void close() {
+        periodicFlush.cancel(false);
+        flush();
+    }
+
+    /**
+     * Returns the ids the database gave to inserted urls since the last call. Queued writes of those urls become
+     * updates.
+     *
+     * @return generated id per url string
+     */
+    synchronized Map<String, Long> drainGeneratedIds() {
+        if (generatedIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Long> drained = new LinkedHashMap<String, Long>(generatedIds);
+        generatedIds.clear();
+        for (Map.Entry<String, Long> entry : drained.entrySet()) {
+            UrlSnapshot snapshot = pending.get(entry.getKey());
+            if (snapshot != null && snapshot.id == null) {
+                snapshot.id = entry.getValue();
+            }
+            assignedIds.remove(entry.getKey());
+        }
+        return drained;
+    }
+
+    /**
+     * Adds the snapshot to the pending writes, replacing an older one of the same url. Starts a flush when the batch is
+     * full.
+     */
+    private synchronized void queue(UrlSnapshot snapshot) {
+        if (snapshot.id == null) {
+            snapshot.id = assignedIds.get(snapshot.url);
+        }
+        pending.remove(snapshot.url);
+        pending.put(snapshot.url, snapshot);
+        if (pending.size() == BATCH_SIZE) {
+            EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    writePending();
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes the pending snapshots. Those that failed too often are written one at a time, the rest in one transaction.
+     */
+    private void writePending() {
+        synchronized (flushLock) {
+            List<UrlSnapshot> batch = new ArrayList<UrlSnapshot>();
+            List<UrlSnapshot> rows = new ArrayList<UrlSnapshot>();
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                for (UrlSnapshot snapshot : pending.values()) {
+                    (snapshot.failedAttempts < BATCH_ATTEMPTS ? batch : rows).add(snapshot);
+                }
+                pending = new LinkedHashMap<String, UrlSnapshot>();
+            }
+
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+            for (UrlSnapshot snapshot : rows) {
+                writeRow(snapshot);
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshots in one transaction. On failure they are queued again, unless a newer snapshot of the same
+     * url was queued in the meantime.
+     */
+    private void writeBatch(List<UrlSnapshot> batch) {
+        try {
+            write(batch);
+            logger.debug("Wrote {} urls of crawler {}", batch.size(), crawlManager.getID());
+        } catch (Exception e) {
+            logger.warn("Could not write {} urls of crawler {}, trying again later",
+                    new Object[]{batch.size(), crawlManager.getID(), e});
+            rollback();
+            for (UrlSnapshot snapshot : batch) {
+                snapshot.failedAttempts++;
+            }
+            requeue(batch);
+        }
+    }
+
+    /**
+     * Writes a snapshot on its own. It is dropped when the database refuses the row, and queued again on any other
+     * failure.
+     */
+    private void writeRow(UrlSnapshot snapshot) {
+        try {
+            write(Collections.singletonList(snapshot));
+        } catch (Exception e) {
+            rollback();
+            if (isRefused(e)) {
+                logger.warn("Dropped url {} of crawler {}, the database refused it",
+                        new Object[]{snapshot.url, crawlManager.getID(), e});
+            } else {
+                logger.warn("Could not write url {} of crawler {}, trying again later",
+                        new Object[]{snapshot.url, crawlManager.getID(), e});
+                requeue(Collections.singletonList(snapshot));
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshots in one transaction and keeps the ids of the inserted urls
+     *
+     * @throws Exception when the transaction failed
+     */
+    private void write(List<UrlSnapshot> snapshots) throws Exception {
+        List<UrlSnapshot> inserts = new ArrayList<UrlSnapshot>();
+        List<UrlSnapshot> updates = new ArrayList<UrlSnapshot>();
+        List<UrlSnapshot> deletes = new ArrayList<UrlSnapshot>();
+        synchronized (this) {
+            for (UrlSnapshot snapshot : snapshots) {
+                if (snapshot.id == null) {
+                    // Inserted by an earlier flush, but the crawl thread did not take the id yet
+                    snapshot.id = assignedIds.get(snapshot.url);
+                }
+                if (snapshot.deleted) {
+                    deletes.add(snapshot);
+                } else if (snapshot.id == null) {
+                    inserts.add(snapshot);
+                } else {
+                    updates.add(snapshot);
+                }
+            }
+        }
+
+        Database.openDatabaseConnection();
+        Base.openTransaction();
+        long[] ids = executeInserts(inserts);
+        executeUpdates(updates);
+        executeDeletes(deletes);
+        Base.commitTransaction();
+
+        synchronized (this) {
+            for (int i = 0; i < ids.length; i++) {
+                assignedIds.put(inserts.get(i).url, ids[i]);
+                generatedIds.put(inserts.get(i).url, ids[i]);
+            }
+        }
+    }
+
+    /**
+     * Queues the snapshots again, in front of the pending ones. A newer pending snapshot of the same url wins.
+     */
+    private synchronized void requeue(List<UrlSnapshot> snapshots) {
+        Map<String, UrlSnapshot> requeued = new LinkedHashMap<String, UrlSnapshot>();
+        for (UrlSnapshot snapshot : snapshots) {
+            requeued.put(snapshot.url, snapshot);
+        }
+        requeued.putAll(pending);
+        pending = requeued;
+    }
+
+    /**
+     * Checks if the write failed on the row itself, like a constraint violation, rather than on the connection
+     *
+     * @param e the failure
+     * @return whether trying again will not help
+     */
+    private static boolean isRefused(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLNonTransientException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Inserts the urls in one batch
+     *
+     * @return the generated ids, in the order of the snapshots
+     */
+    private static long[] executeInserts(List<UrlSnapshot> inserts) throws SQLException {
+        long[] ids = new long[inserts.size()];
+        if (inserts.isEmpty()) {
+            return ids;
+        }
+        PreparedStatement statement = Base.connection().prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS);
+        try {
+            for (UrlSnapshot snapshot : inserts) {
+                snapshot.bind(statement);
+                addRow(statement, inserts.size());
+            }
+            execute(statement, inserts.size());
+            ResultSet keys = statement.getGeneratedKeys();
+            try {
+                for (int i = 0; i < ids.length; i++) {
+                    if (!keys.next()) {
+                        throw new SQLException("Missing generated keys for the inserted urls");
+                    }
+                    ids[i] = keys.getLong(1);
+                }
+            } finally {
+                keys.close();
+            }
+        } finally {
+            statement.close();
+        }
+        return ids;
+    }
+
+    /**
+     * Updates the urls in one batch
+     */
+    private static void executeUpdates(List<UrlSnapshot> updates) throws SQLException {
+        if (updates.isEmpty()) {
+            return;
+        }
+        PreparedStatement statement = Base.connection().prepareStatement(UPDATE);
+        try {
+            for (UrlSnapshot snapshot : updates) {
+                snapshot.bind(statement);
+                statement.setLong(10, snapshot.id);
+                addRow(statement, updates.size());
+            }
+            execute(statement, updates.size());
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Deletes the urls in one batch
+     */
+    private static void executeDeletes(List<UrlSnapshot> deletes) throws SQLException {
+        if (deletes.isEmpty()) {
+            return;
+        }
+        PreparedStatement statement = Base.connection().prepareStatement(DELETE);
+        try {
+            for (UrlSnapshot snapshot : deletes) {
+                statement.setInt(1, snapshot.crawlerId);
+                statement.setString(2, snapshot.url);
+                addRow(statement, deletes.size());
+            }
+            execute(statement, deletes.size());
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Adds the bound row to the batch of the statement, unless it is the only row
+     */
+    private static void addRow(PreparedStatement statement, int rows) throws SQLException {
+        if (rows > 1) {
+            statement.addBatch();
+        }
+    }
+
+    /**
+     * Executes the statement. A single row is executed without a batch, so its error is not wrapped in a
+     * BatchUpdateException.
+     */
+    private static void execute(PreparedStatement statement, int rows) throws SQLException {
+        if (rows > 1) {
+            statement.executeBatch();
+        } else {
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Rolls back the open transaction, if any
+     */
+    private static void rollback() {
+        try {
+            Base.rollbackTransaction();
+        } catch (Exception e) {
+            logger.debug("Rollback failed", e);
+        }
+    }
+
+    /**
+     * The values of an url at the moment it was queued for writing
+     */
+    private static class UrlSnapshot {
+        private final String url;
+        private final int crawlerId;
+        private final String flag;
+        private final int retries;
+        private final Timestamp firstVisited;
+        private final Timestamp lastVisited;
+        private final Long recrawlInterval;
+        private final String etag;
+        private final String lastModified;
+        private final boolean deleted;
+        private Long id;
+        // Amount of batches the snapshot was part of that failed
+        private int failedAttempts;
+
+        /**
+         * Takes the snapshot
+         *
+         * @param url     Url to take the values of
+         * @param deleted whether the url is to be deleted
+         */
+        UrlSnapshot(Url url, boolean deleted) {
+            Integer retries = url.getInteger(Url.COL_RETRIES);
+            this.url = url.getUrl();
+            this.crawlerId = url.getInteger(Url.COL_CRAWLER_ID);
+            this.flag = url.getString(Url.COL_FLAG);
+            this.retries = retries != null ? retries : 0;
+            this.firstVisited = url.getTimestamp(Url.COL_FIRST_SEEN);
+            this.lastVisited = url.getTimestamp(Url.COL_LAST_SEEN);
+            this.recrawlInterval = url.getLong(Url.COL_RECRAWL_INTERVAL);
+            this.etag = url.getEtag();
+            this.lastModified = url.getLastModified();
+            this.deleted = deleted;
+            this.id = url.getId() != null ? url.getLong(Url.COL_ID) : null;
+        }
+
+        /**
+         * Binds the values to the first nine parameters of the insert or update statement
+         */
+        void bind(PreparedStatement statement) throws SQLException {
+            statement.setInt(1, crawlerId);
+            statement.setString(2, url);
+            statement.setString(3, flag);
+            statement.setInt(4, retries);
+            statement.setTimestamp(5, firstVisited);
+            statement.setTimestamp(6, lastVisited);
+            if (recrawlInterval != null) {
+                statement.setLong(7, recrawlInterval);
+            } else {
+                statement.setNull(7, Types.BIGINT);
+            }
+            statement.setString(8, etag);
+            statement.setString(9, lastModified);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.jobhearted.crawler.management;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Access to the virtual threads of Java 21 and later. The application is built for Java 1.6, so the executor is looked
+ * up by reflection and only used when the running JVM has it.
+ */
+public class VirtualThreads {
+    private static Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+    private static final Method NEW_EXECUTOR = findExecutorFactory();
+    private static ExecutorService sharedExecutor;
+
+    /**
+     * Not instantiable, use the static methods
+     */
+    private VirtualThreads() {
+    }
+
+    /**
+     * Checks if the running JVM has virtual threads
+     *
+     * @return whether virtual threads are available
+     */
+    public static boolean isAvailable() {
+        return NEW_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor which starts a new virtual thread for every task
+     *
+     * @return the executor, or null if virtual threads are not available
+     */
+    public static ExecutorService newExecutor() {
+        if (NEW_EXECUTOR == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+        } catch (Exception e) {
+            logger.warn("Could not create a virtual thread executor", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns an executor on virtual threads shared by the whole application, like the one for in-flight fetches
+     *
+     * @return the executor, or null if virtual threads are not available
+     */
+    public static synchronized ExecutorService sharedExecutor() {
+        if (sharedExecutor == null) {
+            sharedExecutor = newExecutor();
+        }
+        return sharedExecutor;
+    }
+
+    /**
+     * Looks up Executors.newVirtualThreadPerTaskExecutor
+     */
+    private static Method findExecutorFactory() {
+        try {
+            return Class.forName("java.util.concurrent.Executors").getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.jobhearted.crawler.processing;
 
 import org.jobhearted.crawler.management.CrawlManager;
+import org.jobhearted.crawler.management.Settings;
 import org.jobhearted.crawler.processing.objects.BlacklistEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,13 +10,15 @@ import java.util.List;
 
 /**
  * Blacklist of words that an url can not contain. Easy to use, just initialize it with the crawler id and then call
- * urlAllowed() when you want to check if the url is allowed.
+ * urlAllowed() when you want to check if the url is allowed. Urls the robots.txt of the site disallows are not allowed
+ * either.
  */
 public class Blacklist {
     private static Logger logger = LoggerFactory.getLogger(Blacklist.class);
     private List<BlacklistEntry> entries;
     private String baseUrl;
     private int crawlerId;
+    private RobotsTxt robotsTxt;
 
     /**
      * Constructs the blacklist from the database
@@ -26,6 +29,7 @@ public class Blacklist {
         this.crawlerId = crawlManager.getID();
         this.baseUrl = crawlManager.getBaseUrl();
         this.entries = BlacklistEntry.loadAllEntriesForCrawlerId(crawlerId);
+        this.robotsTxt = new RobotsTxt(baseUrl, Settings.ROBOTS_CACHE_TIME);
         logger.info("Loaded {} Blacklist entries for crawler {}", entries.size(), crawlManager.getId());
     }
 
@@ -45,6 +49,25 @@ public class Blacklist {
                 }
             }
         }
-        return true;
+        return robotsTxt.getRules().allows(url);
+    }
+
+    /**
+     * Returns the sitemaps the robots.txt of the site lists, or the sitemap.xml at the root of the site when it lists
+     * none
+     *
+     * @return sitemap urls
+     */
+    public List<String> getSitemaps() {
+        return robotsTxt.getSitemaps();
+    }
+
+    /**
+     * Returns the Crawl-delay the robots.txt of the site asks for
+     *
+     * @return crawl delay in milliseconds, or RobotsRules.NO_CRAWL_DELAY when the site did not set one
+     */
+    public long getCrawlDelay() {
+        return robotsTxt.getRules().getCrawlDelay();
     }
 }
@@ -8,14 +8,19 @@ import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /**
  * Class used by the CrawlManager to process information in documents. Makes use of the Blacklist class to process URLs
  * and makes use of the ProcessSetting class to retrieve information in a document and store it in the Vacature Model.
+ * <p/>
+ * Processing is split in two steps for the page pipeline: extract only works on the document and can run on any
+ * thread, persist saves what was extracted to the database. The links found by extract are added by processLinks, on
+ * the thread of the crawler.
+ * <p/>
+ * A processor is safe to use from several threads at once, so the workers of the page pipeline share the processor of
+ * a crawler. It keeps no state of the document being processed: everything found in a document is passed on in the
+ * ExtractedPage of the call. The selector plan and the skill and education dictionaries do not change once loaded.
  *
  * @see CrawlManager
  * @see Vacature
@@ -27,35 +32,54 @@ import java.util.Map;
 
 public class DocumentProcessor {
     private static Logger logger = LoggerFactory.getLogger(DocumentProcessor.class);
-    public static final String REGEX_WHITESPACE_BEFORE = ".*\\s";
-    public static final String REGEX_WHITESPACE_AFTER = "\\s.*";
-    // Illegal character array for use in regex
-    private static final String[] ILLEGAL_CHARACTERS = {
-            "(", ")", ";", ".", ",", ":", "{", "}", "[", "]", "*", "?",
-            "&", "^", "%", "$", "@", "!", "?", "\"", "\\", "/", "\'"
+    // Skills and educations, loaded from the database once for all processors
+    private static volatile Dictionaries sharedDictionaries;
+    // The description is normalized into a buffer per thread, reused for every document the thread extracts
+    // A vacature can list several places, separated by these
+    private static final String LOCATION_SEPARATORS = ",|;|/";
+    private static final ThreadLocal<NormalizedText> DESCRIPTIONS = new ThreadLocal<NormalizedText>() {
+        @Override
+        protected NormalizedText initialValue() {
+            return new NormalizedText();
+        }
     };
-    private static final String NULL_VALUE = "NULL";
-    // Static lists of data
-    private static List<Skill> allSkills;
-    private static List<Education> allEducations;
     // instance fields
-    private Map<ProcessData, String> settingsMap;
-    private CrawlManager crawlManager;
-    private Blacklist blacklist;
-    private Document documentToProcess;
-    private Url urlOfDocument;
+    private final SelectorPlan selectorPlan;
+    private final Dictionaries dictionaries;
+    private final CrawlManager crawlManager;
+    private final Blacklist blacklist;
+    private final UrlCanonicalizer canonicalizer;
+    private final boolean offline;
 
     /**
      * Constructor for the class
      *
      * @param crawlManager crawlManager to create the processor for
+     * @param offline      whether the processor makes no network calls
      */
-    private DocumentProcessor(CrawlManager crawlManager) {
+    private DocumentProcessor(CrawlManager crawlManager, boolean offline) {
         this.crawlManager = crawlManager;
         this.blacklist = crawlManager.getBlacklist();
+        this.canonicalizer = crawlManager.getCanonicalizer();
+        this.offline = offline;
+
+        this.selectorPlan = initializeProcessSettings();
+        this.dictionaries = initializeDataMaps();
+    }
 
-        initializeProcessSettings();
-        initializeDataMaps();
+    /**
+     * Constructor for a processor without a crawler
+     *
+     * @param selectorPlan selectors to evaluate
+     * @param dictionaries skills and educations to find
+     */
+    private DocumentProcessor(SelectorPlan selectorPlan, Dictionaries dictionaries) {
+        this.crawlManager = null;
+        this.blacklist = null;
+        this.canonicalizer = null;
+        this.offline = true;
+        this.selectorPlan = selectorPlan;
+        this.dictionaries = dictionaries;
     }
 
     /**
@@ -66,31 +90,59 @@ public class DocumentProcessor {
      * @return The processor created.
      */
     public static DocumentProcessor createProcessor(CrawlManager crawlManager) {
-        return new DocumentProcessor(crawlManager);
+        return new DocumentProcessor(crawlManager, false);
     }
 
     /**
-     * Initializes the Datamaps if they are null, only needed for the first processor constructed.
+     * Creates a processor for processing archived pages again. It makes no network calls: links are not followed and
+     * only locations that are already known are added to a vacature.
+     *
+     * @param crawlManager Crawlmanager to create a processor for
+     * @return The processor created.
      */
-    private void initializeDataMaps() {
-        if (allSkills == null) {
-            allSkills = Skill.findAll();
-            logger.info("Loaded {} Skill entries!", allSkills.size());
-        }
-
-        if (allEducations == null) {
-            allEducations = Education.findAll();
-            logger.info("Loaded {} Education entries!", allEducations.size());
-        }
+    public static DocumentProcessor createOfflineProcessor(CrawlManager crawlManager) {
+        return new DocumentProcessor(crawlManager, true);
+    }
 
+    /**
+     * Creates a processor which only extracts, from the given settings and dictionaries instead of those in the
+     * database. It belongs to no crawler, so like an offline processor it never follows links.
+     *
+     * @param settings   selector per ProcessData
+     * @param skills     matcher of the skills to find
+     * @param educations matcher of the educations to find
+     * @return The processor created.
+     */
+    public static DocumentProcessor createExtractor(Map<ProcessData, String> settings, KeywordMatcher<Skill> skills,
+                                                    KeywordMatcher<Education> educations) {
+        return new DocumentProcessor(SelectorPlan.compile(settings), new Dictionaries(skills, educations));
+    }
 
+    /**
+     * Returns the dictionaries shared by all processors, loading them when this is the first processor constructed.
+     *
+     * @return the dictionaries
+     */
+    private static Dictionaries initializeDataMaps() {
+        Dictionaries loaded = sharedDictionaries;
+        if (loaded == null) {
+            synchronized (DocumentProcessor.class) {
+                loaded = sharedDictionaries;
+                if (loaded == null) {
+                    loaded = Dictionaries.load();
+                    sharedDictionaries = loaded;
+                }
+            }
+        }
+        return loaded;
     }
 
     /**
-     * Initializes the process Settings for the processor. Loaded for every processor individually.
+     * Initializes the process Settings for the processor. Loaded for every processor individually and compiled into
+     * the selector plan its documents are evaluated with.
      */
-    private void initializeProcessSettings() {
-        settingsMap = new HashMap<ProcessData, String>();
+    private SelectorPlan initializeProcessSettings() {
+        Map<ProcessData, String> settingsMap = new HashMap<ProcessData, String>();
 
         List<ProcessSetting> databaseList = ProcessSetting.find(ProcessSetting.COL_CRAWLER_ID + " = ?", crawlManager.getInteger("id"));
         for (ProcessSetting processSetting : databaseList) {
@@ -101,184 +153,215 @@ public class DocumentProcessor {
         }
 
         logger.info("Loaded {} Setting entries!", settingsMap.size());
+        return SelectorPlan.compile(settingsMap);
     }
 
     /**
-     * Processes the given document.
+     * Processes the given document on the calling thread. Its links are only followed when the crawler discovers urls
+     * by following links, and never by an offline processor.
      *
      * @param url      Url the document belongs to
      * @param document the document to be processed
+     * @return whether the vacatures of the url changed, used to adapt the recrawl interval of the url
      */
-    public void processDocument(Url url, Document document) {
-        this.documentToProcess = document;
-        this.urlOfDocument = url;
-        processLinks();
-        processContent();
+    public boolean processDocument(Url url, Document document) {
+        ExtractedPage page = extract(url, document, !offline && crawlManager.followsLinks());
+        processLinks(page);
+        return persist(page);
     }
 
     /**
-     * Processes all links of the document in the documentToProcess instance variable. Uses the Blacklist to check if
-     * and url is allowed. If so, it sends it to the crawlmanager to add it to the list.
+     * Extracts the links and the vacature of a document, without touching the database or the crawler. The selector
+     * plan rejects a document that does not meet the requirements before any field is evaluated. The description of a
+     * vacature is normalized once, all extractors match on the same text.
+     *
+     * @param url         Url the document belongs to
+     * @param document    the document to extract from
+     * @param followLinks whether the links of the document are collected
+     * @return what was extracted
      */
-    private void processLinks() {
-        Elements elements = documentToProcess.getElementsByTag("a");
+    public ExtractedPage extract(Url url, Document document, boolean followLinks) {
+        List<String> links = followLinks ? extractLinks(document) : Collections.<String>emptyList();
+        Map<ProcessData, String> values = selectorPlan.evaluate(document);
+        if (values == null) {
+            return new ExtractedPage(url, links, null, Collections.<Skill>emptyList(),
+                    Collections.<Education>emptyList());
+        }
+        NormalizedText description = DESCRIPTIONS.get().normalize(values.get(ProcessData.VAC_OMSCHRIJVING));
+        return new ExtractedPage(url, links, values, dictionaries.skills.findAll(description),
+                dictionaries.educations.findAll(description));
+    }
 
+    /**
+     * Returns the absolute urls of all links of the document
+     *
+     * @param document the document
+     * @return the links, in document order
+     */
+    private static List<String> extractLinks(Document document) {
+        Elements elements = document.getElementsByTag("a");
+        List<String> links = new ArrayList<String>(elements.size());
         for (Element e : elements) {
-            String u = e.attr("abs:href");
-            if (blacklist.urlAllowed(u)) {
-                Url url = new Url();
-                url.setString(Url.COL_URL, u);
-                if (!crawlManager.getUrlList().contains(url)) {
-                    url.setParentCrawlmanager(crawlManager);
-                    url.setFlag(Flag.FOUND);
-                    crawlManager.addUrlToList(url);
-                }
-            }
+            links.add(e.attr("abs:href"));
         }
+        return links;
     }
 
     /**
-     * Calls the right functions to process the current document, and if no vacature is found removes all vacatures that
-     * Url has.
+     * Processes the links extracted from a document. Links are brought in their canonical spelling first, links
+     * already known to the crawler are skipped and new ones are checked against the Blacklist. If allowed, it sends it
+     * to the crawlmanager to add it to the list. Has to be called on the thread of the crawler.
+     *
+     * @param page the extracted document
      */
-    private void processContent() {
-        if (docHasRequirements(ProcessData.REQUIREMENTFORVACATURE)) {
-            Vacature vacature = processVacature();
-            if (vacature.saveSafely()) {
-                processLocation(vacature);
-                processSkills(vacature);
-                processEducation(vacature);
+    public void processLinks(ExtractedPage page) {
+        for (String link : page.getLinks()) {
+            String u = canonicalizer.canonicalize(link);
+            if (u != null && !crawlManager.isKnownUrl(u) && blacklist.urlAllowed(u)) {
+                Url url = new Url();
+                url.setString(Url.COL_URL, u);
+                url.setParentCrawlmanager(crawlManager);
+                url.setFlag(Flag.FOUND);
+                crawlManager.addUrlToList(url);
             }
-        } else {
-            removeAnyVacaturesFromUrl();
         }
     }
 
     /**
-     * Checks whether a document has the needed requirements stored in the settingsMap, indicated by the ProcessData
+     * Saves what was extracted from a document: the vacature with its locations, skills and educations, or, if no
+     * vacature was found, removes all vacatures that Url has. Needs a database connection on the calling thread.
      *
-     * @param data Key of the datamap
-     * @return Whether the document has the requirements or not.
+     * @param page the extracted document
+     * @return whether a new vacature or version was saved, or an active vacature was removed
      */
-    private boolean docHasRequirements(ProcessData data) {
-        String requirements = settingsMap.get(data);
-        if (requirements != null && !requirements.isEmpty()) {
-            String[] req = requirements.split(";");
-
-            for (String r : req) {
-                if (documentToProcess.select(r).text().isEmpty()) {
-                    return false;
+    public boolean persist(ExtractedPage page) {
+        if (page.isVacature()) {
+            Vacature vacature = processVacature(page);
+            if (vacature.saveSafely()) {
+                processLocation(vacature);
+                for (Skill skill : page.getSkills()) {
+                    vacature.addSkill(skill);
+                }
+                for (Education education : page.getEducations()) {
+                    vacature.addEducation(education);
                 }
             }
+            return vacature.hasChanged();
         } else {
-            logger.warn("Could not determine {} for url {}", data.toString(), this.urlOfDocument.getString(Url.COL_URL));
-            return false;
+            return removeAnyVacaturesFromUrl(page.getUrl());
         }
-
-        return true;
     }
 
     /**
      * Function called when there are no vacatures on a page. Sets all the vacatures registered with that page to
      * inactive, to make sure they they don't show up in the matcher.
+     *
+     * @param url Url the vacatures belong to
+     * @return whether any of the vacatures was still active
      */
-    private void removeAnyVacaturesFromUrl() {
-        List<Vacature> list = Vacature.where(Vacature.COL_URL_ID + " = ?", urlOfDocument.getInteger(Url.COL_ID));
+    private boolean removeAnyVacaturesFromUrl(Url url) {
+        List<Vacature> list = Vacature.where(Vacature.COL_URL_ID + " = ?", url.getInteger(Url.COL_ID));
 
+        boolean removed = false;
         for (Vacature v : list) {
+            if (v.isActive()) {
+                removed = true;
+            }
             v.setActive(false);
             v.save();
         }
+        return removed;
     }
 
     /**
      * Processes the Document into a Vacature. Contains al information we can find, so we can refine it later.
-     * Uses the settingsMap for DOM selectors to retrieve the info.
      *
+     * @param page the extracted document, with the text per field as found by the selector plan
      * @return The Processed Vacancy
      */
-    private Vacature processVacature() {
+    static Vacature processVacature(ExtractedPage page) {
         Vacature vacature = new Vacature();
 
-        for (Map.Entry<ProcessData, String> entry : this.settingsMap.entrySet()) {
-            if (entry.getKey() != ProcessData.REQUIREMENTFORVACATURE) {
-                if (!NULL_VALUE.equals(entry.getValue())) {
-                    vacature.putProperty(entry.getKey(), this.documentToProcess.select(entry.getValue()).text());
-                } else {
-                    vacature.putProperty(entry.getKey(), "");
-                }
-            }
+        for (Map.Entry<ProcessData, String> entry : page.getValues().entrySet()) {
+            vacature.putProperty(entry.getKey(), entry.getValue());
         }
 
-        vacature.setUrlId(urlOfDocument.getID());
+        vacature.setUrlId(page.getUrl().getID());
         vacature.generateHash();
 
         return vacature;
     }
 
     /**
-     * Checks the description field of the vacature against all known skills in the database. If a skill is found,
-     * it is added to the vacature using the Many2Many ActiveJDBC relationship with the Skill model.
+     * Processes the Location field of the vacature. If the Location is a new one, get the coordinates of that location
+     * and store it in the database by using the Google API. Its is then added to the vacature as a Many2Many relationship.
+     * <p/>
+     * Why Many2Many and not OneToMany? Some locations are like "Apeldoorn, Amersfoort,..". We want to store them all.
      *
-     * @param vacature Vacature to process skills of
+     * @param vacature Vacature to process Location of.
      */
-    private void processSkills(Vacature vacature) {
-
-        String omschrijving = vacature.getOmschrijving().toLowerCase();
-        for (String i : ILLEGAL_CHARACTERS) {
-            omschrijving = omschrijving.replace(i, " ");
-        }
-
-        List<Skill> foundSkills = new LinkedList<Skill>();
-        String regex;
-        for (Skill skill : allSkills) {
-            regex = REGEX_WHITESPACE_BEFORE + skill.getSkill().toLowerCase() + REGEX_WHITESPACE_AFTER;
-            if (omschrijving.matches(regex) && !foundSkills.contains(skill)) {
-                vacature.addSkill(skill);
-                foundSkills.add(skill);
+    private void processLocation(Vacature vacature) {
+        for (String loc : locationsOf(vacature)) {
+            if (!offline) {
+                LocationParser.parseLocation(loc, vacature);
+            } else if (!LocationParser.parseKnownLocation(loc, vacature)) {
+                logger.debug("Skipped unknown location {} while processing offline", loc);
             }
         }
     }
 
     /**
-     * Processes the educations in the omschrijving field of the vacature. When it finds one, it adds it to the
-     * Many2Many relationship.
+     * Splits the Location field of the vacature into the places it lists
      *
-     * @param vacature Vacature to process
+     * @param vacature Vacature to get the locations of
+     * @return the places, empty when the field is empty
      */
-    private void processEducation(Vacature vacature) {
-        // Get the omschrijving and remove illegal characters from it
-        String omschrijving = vacature.getOmschrijving().toLowerCase();
-        for (String i : ILLEGAL_CHARACTERS) {
-            omschrijving = omschrijving.replace(i, " ");
-        }
-
-        List<Education> foundEducations = new LinkedList<Education>();
-        // Loop over all known skills, execute the regex it needs to fulfill. If it matches, it is added to the model
-        for (Education education : allEducations) {
-            String regex = REGEX_WHITESPACE_BEFORE + education.getString("education").toLowerCase() + REGEX_WHITESPACE_AFTER;
-
-            if (omschrijving.matches(regex) && !foundEducations.contains(education)) {
-                vacature.addEducation(education);
-                foundEducations.add(education);
-            }
+    static String[] locationsOf(Vacature vacature) {
+        if (vacature.getPlaats() == null || vacature.getPlaats().isEmpty()) {
+            return new String[0];
         }
+        return vacature.getPlaats().split(LOCATION_SEPARATORS);
     }
 
     /**
-     * Processes the Location field of the vacature. If the Location is a new one, get the coordinates of that location
-     * and store it in the database by using the Google API. Its is then added to the vacature as a Many2Many relationship.
-     * <p/>
-     * Why Many2Many and not OneToMany? Some locations are like "Apeldoorn, Amersfoort,..". We want to store them all.
-     *
-     * @param vacature Vacature to process Location of.
+     * The skills and educations to find in the description of a vacature, as keyword matchers. Immutable, so all
+     * processors and their threads can share them.
      */
-    private void processLocation(Vacature vacature) {
-        if (vacature.getPlaats() != null && !vacature.getPlaats().isEmpty()) {
-            String[] locs = vacature.getPlaats().split(",|;|/");
-            for (String loc : locs) {
-                LocationParser.parseLocation(loc, vacature);
+    private static final class Dictionaries {
+        private final KeywordMatcher<Skill> skills;
+        private final KeywordMatcher<Education> educations;
+
+        /**
+         * Creates the dictionaries
+         *
+         * @param skills     matcher of the skills
+         * @param educations matcher of the educations
+         */
+        private Dictionaries(KeywordMatcher<Skill> skills, KeywordMatcher<Education> educations) {
+            this.skills = skills;
+            this.educations = educations;
+        }
+
+        /**
+         * Loads all skills and educations from the database
+         *
+         * @return the dictionaries
+         */
+        private static Dictionaries load() {
+            List<Skill> allSkills = Skill.findAll();
+            logger.info("Loaded {} Skill entries!", allSkills.size());
+            Map<String, Skill> skillNames = new LinkedHashMap<String, Skill>();
+            for (Skill skill : allSkills) {
+                skillNames.put(skill.getSkill(), skill);
+            }
+
+            List<Education> allEducations = Education.findAll();
+            logger.info("Loaded {} Education entries!", allEducations.size());
+            Map<String, Education> educationNames = new LinkedHashMap<String, Education>();
+            for (Education education : allEducations) {
+                educationNames.put(education.getString("education"), education);
             }
+            return new Dictionaries(KeywordMatcher.of(skillNames), KeywordMatcher.of(educationNames));
         }
     }
 }
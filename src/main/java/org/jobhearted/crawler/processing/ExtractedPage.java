@@ -0,0 +1,98 @@
+package org.jobhearted.crawler.processing;
+
+import org.jobhearted.crawler.processing.objects.Education;
+import org.jobhearted.crawler.processing.objects.ProcessData;
+import org.jobhearted.crawler.processing.objects.Skill;
+import org.jobhearted.crawler.processing.objects.Url;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything the DocumentProcessor extracted from a document, without touching the database: the links of the
+ * document and, when it is a vacature, the text of its fields and the skills and educations in its description. The
+ * document itself is not kept, so it can be let go of before the vacature is saved.
+ *
+ * @see DocumentProcessor#extract
+ * @see DocumentProcessor#persist
+ */
+public class ExtractedPage {
+    private final Url url;
+    private final List<String> links;
+    private final Map<ProcessData, String> values;
+    private final List<Skill> skills;
+    private final List<Education> educations;
+
+    /**
+     * Creates the page
+     *
+     * @param url        Url the document belongs to
+     * @param links      absolute urls of the links in the document
+     * @param values     text per field of the vacature, null when the document is not a vacature
+     * @param skills     skills found in the description
+     * @param educations educations found in the description
+     */
+    ExtractedPage(Url url, List<String> links, Map<ProcessData, String> values, List<Skill> skills,
+                  List<Education> educations) {
+        this.url = url;
+        this.links = links;
+        this.values = values;
+        this.skills = skills;
+        this.educations = educations;
+    }
+
+    /**
+     * Returns the url the document belongs to
+     *
+     * @return Url
+     */
+    public Url getUrl() {
+        return url;
+    }
+
+    /**
+     * Returns the links of the document, as absolute urls. Empty when the links were not followed.
+     *
+     * @return the links
+     */
+    public List<String> getLinks() {
+        return links;
+    }
+
+    /**
+     * Checks if the document met the requirements for a vacature
+     *
+     * @return whether it is a vacature
+     */
+    public boolean isVacature() {
+        return values != null;
+    }
+
+    /**
+     * Returns the text per field of the vacature
+     *
+     * @return the fields, empty when the document is not a vacature
+     */
+    public Map<ProcessData, String> getValues() {
+        return values != null ? values : Collections.<ProcessData, String>emptyMap();
+    }
+
+    /**
+     * Returns the skills found in the description of the vacature
+     *
+     * @return the skills
+     */
+    public List<Skill> getSkills() {
+        return skills;
+    }
+
+    /**
+     * Returns the educations found in the description of the vacature
+     *
+     * @return the educations
+     */
+    public List<Education> getEducations() {
+        return educations;
+    }
+}
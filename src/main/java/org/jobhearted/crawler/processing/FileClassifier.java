@@ -0,0 +1,114 @@
+package org.jobhearted.crawler.processing;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Predicts from its extension whether an url is a file instead of a page, so it can be flagged as a file without
+ * fetching it. Extensions of well known file types start out as files, other extensions are learned from the outcome
+ * of fetches: an extension becomes a file extension once LEARN_THRESHOLD urls with it turned out to be files and none
+ * turned out to be a page. An extension that ever led to a page is never predicted to be a file.
+ * <p/>
+ * Every crawler has its own classifier, as sites differ in what they serve under an extension.
+ */
+public class FileClassifier {
+    static final int LEARN_THRESHOLD = 3;
+    private static final int MAX_EXTENSION_LENGTH = 5;
+    private static final String[] KNOWN_FILE_EXTENSIONS = {"pdf", "doc", "docx", "xls", "xlsx", "ppt", "pptx", "odt",
+            "rtf", "zip", "gz", "tgz", "rar", "7z", "exe", "dmg", "jpg", "jpeg", "png", "gif", "bmp", "svg", "ico",
+            "webp", "mp3", "mp4", "avi", "mov", "wmv", "flv", "css", "js", "woff", "ttf", "eot", "swf"};
+    private final Map<String, Counts> extensions = new HashMap<String, Counts>();
+
+    /**
+     * Creates a classifier knowing only the well known file extensions
+     */
+    public FileClassifier() {
+        for (String extension : KNOWN_FILE_EXTENSIONS) {
+            Counts counts = new Counts();
+            counts.files = LEARN_THRESHOLD;
+            extensions.put(extension, counts);
+        }
+    }
+
+    /**
+     * Checks if the url is most likely a file
+     *
+     * @param url url to check
+     * @return whether it is predicted to be a file
+     */
+    public boolean isLikelyFile(String url) {
+        String extension = extensionOf(url);
+        if (extension == null) {
+            return false;
+        }
+        Counts counts = extensions.get(extension);
+        return counts != null && counts.documents == 0 && counts.files >= LEARN_THRESHOLD;
+    }
+
+    /**
+     * Learns from the outcome of a fetch, or from an url flagged as a file before
+     *
+     * @param url  url that was fetched
+     * @param file whether it turned out to be a file
+     */
+    public void learn(String url, boolean file) {
+        String extension = extensionOf(url);
+        if (extension == null) {
+            return;
+        }
+        Counts counts = extensions.get(extension);
+        if (counts == null) {
+            counts = new Counts();
+            extensions.put(extension, counts);
+        }
+        if (file) {
+            counts.files++;
+        } else {
+            counts.documents++;
+        }
+    }
+
+    /**
+     * Returns the extension of the last path segment of the url, lower case
+     *
+     * @param url url to get the extension of
+     * @return the extension, or null when the path has none or it is not a short alphanumeric one
+     */
+    static String extensionOf(String url) {
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        int scheme = url.indexOf("://");
+        int path = url.indexOf('/', scheme < 0 ? 0 : scheme + 3);
+        if (path < 0 || path >= end) {
+            // no path, a dot belongs to the host
+            return null;
+        }
+        int slash = url.lastIndexOf('/', end - 1);
+        int dot = url.lastIndexOf('.', end - 1);
+        if (dot <= slash || end - dot - 1 == 0 || end - dot - 1 > MAX_EXTENSION_LENGTH) {
+            return null;
+        }
+        for (int i = dot + 1; i < end; i++) {
+            if (!Character.isLetterOrDigit(url.charAt(i))) {
+                return null;
+            }
+        }
+        return url.substring(dot + 1, end).toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * How often an extension turned out to be a file or a page
+     */
+    private static class Counts {
+        private int files;
+        private int documents;
+    }
+}
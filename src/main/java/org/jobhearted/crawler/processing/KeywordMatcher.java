@@ -0,0 +1,229 @@
+package org.jobhearted.crawler.processing;
+
+import java.util.*;
+
+/**
+ * Finds all keywords of a fixed set in a text in a single pass, using an Aho-Corasick automaton built once from the
+ * keywords. Finding them costs time linear in the length of the text, whatever the amount of keywords. Keywords are
+ * taken literally, so names like "c++" or ".net" need no escaping.
+ * <p/>
+ * Texts and keywords are matched in their NormalizedText form, which ignores case and whitespace runs. A keyword only
+ * matches on token boundaries: where it starts or ends with a word character, the text must not continue with a word
+ * character there, so "java" is not found in "javascript" and "c" is not found in "c++".
+ * <p/>
+ * A matcher does not change after it is built and can be used by several threads at once.
+ *
+ * @param <T> type of the value a keyword stands for
+ */
+public class KeywordMatcher<T> {
+    private static final int ROOT = 0;
+    // The automaton, per state the sorted characters of its transitions and their target states
+    private final char[][] transitionChars;
+    private final int[][] transitionTargets;
+    private final int[] failure;
+    // Per state the keywords ending in it, including those ending in its failure states
+    private final int[][] outputs;
+    private final int[] keywordLengths;
+    private final boolean[] boundaryBefore;
+    private final boolean[] boundaryAfter;
+    private final List<List<T>> values;
+
+    /**
+     * Builds the matcher
+     *
+     * @param keywords value per keyword, a keyword may stand for several values
+     */
+    private KeywordMatcher(Map<String, List<T>> keywords) {
+        int keywordCount = keywords.size();
+        keywordLengths = new int[keywordCount];
+        boundaryBefore = new boolean[keywordCount];
+        boundaryAfter = new boolean[keywordCount];
+        values = new ArrayList<List<T>>(keywordCount);
+
+        // Build the trie
+        List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+        List<List<Integer>> ends = new ArrayList<List<Integer>>();
+        trie.add(new HashMap<Character, Integer>());
+        ends.add(new ArrayList<Integer>());
+        int index = 0;
+        for (Map.Entry<String, List<T>> entry : keywords.entrySet()) {
+            String keyword = entry.getKey();
+            int state = ROOT;
+            for (int i = 0; i < keyword.length(); i++) {
+                Integer next = trie.get(state).get(keyword.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new HashMap<Character, Integer>());
+                    ends.add(new ArrayList<Integer>());
+                    trie.get(state).put(keyword.charAt(i), next);
+                }
+                state = next;
+            }
+            ends.get(state).add(index);
+            keywordLengths[index] = keyword.length();
+            boundaryBefore[index] = NormalizedText.isWordCharacter(keyword.charAt(0));
+            boundaryAfter[index] = NormalizedText.isWordCharacter(keyword.charAt(keyword.length() - 1));
+            values.add(entry.getValue());
+            index++;
+        }
+
+        int states = trie.size();
+        transitionChars = new char[states][];
+        transitionTargets = new int[states][];
+        for (int state = 0; state < states; state++) {
+            SortedMap<Character, Integer> sorted = new TreeMap<Character, Integer>(trie.get(state));
+            transitionChars[state] = new char[sorted.size()];
+            transitionTargets[state] = new int[sorted.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> transition : sorted.entrySet()) {
+                transitionChars[state][i] = transition.getKey();
+                transitionTargets[state][i] = transition.getValue();
+                i++;
+            }
+        }
+
+        // Failure links and outputs, breadth first so the failure state of a state is done before the state itself
+        failure = new int[states];
+        outputs = new int[states][];
+        outputs[ROOT] = toArray(ends.get(ROOT));
+        Deque<Integer> queue = new ArrayDeque<Integer>();
+        for (int target : transitionTargets[ROOT]) {
+            failure[target] = ROOT;
+            outputs[target] = toArray(ends.get(target));
+            queue.add(target);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < transitionChars[state].length; i++) {
+                char c = transitionChars[state][i];
+                int target = transitionTargets[state][i];
+                int fallback = failure[state];
+                while (fallback != ROOT && next(fallback, c) < 0) {
+                    fallback = failure[fallback];
+                }
+                int fallbackTarget = next(fallback, c);
+                failure[target] = fallbackTarget >= 0 && fallbackTarget != target ? fallbackTarget : ROOT;
+
+                List<Integer> output = new ArrayList<Integer>(ends.get(target));
+                for (int inherited : outputs[failure[target]]) {
+                    output.add(inherited);
+                }
+                outputs[target] = toArray(output);
+                queue.add(target);
+            }
+        }
+    }
+
+    /**
+     * Builds a matcher of keywords which stand for themselves
+     *
+     * @param keywords the keywords, empty ones are left out
+     * @return the matcher
+     */
+    public static KeywordMatcher<String> of(Collection<String> keywords) {
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        for (String keyword : keywords) {
+            map.put(keyword, keyword);
+        }
+        return of(map);
+    }
+
+    /**
+     * Builds a matcher of keywords which stand for a value. Keywords that are the same after normalization stand for
+     * all of their values.
+     *
+     * @param keywords value per keyword, empty keywords are left out
+     * @param <T>      type of the values
+     * @return the matcher
+     */
+    public static <T> KeywordMatcher<T> of(Map<String, T> keywords) {
+        Map<String, List<T>> normalized = new LinkedHashMap<String, List<T>>();
+        for (Map.Entry<String, T> entry : keywords.entrySet()) {
+            if (entry.getKey() == null) {
+                continue;
+            }
+            String keyword = NormalizedText.normalizeToString(entry.getKey());
+            if (keyword.isEmpty()) {
+                continue;
+            }
+            List<T> keywordValues = normalized.get(keyword);
+            if (keywordValues == null) {
+                keywordValues = new ArrayList<T>(1);
+                normalized.put(keyword, keywordValues);
+            }
+            keywordValues.add(entry.getValue());
+        }
+        return new KeywordMatcher<T>(normalized);
+    }
+
+    /**
+     * Finds the keywords in the text
+     *
+     * @param text text to search
+     * @return the values of the keywords found, each once, in the order they were found
+     */
+    public List<T> findAll(CharSequence text) {
+        return findAll(new NormalizedText().normalize(text));
+    }
+
+    /**
+     * Finds the keywords in a text that has been normalized already, so several matchers can share the work
+     *
+     * @param text normalized text to search
+     * @return the values of the keywords found, each once, in the order they were found
+     */
+    public List<T> findAll(NormalizedText text) {
+        List<T> found = new ArrayList<T>();
+        boolean[] seen = new boolean[values.size()];
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next = next(state, c);
+            while (next < 0 && state != ROOT) {
+                state = failure[state];
+                next = next(state, c);
+            }
+            state = next >= 0 ? next : ROOT;
+
+            for (int keyword : outputs[state]) {
+                if (!seen[keyword] && onBoundaries(keyword, text, i)) {
+                    seen[keyword] = true;
+                    found.addAll(values.get(keyword));
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Checks if the keyword ending at the position is not part of a longer word
+     */
+    private boolean onBoundaries(int keyword, NormalizedText text, int end) {
+        int start = end - keywordLengths[keyword] + 1;
+        if (boundaryBefore[keyword] && text.isWordCharacter(start - 1)) {
+            return false;
+        }
+        return !(boundaryAfter[keyword] && text.isWordCharacter(end + 1));
+    }
+
+    /**
+     * Returns the state the transition on the character leads to
+     *
+     * @return the target state, or -1 when the state has no transition on the character
+     */
+    private int next(int state, char c) {
+        int i = Arrays.binarySearch(transitionChars[state], c);
+        return i >= 0 ? transitionTargets[state][i] : -1;
+    }
+
+    /**
+     * Copies the list into an array
+     */
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
@@ -8,16 +8,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Parser for the locations associated with a class which implements Locatable.
+ * <p/>
+ * Safe to use from several threads at once. Known locations are looked up by their name, ignoring case, without
+ * locking. A new location is looked up and saved by one thread at a time, so two vacatures in the same new place do not
+ * both save it.
  *
  * @see org.jobhearted.crawler.processing.objects.Locatable
  */
 public class LocationParser {
-    private static List<Location> allLocations;
+    private static volatile ConcurrentMap<String, Location> allLocations;
     private static Logger logger = LoggerFactory.getLogger(LocationParser.class);
 
     /**
@@ -28,38 +33,95 @@ public class LocationParser {
      * @param object Object to add the location object to.
      */
     public static void parseLocation(String loc, Locatable object) {
-        initializeList();
+        Location location = knownLocations().get(keyOf(loc));
+        if (location == null) {
+            location = addLocation(loc);
+        }
+        if (location != null) {
+            object.addLocation(location);
+        }
+    }
 
-        Location location = new Location();
+    /**
+     * Looks up the coordinates of a location that does not exist yet and saves it. Another thread may have added it
+     * while this one waited, then that one is returned.
+     *
+     * @param loc Location string to add.
+     * @return the location, or null when it could not be looked up
+     */
+    private static synchronized Location addLocation(String loc) {
+        Location location = allLocations.get(keyOf(loc));
+        if (location != null) {
+            return location;
+        }
+        location = new Location();
         location.setName(loc);
+        try {
+            location.getCoords();
+            location.saveIt();
+            allLocations.put(keyOf(loc), location);
+            return location;
+        } catch (IOException e) {
+            logger.info("Could not get location!", e);
+        } catch (JSONException e) {
+            logger.info("Failed to parse the JSON, is it valid?", e);
+        }
+        return null;
+    }
 
-        int index = allLocations.indexOf(location);
-        if (index == -1) {
-            // This location does not exist yet
-            try {
-                location.getCoords();
-                location.saveIt();
+    /**
+     * Adds the location to the object when it is already known, without looking up a new one. Used when pages are
+     * processed again offline, which makes no calls to the geocoding API.
+     *
+     * @param loc    Location string to parse.
+     * @param object Object to add the location object to.
+     * @return whether the location was known
+     */
+    public static boolean parseKnownLocation(String loc, Locatable object) {
+        Location location = knownLocations().get(keyOf(loc));
+        if (location == null) {
+            return false;
+        }
+        object.addLocation(location);
+        return true;
+    }
 
-                object.addLocation(location);
-                allLocations.add(location);
-            } catch (IOException e) {
-                logger.info("Could not get location!", e);
-            } catch (JSONException e) {
-                logger.info("Failed to parse the JSON, is it valid?", e);
-            }
-        } else {
-            location = allLocations.get(index);
-            object.addLocation(location);
+    /**
+     * Returns the known locations by their key, loaded from the database on first use
+     *
+     * @return location per key
+     */
+    private static ConcurrentMap<String, Location> knownLocations() {
+        ConcurrentMap<String, Location> locations = allLocations;
+        if (locations == null) {
+            locations = initializeList();
         }
+        return locations;
     }
 
-    private static void initializeList() {
+    /**
+     * Loads all locations from the database, once
+     */
+    private static synchronized ConcurrentMap<String, Location> initializeList() {
         if (allLocations == null) {
-            allLocations = new LinkedList<Location>();
+            ConcurrentMap<String, Location> locations = new ConcurrentHashMap<String, Location>();
             for (Model l : Location.findAll().load()) {
-                allLocations.add((Location) l);
+                Location location = (Location) l;
+                if (location.getName() != null && !locations.containsKey(keyOf(location.getName()))) {
+                    locations.put(keyOf(location.getName()), location);
+                }
             }
-            logger.info("Loaded {} Location entries!", allLocations.size());
+            logger.info("Loaded {} Location entries!", locations.size());
+            allLocations = locations;
         }
+        return allLocations;
+    }
+
+    /**
+     * Returns the key of a location name: like Location.equals, names differing in case or surrounding whitespace are
+     * the same location
+     */
+    private static String keyOf(String name) {
+        return name.trim().toLowerCase(Locale.ENGLISH);
     }
 }
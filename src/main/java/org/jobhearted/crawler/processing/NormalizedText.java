@@ -0,0 +1,104 @@
+package org.jobhearted.crawler.processing;
+
+/**
+ * A text brought in the form the extractors of the DocumentProcessor match on, in a single pass over the text: lower
+ * case, with every run of whitespace turned into a single space and no whitespace at the start or end. Normalizing a
+ * new text reuses the buffer of the previous one, so once the buffer is large enough it costs no allocations.
+ * <p/>
+ * Besides the characters it tells where the tokens are: a word character next to a character that is not one is a
+ * token boundary. Word characters are letters, digits, '+' and '#', so names like c++ and c# are a single token.
+ * <p/>
+ * Not thread safe, every thread needs its own instance.
+ */
+public class NormalizedText implements CharSequence {
+    private static final char SPACE = ' ';
+    private static final int INITIAL_CAPACITY = 4096;
+    private char[] chars = new char[INITIAL_CAPACITY];
+    private int length;
+
+    /**
+     * Replaces the contents with the normalized form of the text
+     *
+     * @param text text to normalize, null is taken as an empty text
+     * @return this
+     */
+    public NormalizedText normalize(CharSequence text) {
+        length = 0;
+        if (text == null) {
+            return this;
+        }
+        if (chars.length < text.length()) {
+            chars = new char[Math.max(text.length(), chars.length * 2)];
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = normalize(text.charAt(i));
+            if (c != SPACE || (length > 0 && chars[length - 1] != SPACE)) {
+                chars[length++] = c;
+            }
+        }
+        if (length > 0 && chars[length - 1] == SPACE) {
+            length--;
+        }
+        return this;
+    }
+
+    /**
+     * Checks if the character at the index is a word character
+     *
+     * @param index index in the normalized text
+     * @return whether it is a word character, false outside of the text
+     */
+    public boolean isWordCharacter(int index) {
+        return index >= 0 && index < length && isWordCharacter(chars[index]);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " beyond length " + length);
+        }
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Returns the normalized form of a text as a string, used for the keywords the text is matched against
+     *
+     * @param text text to normalize
+     * @return normalized text
+     */
+    public static String normalizeToString(CharSequence text) {
+        return new NormalizedText().normalize(text).toString();
+    }
+
+    /**
+     * Checks if the character is part of a word: a letter, a digit, or the '+' and '#' of names like c++ and c#
+     *
+     * @param c character to check
+     * @return whether it is a word character
+     */
+    public static boolean isWordCharacter(char c) {
+        return Character.isLetterOrDigit(c) || c == '+' || c == '#';
+    }
+
+    /**
+     * Lower cases the character and turns whitespace into a space
+     */
+    private static char normalize(char c) {
+        return Character.isWhitespace(c) || Character.isSpaceChar(c) ? SPACE : Character.toLowerCase(c);
+    }
+}
@@ -0,0 +1,266 @@
+package org.jobhearted.crawler.processing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The rules of a robots.txt for this crawler, compiled for fast matching. Only the group of the most specific
+ * User-agent line matching USER_AGENT is used, or the group of "*" when there is none.
+ * <p/>
+ * The rules are sorted on their length: the longest rule matching the path decides, an Allow wins from a Disallow of the
+ * same length. Rules support the * wildcard and the $ end anchor. A check does not allocate, as it runs for every link
+ * found on a page.
+ */
+public class RobotsRules {
+    public static final String USER_AGENT = "CrawlHearted";
+    public static final long NO_CRAWL_DELAY = -1;
+    public static final RobotsRules ALLOW_ALL = new RobotsRules(new Rule[0], NO_CRAWL_DELAY,
+            Collections.<String>emptyList());
+    private static final String ROOT_PATH = "/";
+    private static final String ANY_AGENT = "*";
+
+    private final Rule[] rules;
+    private final long crawlDelay;
+    private final List<String> sitemaps;
+
+    /**
+     * Creates the rules
+     *
+     * @param rules      compiled rules, longest first
+     * @param crawlDelay crawl delay in milliseconds, or NO_CRAWL_DELAY
+     * @param sitemaps   sitemap urls listed in the file
+     */
+    private RobotsRules(Rule[] rules, long crawlDelay, List<String> sitemaps) {
+        this.rules = rules;
+        this.crawlDelay = crawlDelay;
+        this.sitemaps = sitemaps;
+    }
+
+    /**
+     * Parses a robots.txt
+     *
+     * @param text      contents of the robots.txt
+     * @param userAgent name of the crawler, matched against the User-agent lines
+     * @return the rules for the crawler
+     */
+    public static RobotsRules parse(String text, String userAgent) {
+        String agent = userAgent.toLowerCase(Locale.ENGLISH);
+        List<String> sitemaps = new ArrayList<String>();
+        List<Rule> specificRules = new ArrayList<Rule>();
+        List<Rule> anyRules = new ArrayList<Rule>();
+        long specificDelay = NO_CRAWL_DELAY;
+        long anyDelay = NO_CRAWL_DELAY;
+        int bestMatch = -1;
+
+        // Match of the current group: -1 not for us, 0 for any agent, otherwise the length of the matching agent
+        int groupMatch = -1;
+        boolean inAgentLines = false;
+        for (String line : text.split("\r\n|\r|\n")) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ENGLISH);
+            String value = line.substring(colon + 1).trim();
+
+            if ("user-agent".equals(field)) {
+                if (!inAgentLines) {
+                    groupMatch = -1;
+                    inAgentLines = true;
+                }
+                groupMatch = Math.max(groupMatch, agentMatch(value.toLowerCase(Locale.ENGLISH), agent));
+                if (groupMatch > bestMatch) {
+                    // A more specific group replaces what a less specific one said
+                    bestMatch = groupMatch;
+                    if (groupMatch > 0) {
+                        specificRules.clear();
+                        specificDelay = NO_CRAWL_DELAY;
+                    }
+                }
+                continue;
+            }
+            inAgentLines = false;
+            if ("sitemap".equals(field)) {
+                if (value.length() > 0) {
+                    sitemaps.add(value);
+                }
+                continue;
+            }
+            if (groupMatch < 0 || groupMatch < bestMatch) {
+                continue;
+            }
+            List<Rule> target = groupMatch == 0 ? anyRules : specificRules;
+            if ("allow".equals(field) || "disallow".equals(field)) {
+                if (value.length() > 0) {
+                    target.add(new Rule(value, "allow".equals(field)));
+                }
+            } else if ("crawl-delay".equals(field)) {
+                long delay = parseCrawlDelay(value);
+                if (groupMatch == 0) {
+                    anyDelay = delay;
+                } else {
+                    specificDelay = delay;
+                }
+            }
+        }
+
+        List<Rule> chosen = bestMatch > 0 ? specificRules : anyRules;
+        long delay = bestMatch > 0 ? specificDelay : anyDelay;
+        Rule[] compiled = chosen.toArray(new Rule[chosen.size()]);
+        Arrays.sort(compiled, new Comparator<Rule>() {
+            @Override
+            public int compare(Rule first, Rule second) {
+                if (first.length != second.length) {
+                    return second.length - first.length;
+                }
+                return first.allow == second.allow ? 0 : (first.allow ? -1 : 1);
+            }
+        });
+        return new RobotsRules(compiled, delay, Collections.unmodifiableList(sitemaps));
+    }
+
+    /**
+     * Checks if the rules allow crawling the url
+     *
+     * @param url absolute url to check
+     * @return whether it may be crawled
+     */
+    public boolean allows(String url) {
+        if (rules.length == 0) {
+            return true;
+        }
+        String path = url;
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : url.indexOf('/', start + 3);
+        if (start < 0) {
+            path = ROOT_PATH;
+            start = 0;
+        }
+        for (Rule rule : rules) {
+            if (rule.matches(path, start)) {
+                return rule.allow;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the Crawl-delay the site asks of this crawler
+     *
+     * @return crawl delay in milliseconds, or NO_CRAWL_DELAY when the site did not set one
+     */
+    public long getCrawlDelay() {
+        return crawlDelay;
+    }
+
+    /**
+     * Returns the sitemaps listed in the robots.txt
+     *
+     * @return sitemap urls
+     */
+    public List<String> getSitemaps() {
+        return sitemaps;
+    }
+
+    /**
+     * Checks how well a User-agent line matches the crawler
+     *
+     * @return 0 for *, the length of the line when the crawler name contains it, otherwise -1
+     */
+    private static int agentMatch(String line, String agent) {
+        if (ANY_AGENT.equals(line)) {
+            return 0;
+        }
+        return line.length() > 0 && agent.contains(line) ? line.length() : -1;
+    }
+
+    /**
+     * Parses a Crawl-delay in seconds, which may have decimals
+     *
+     * @return crawl delay in milliseconds, or NO_CRAWL_DELAY when it is not a number
+     */
+    private static long parseCrawlDelay(String value) {
+        try {
+            double seconds = Double.parseDouble(value);
+            return seconds >= 0 ? (long) (seconds * 1000) : NO_CRAWL_DELAY;
+        } catch (NumberFormatException e) {
+            return NO_CRAWL_DELAY;
+        }
+    }
+
+    /**
+     * An Allow or Disallow rule, split on its wildcards
+     */
+    private static class Rule {
+        private final String[] parts;
+        private final boolean anchored;
+        private final boolean allow;
+        private final int length;
+
+        /**
+         * Compiles the rule
+         *
+         * @param pattern path pattern of the rule
+         * @param allow   whether it is an Allow rule
+         */
+        Rule(String pattern, boolean allow) {
+            this.allow = allow;
+            this.length = pattern.length();
+            this.anchored = pattern.endsWith("$");
+            this.parts = split(anchored ? pattern.substring(0, pattern.length() - 1) : pattern);
+        }
+
+        /**
+         * Checks if the rule matches the path starting at the given index of the url
+         *
+         * @param url   url containing the path
+         * @param start index where the path starts
+         * @return whether it matches
+         */
+        boolean matches(String url, int start) {
+            if (!url.startsWith(parts[0], start)) {
+                return false;
+            }
+            int position = start + parts[0].length();
+            if (parts.length == 1) {
+                return !anchored || position == url.length();
+            }
+            for (int i = 1; i < parts.length - 1; i++) {
+                int found = url.indexOf(parts[i], position);
+                if (found < 0) {
+                    return false;
+                }
+                position = found + parts[i].length();
+            }
+            String last = parts[parts.length - 1];
+            if (anchored) {
+                return url.length() - last.length() >= position && url.endsWith(last);
+            }
+            return url.indexOf(last, position) >= 0;
+        }
+
+        /**
+         * Splits the pattern on its wildcards, keeping empty parts
+         */
+        private static String[] split(String pattern) {
+            List<String> parts = new ArrayList<String>();
+            int from = 0;
+            int wildcard = pattern.indexOf('*');
+            while (wildcard >= 0) {
+                parts.add(pattern.substring(from, wildcard));
+                from = wildcard + 1;
+                wildcard = pattern.indexOf('*', from);
+            }
+            parts.add(pattern.substring(from));
+            return parts.toArray(new String[parts.size()]);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.jobhearted.crawler.processing;
+
+import org.jobhearted.crawler.fetching.HttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The robots.txt of the site of a crawler, fetched when it is first needed and cached for the robots cache time
+ * setting. A site without a robots.txt allows everything. When the robots.txt can not be fetched, the rules fetched
+ * before stay in use, or everything is allowed, and fetching is tried again after RETRY_TIME. Disallowing everything
+ * instead would make the crawler drop its whole frontier on a hiccup of the server.
+ * <p/>
+ * Only used by the thread of the crawler, checking the cache is a single time comparison.
+ */
+public class RobotsTxt {
+    static final long RETRY_TIME = 600000;
+    private static final int MAX_SIZE = 500 * 1024;
+    private static Logger logger = LoggerFactory.getLogger(RobotsTxt.class);
+    private final String siteRoot;
+    private final String robotsUrl;
+    private final long cacheTime;
+    private RobotsRules rules = RobotsRules.ALLOW_ALL;
+    private long expiresAt;
+
+    /**
+     * Creates the robots.txt of the site of the base url
+     *
+     * @param baseUrl   base url of the crawler
+     * @param cacheTime time in milliseconds the rules are used before fetching them again
+     */
+    public RobotsTxt(String baseUrl, long cacheTime) {
+        this.siteRoot = siteRootOf(baseUrl);
+        this.robotsUrl = siteRoot != null ? siteRoot + "/robots.txt" : null;
+        this.cacheTime = cacheTime;
+    }
+
+    /**
+     * Returns the rules of the site, fetching them first when the cached ones expired
+     *
+     * @return the rules
+     */
+    public RobotsRules getRules() {
+        long now = System.currentTimeMillis();
+        if (now >= expiresAt) {
+            refresh(now);
+        }
+        return rules;
+    }
+
+    /**
+     * Returns the sitemaps of the site: those listed in the robots.txt, or the sitemap.xml at the root of the site
+     * when it lists none
+     *
+     * @return sitemap urls
+     */
+    public List<String> getSitemaps() {
+        List<String> sitemaps = getRules().getSitemaps();
+        if (sitemaps.isEmpty() && siteRoot != null) {
+            return Collections.singletonList(siteRoot + "/sitemap.xml");
+        }
+        return sitemaps;
+    }
+
+    /**
+     * Fetches and parses the robots.txt
+     *
+     * @param now current time in milliseconds
+     */
+    private void refresh(long now) {
+        if (robotsUrl == null) {
+            expiresAt = Long.MAX_VALUE;
+            return;
+        }
+        try {
+            String text = HttpClient.getShared().getText(robotsUrl, MAX_SIZE);
+            rules = text != null ? RobotsRules.parse(text, RobotsRules.USER_AGENT) : RobotsRules.ALLOW_ALL;
+            expiresAt = now + cacheTime;
+            logger.info("Loaded {}, crawl delay {} ms", robotsUrl, rules.getCrawlDelay());
+        } catch (IOException e) {
+            logger.warn("Could not fetch {}, trying again later", robotsUrl, e);
+            expiresAt = now + Math.min(cacheTime, RETRY_TIME);
+        }
+    }
+
+    /**
+     * Returns the root of the site of an url, where its robots.txt and sitemap.xml are
+     *
+     * @param url any url of the site
+     * @return scheme, host and port of the url, or null when the url is not valid
+     */
+    static String siteRootOf(String url) {
+        try {
+            URL parsed = new URL(url);
+            String port = parsed.getPort() >= 0 ? ":" + parsed.getPort() : "";
+            return parsed.getProtocol() + "://" + parsed.getHost() + port;
+        } catch (MalformedURLException e) {
+            logger.warn("No robots.txt for invalid url {}", url, e);
+            return null;
+        }
+    }
+}
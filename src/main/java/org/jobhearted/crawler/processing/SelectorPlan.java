@@ -0,0 +1,168 @@
+package org.jobhearted.crawler.processing;
+
+import org.jobhearted.crawler.processing.objects.ProcessData;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Selector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * The ProcessSetting selectors of a crawler, checked and split up once instead of for every document. Queries that are
+ * not valid are left out when the plan is compiled, so they are logged once instead of failing on every document.
+ * <p/>
+ * The requirements are evaluated first, in order, and the document is rejected at the first one it misses. A document
+ * like a listing page is therefore rejected without evaluating any of the fields. The fields of a vacature are then
+ * selected like Element.select does. Jsoup 1.7 keeps its query parser to itself, so every select still parses its
+ * query; that is cheap next to walking the document.
+ * <p/>
+ * A plan does not change after it is compiled and can be used by several threads at once.
+ */
+public class SelectorPlan {
+    private static Logger logger = LoggerFactory.getLogger(SelectorPlan.class);
+    private static final String NULL_VALUE = "NULL";
+    private static final String REQUIREMENT_SEPARATOR = ";";
+    private final String[] requirements;
+    private final ProcessData[] fields;
+    // Per field its query, null for fields that are always empty
+    private final String[] fieldQueries;
+    private final boolean usable;
+
+    /**
+     * Creates the plan
+     *
+     * @param requirements queries of the requirements
+     * @param fields       the fields of a vacature
+     * @param fieldQueries query per field
+     * @param usable       whether the requirements were all valid
+     */
+    private SelectorPlan(String[] requirements, ProcessData[] fields, String[] fieldQueries, boolean usable) {
+        this.requirements = requirements;
+        this.fields = fields;
+        this.fieldQueries = fieldQueries;
+        this.usable = usable && requirements.length > 0;
+    }
+
+    /**
+     * Compiles the selectors of a crawler. The requirements are separated by ';'. A field with the value NULL is always
+     * empty.
+     * <p/>
+     * A plan without requirements, or with a requirement that is not a valid query, accepts no document. A field that
+     * is not a valid query is left empty.
+     *
+     * @param settings selector per ProcessData of the crawler
+     * @return the plan
+     */
+    public static SelectorPlan compile(Map<ProcessData, String> settings) {
+        boolean usable = true;
+        List<String> requirements = new ArrayList<String>();
+        String requirementQueries = settings.get(ProcessData.REQUIREMENTFORVACATURE);
+        if (requirementQueries != null) {
+            for (String query : requirementQueries.split(REQUIREMENT_SEPARATOR)) {
+                if (query.trim().isEmpty()) {
+                    continue;
+                }
+                String checked = check(ProcessData.REQUIREMENTFORVACATURE, query);
+                if (checked != null) {
+                    requirements.add(checked);
+                } else {
+                    usable = false;
+                }
+            }
+        }
+        if (requirements.isEmpty()) {
+            logger.warn("No {} set, no document will be taken for a vacature", ProcessData.REQUIREMENTFORVACATURE);
+        }
+
+        List<ProcessData> fields = new ArrayList<ProcessData>();
+        List<String> fieldQueries = new ArrayList<String>();
+        for (Map.Entry<ProcessData, String> entry : settings.entrySet()) {
+            if (entry.getKey() != ProcessData.REQUIREMENTFORVACATURE) {
+                fields.add(entry.getKey());
+                fieldQueries.add(NULL_VALUE.equals(entry.getValue()) ? null : check(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        return new SelectorPlan(requirements.toArray(new String[requirements.size()]),
+                fields.toArray(new ProcessData[fields.size()]),
+                fieldQueries.toArray(new String[fieldQueries.size()]), usable);
+    }
+
+    /**
+     * Evaluates the plan on a document
+     *
+     * @param document the document
+     * @return the text of every field, the texts of its elements joined by spaces, or null when the document does not
+     *         meet the requirements
+     */
+    public Map<ProcessData, String> evaluate(Document document) {
+        if (!meetsRequirements(document)) {
+            return null;
+        }
+        return extract(document);
+    }
+
+    /**
+     * Checks if the document meets every requirement: some element matching it has text
+     *
+     * @param document the document
+     * @return whether it meets the requirements
+     */
+    public boolean meetsRequirements(Document document) {
+        if (!usable) {
+            return false;
+        }
+        for (String requirement : requirements) {
+            if (!hasText(Selector.select(requirement, document))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the text of every field, without checking the requirements
+     *
+     * @param document the document
+     * @return text per field
+     */
+    public Map<ProcessData, String> extract(Document document) {
+        Map<ProcessData, String> values = new EnumMap<ProcessData, String>(ProcessData.class);
+        for (int i = 0; i < fields.length; i++) {
+            values.put(fields[i], fieldQueries[i] != null ? Selector.select(fieldQueries[i], document).text() : "");
+        }
+        return values;
+    }
+
+    /**
+     * Checks if any of the elements has text
+     */
+    private static boolean hasText(List<Element> elements) {
+        for (Element element : elements) {
+            if (!element.text().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks that a query is valid by selecting it on an empty document, which parses the query
+     *
+     * @return the trimmed query, or null when the query is not valid
+     */
+    private static String check(ProcessData data, String query) {
+        String trimmed = query.trim();
+        try {
+            Selector.select(trimmed, new Document(""));
+            return trimmed;
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid selector for {}: {}", data, query);
+        } catch (IllegalStateException e) {
+            logger.warn("Invalid selector for {}: {}", data, query);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,158 @@
+package org.jobhearted.crawler.processing;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Stream parser of sitemaps and sitemap indexes. The file is read with StAX, one element at a time, so a sitemap of
+ * fifty thousand urls never lives in memory as a whole. Gzipped sitemaps are recognized by their first bytes, whatever
+ * their name or content type. The listener hears of every url of a sitemap and every sitemap of an index, with its
+ * lastmod date when there is one.
+ */
+public class SitemapParser {
+    public static final long NO_LAST_MODIFIED = -1;
+    private static final String[] DATE_FORMATS = {"yyyy-MM-dd'T'HH:mm:ss.SSSZ", "yyyy-MM-dd'T'HH:mm:ssZ",
+            "yyyy-MM-dd'T'HH:mmZ", "yyyy-MM-dd"};
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    /**
+     * Receives the entries of a sitemap as they are parsed
+     */
+    public interface Listener {
+        /**
+         * Called for every url of a sitemap
+         *
+         * @param location     url of the page
+         * @param lastModified time the page last changed, or NO_LAST_MODIFIED
+         */
+        void url(String location, long lastModified);
+
+        /**
+         * Called for every sitemap of a sitemap index
+         *
+         * @param location     url of the sitemap
+         * @param lastModified time the sitemap last changed, or NO_LAST_MODIFIED
+         */
+        void sitemap(String location, long lastModified);
+    }
+
+    /**
+     * Private constructor, the parser only has static methods
+     */
+    private SitemapParser() {
+    }
+
+    /**
+     * Parses a sitemap or sitemap index, gzipped or not
+     *
+     * @param in       stream of the file, not closed by the parser
+     * @param listener listener to hand the entries to
+     * @throws IOException when the file could not be read or is no valid xml
+     */
+    public static void parse(InputStream in, Listener listener) throws IOException {
+        try {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(decompress(in));
+            try {
+                read(reader, listener);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid sitemap: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the url and sitemap elements, the other elements are skipped
+     */
+    private static void read(XMLStreamReader reader, Listener listener) throws XMLStreamException {
+        String location = null;
+        String lastModified = null;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("url".equals(name) || "sitemap".equals(name)) {
+                    location = null;
+                    lastModified = null;
+                } else if ("loc".equals(name)) {
+                    location = reader.getElementText().trim();
+                } else if ("lastmod".equals(name)) {
+                    lastModified = reader.getElementText().trim();
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && location != null && location.length() > 0) {
+                String name = reader.getLocalName();
+                if ("url".equals(name)) {
+                    listener.url(location, parseLastModified(lastModified));
+                } else if ("sitemap".equals(name)) {
+                    listener.sitemap(location, parseLastModified(lastModified));
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses a lastmod date in the W3C datetime format sitemaps use, like 2014-01-31 or 2014-01-31T10:15:00+01:00
+     *
+     * @param value value of the lastmod element, may be null
+     * @return the time in milliseconds, or NO_LAST_MODIFIED when there is no valid date
+     */
+    public static long parseLastModified(String value) {
+        if (value == null || value.length() == 0) {
+            return NO_LAST_MODIFIED;
+        }
+        // SimpleDateFormat of Java 6 only knows zones like +0100
+        String date = value.endsWith("Z") ? value.substring(0, value.length() - 1) + "+0000" : value;
+        int zone = date.length() - 6;
+        if (zone > 0 && (date.charAt(zone) == '+' || date.charAt(zone) == '-') && date.charAt(zone + 3) == ':') {
+            date = date.substring(0, date.length() - 3) + date.substring(date.length() - 2);
+        }
+        for (String pattern : DATE_FORMATS) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.ENGLISH);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            format.setLenient(false);
+            try {
+                return format.parse(date).getTime();
+            } catch (ParseException e) {
+                // try the next format
+            }
+        }
+        return NO_LAST_MODIFIED;
+    }
+
+    /**
+     * Wraps the stream in a gzip stream when it starts with the gzip magic number
+     */
+    private static InputStream decompress(InputStream in) throws IOException {
+        InputStream buffered = new BufferedInputStream(in);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        if (first == 0x1f && second == 0x8b) {
+            return new GZIPInputStream(buffered);
+        }
+        return buffered;
+    }
+
+    /**
+     * Creates the StAX factory. Sitemaps come from the web, so DTDs and external entities are not processed.
+     */
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        return factory;
+    }
+}
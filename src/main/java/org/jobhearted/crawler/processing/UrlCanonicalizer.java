@@ -0,0 +1,213 @@
+package org.jobhearted.crawler.processing;
+
+import org.jobhearted.crawler.management.CrawlManager;
+import org.jobhearted.crawler.processing.objects.IgnoredParameter;
+
+import java.util.*;
+
+/**
+ * Brings urls into one canonical spelling, so the same page does not enter the url list under different urls. The
+ * canonical url has:
+ * <ul>
+ * <li>a lower case scheme and host, without the default port</li>
+ * <li>no fragment and no trailing slash, except for the root path</li>
+ * <li>no session id path parameter, no ignored query parameters and the other parameters sorted</li>
+ * <li>upper case percent escapes</li>
+ * </ul>
+ * Query parameters are ignored when they are in the defaults, like the utm_ tracking codes, or in the
+ * IgnoredParameter entries of the crawler.
+ *
+ * @see IgnoredParameter
+ */
+public class UrlCanonicalizer {
+    private static final String[] DEFAULT_IGNORED_PARAMETERS = {
+            "utm_*", "gclid", "fbclid", "msclkid", "jsessionid", "phpsessid", "sessionid"
+    };
+    private static final String SCHEME_SEPARATOR = "://";
+    private static final String SESSION_PATH_PARAMETER = ";jsessionid=";
+    private final Set<String> ignoredParameters = new HashSet<String>();
+    private final List<String> ignoredPrefixes = new ArrayList<String>();
+
+    /**
+     * Creates a canonicalizer which strips the default parameters and the given ones
+     *
+     * @param parameters names of the parameters to strip, a trailing * strips every parameter with that prefix
+     */
+    public UrlCanonicalizer(Collection<String> parameters) {
+        addIgnoredParameters(Arrays.asList(DEFAULT_IGNORED_PARAMETERS));
+        addIgnoredParameters(parameters);
+    }
+
+    /**
+     * Creates the canonicalizer of a crawler, using the IgnoredParameter entries in the database
+     *
+     * @param crawlManager crawler to create the canonicalizer for
+     * @return the canonicalizer
+     */
+    public static UrlCanonicalizer createCanonicalizer(CrawlManager crawlManager) {
+        return new UrlCanonicalizer(IgnoredParameter.loadAllParametersForCrawlerId(crawlManager.getID()));
+    }
+
+    /**
+     * Returns the canonical spelling of the url
+     *
+     * @param url absolute url
+     * @return the canonical url, or null if it is not an absolute http or https url
+     */
+    public String canonicalize(String url) {
+        String trimmed = url.trim();
+        int schemeEnd = trimmed.indexOf(SCHEME_SEPARATOR);
+        if (schemeEnd <= 0) {
+            return null;
+        }
+        String scheme = trimmed.substring(0, schemeEnd).toLowerCase(Locale.ENGLISH);
+        if (!"http".equals(scheme) && !"https".equals(scheme)) {
+            return null;
+        }
+
+        // Split the rest in authority, path and query, dropping the fragment
+        int fragmentStart = trimmed.indexOf('#');
+        String rest = trimmed.substring(schemeEnd + SCHEME_SEPARATOR.length(),
+                fragmentStart >= 0 ? fragmentStart : trimmed.length());
+        int queryStart = rest.indexOf('?');
+        String query = queryStart >= 0 ? rest.substring(queryStart + 1) : "";
+        String beforeQuery = queryStart >= 0 ? rest.substring(0, queryStart) : rest;
+        int pathStart = beforeQuery.indexOf('/');
+        String authority = pathStart >= 0 ? beforeQuery.substring(0, pathStart) : beforeQuery;
+        String path = pathStart >= 0 ? beforeQuery.substring(pathStart) : "/";
+        if (authority.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder builder = new StringBuilder(trimmed.length());
+        builder.append(scheme).append(SCHEME_SEPARATOR);
+        appendAuthority(builder, scheme, authority);
+        appendPath(builder, path);
+        appendQuery(builder, query);
+        return builder.toString();
+    }
+
+    /**
+     * Appends the authority with a lower case host and without the default port of the scheme
+     */
+    private static void appendAuthority(StringBuilder builder, String scheme, String authority) {
+        int userInfoEnd = authority.lastIndexOf('@');
+        String userInfo = userInfoEnd >= 0 ? authority.substring(0, userInfoEnd + 1) : "";
+        String hostAndPort = authority.substring(userInfoEnd + 1).toLowerCase(Locale.ENGLISH);
+
+        int portStart = hostAndPort.lastIndexOf(':');
+        String host = portStart > hostAndPort.lastIndexOf(']') ? hostAndPort.substring(0, portStart) : hostAndPort;
+        String port = host.length() < hostAndPort.length() ? hostAndPort.substring(host.length() + 1) : "";
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+
+        builder.append(userInfo).append(host);
+        boolean defaultPort = port.isEmpty()
+                || ("http".equals(scheme) && "80".equals(port))
+                || ("https".equals(scheme) && "443".equals(port));
+        if (!defaultPort) {
+            builder.append(':').append(port);
+        }
+    }
+
+    /**
+     * Appends the path without session id and trailing slash
+     */
+    private static void appendPath(StringBuilder builder, String path) {
+        String canonicalPath = path;
+        int sessionStart = canonicalPath.toLowerCase(Locale.ENGLISH).indexOf(SESSION_PATH_PARAMETER);
+        if (sessionStart >= 0) {
+            canonicalPath = canonicalPath.substring(0, sessionStart);
+        }
+        if (canonicalPath.isEmpty()) {
+            canonicalPath = "/";
+        }
+        while (canonicalPath.length() > 1 && canonicalPath.endsWith("/")) {
+            canonicalPath = canonicalPath.substring(0, canonicalPath.length() - 1);
+        }
+        appendEscaped(builder, canonicalPath);
+    }
+
+    /**
+     * Appends the query without ignored parameters and with the others sorted
+     */
+    private void appendQuery(StringBuilder builder, String query) {
+        if (query.isEmpty()) {
+            return;
+        }
+        List<String> parameters = new ArrayList<String>();
+        for (String parameter : query.split("&")) {
+            if (!parameter.isEmpty() && !isIgnored(parameter)) {
+                parameters.add(parameter);
+            }
+        }
+        if (parameters.isEmpty()) {
+            return;
+        }
+
+        Collections.sort(parameters);
+        builder.append('?');
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                builder.append('&');
+            }
+            appendEscaped(builder, parameters.get(i));
+        }
+    }
+
+    /**
+     * Checks if the name of the parameter is ignored
+     */
+    private boolean isIgnored(String parameter) {
+        int nameEnd = parameter.indexOf('=');
+        String name = (nameEnd >= 0 ? parameter.substring(0, nameEnd) : parameter).toLowerCase(Locale.ENGLISH);
+        if (ignoredParameters.contains(name)) {
+            return true;
+        }
+        for (String prefix : ignoredPrefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends the value with the hexadecimal digits of percent escapes in upper case
+     */
+    private static void appendEscaped(StringBuilder builder, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < value.length() && isHex(value.charAt(i + 1)) && isHex(value.charAt(i + 2))) {
+                builder.append('%')
+                        .append(Character.toUpperCase(value.charAt(i + 1)))
+                        .append(Character.toUpperCase(value.charAt(i + 2)));
+                i += 2;
+            } else {
+                builder.append(c);
+            }
+        }
+    }
+
+    /**
+     * Checks if the character is a hexadecimal digit
+     */
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    /**
+     * Adds parameter names to the ignored names or prefixes
+     */
+    private void addIgnoredParameters(Collection<String> parameters) {
+        for (String parameter : parameters) {
+            String name = parameter.trim().toLowerCase(Locale.ENGLISH);
+            if (name.endsWith("*")) {
+                ignoredPrefixes.add(name.substring(0, name.length() - 1));
+            } else if (!name.isEmpty()) {
+                ignoredParameters.add(name);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.jobhearted.crawler.processing;
+
+/**
+ * Calculates stable 64-bit fingerprints of url strings. The fingerprint only depends on the characters of the url, so
+ * it is the same for every run of the application and can be stored on disk.
+ */
+public class UrlFingerprint {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Calculates the fingerprint of the url. Uses 64-bit FNV-1a over the characters of the url, followed by a final
+     * mixing step so all bits of the result depend on all characters.
+     *
+     * @param url url string to fingerprint
+     * @return 64-bit fingerprint
+     */
+    public static long of(String url) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= FNV_PRIME;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Private constructor to hide the public implicit one
+     */
+    private UrlFingerprint() {
+    }
+}
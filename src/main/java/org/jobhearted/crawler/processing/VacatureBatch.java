@@ -0,0 +1,397 @@
+package org.jobhearted.crawler.processing;
+
+import org.javalite.activejdbc.Base;
+import org.jobhearted.crawler.processing.objects.*;
+import org.jobhearted.crawler.processing.relationships.VacaturesEducations;
+import org.jobhearted.crawler.processing.relationships.VacaturesLocations;
+import org.jobhearted.crawler.processing.relationships.VacaturesSkills;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * Saves what was extracted from a batch of documents, with the same outcome as DocumentProcessor.persist per document,
+ * but with a fixed amount of statements per batch instead of several per document. The vacatures the urls already have
+ * and the hashes that are already taken are read with one query each, the changes are then written in JDBC batches:
+ * the vacatures that are replaced or removed are set inactive, their relations deleted, and the new vacatures and their
+ * skills, educations and locations inserted.
+ * <p/>
+ * Only used for processing archived pages again, so like an offline processor it only adds locations that are already
+ * known.
+ *
+ * @see DocumentProcessor#persist
+ */
+public class VacatureBatch {
+    private static final String COL_ID = "id";
+    private static final String COL_VACATURE_ID = "vacature_id";
+    private static final String INSERT = "INSERT INTO " + Vacature.getTableName() + " (" + Vacature.COL_URL_ID + ", "
+            + Vacature.COL_HASH + ", " + Vacature.COL_TITLE + ", " + Vacature.COL_BEDRIJF + ", "
+            + Vacature.COL_DIENSTVERBAND + ", " + Vacature.COL_PLAATS + ", " + Vacature.COL_OMSCHRIJVING + ", "
+            + Vacature.COL_VERSION + ", " + Vacature.COL_ACTIVE + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, 1)";
+    private static final String DEACTIVATE = "UPDATE " + Vacature.getTableName() + " SET " + Vacature.COL_ACTIVE
+            + " = 0 WHERE " + COL_ID + " = ?";
+    private static final String[] COLUMNS = {Vacature.COL_TITLE, Vacature.COL_BEDRIJF, Vacature.COL_DIENSTVERBAND,
+            Vacature.COL_PLAATS, Vacature.COL_OMSCHRIJVING};
+
+    private final List<ExtractedPage> pages;
+    // Vacatures set inactive, and of those the ones that also lose their educations and locations
+    private final List<Long> deactivated = new ArrayList<Long>();
+    private final List<Long> removed = new ArrayList<Long>();
+    private final List<NewVacature> inserts = new ArrayList<NewVacature>();
+
+    /**
+     * Creates the batch
+     *
+     * @param pages the extracted documents, of urls that have an id
+     */
+    public VacatureBatch(List<ExtractedPage> pages) {
+        this.pages = pages;
+    }
+
+    /**
+     * Writes the batch. Needs a database connection on the calling thread, the caller opens and commits the
+     * transaction.
+     *
+     * @return the amount of urls of which a new vacature or version was saved, or an active vacature was removed
+     * @throws SQLException when a statement failed
+     */
+    public int write() throws SQLException {
+        Map<Integer, List<ExistingVacature>> existing = findExisting();
+        Set<String> takenHashes = findTakenHashes(existing);
+
+        int changed = 0;
+        for (ExtractedPage page : pages) {
+            List<ExistingVacature> ofUrl = existing.get(page.getUrl().getID());
+            if (page.isVacature() ? plan(page, ofUrl, takenHashes) : planRemoval(ofUrl)) {
+                changed++;
+            }
+        }
+
+        executeIds(DEACTIVATE, deactivated);
+        executeIds(deleteRelations(VacaturesSkills.getTableName()), deactivated);
+        executeIds(deleteRelations(VacaturesEducations.getTableName()), removed);
+        executeIds(deleteRelations(VacaturesLocations.getTableName()), removed);
+        executeInserts();
+        return changed;
+    }
+
+    /**
+     * Decides what to save for a vacature, like Vacature.saveSafely: nothing when its url has the same version
+     * already, a new version replacing the latest one when the description changed, and a new vacature when the url has
+     * none and no other url has the same description.
+     *
+     * @return whether a vacature is saved
+     */
+    private boolean plan(ExtractedPage page, List<ExistingVacature> ofUrl, Set<String> takenHashes) {
+        Vacature vacature = DocumentProcessor.processVacature(page);
+        String hash = vacature.getString(Vacature.COL_HASH);
+        int version = 1;
+        if (ofUrl != null) {
+            ExistingVacature latest = latestOf(ofUrl);
+            if (latest.hash.equals(hash)) {
+                return false;
+            }
+            deactivated.add(latest.id);
+            version = latest.version + 1;
+        } else if (!takenHashes.add(hash)) {
+            return false;
+        }
+        inserts.add(new NewVacature(vacature, version, page));
+        return true;
+    }
+
+    /**
+     * Sets all vacatures of an url without a vacature inactive, removing all their relations
+     *
+     * @return whether one of them was still active
+     */
+    private boolean planRemoval(List<ExistingVacature> ofUrl) {
+        if (ofUrl == null) {
+            return false;
+        }
+        boolean active = false;
+        for (ExistingVacature vacature : ofUrl) {
+            active |= vacature.active;
+            deactivated.add(vacature.id);
+            removed.add(vacature.id);
+        }
+        return active;
+    }
+
+    /**
+     * Reads the vacatures of the urls of the batch with one query
+     *
+     * @return vacatures per url id
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Integer, List<ExistingVacature>> findExisting() {
+        Map<Integer, List<ExistingVacature>> existing = new HashMap<Integer, List<ExistingVacature>>();
+        if (pages.isEmpty()) {
+            return existing;
+        }
+        List<Object> urlIds = new ArrayList<Object>();
+        for (ExtractedPage page : pages) {
+            urlIds.add(page.getUrl().getID());
+        }
+        List<Map> rows = Base.findAll("SELECT " + COL_ID + " AS id, " + Vacature.COL_URL_ID + " AS url_id, "
+                + Vacature.COL_HASH + " AS hash, " + Vacature.COL_VERSION + " AS version, " + Vacature.COL_ACTIVE
+                + " AS active FROM " + Vacature.getTableName() + " WHERE " + Vacature.COL_URL_ID + " IN ("
+                + placeholders(urlIds.size()) + ")", urlIds.toArray());
+        for (Map row : rows) {
+            int urlId = ((Number) row.get("url_id")).intValue();
+            List<ExistingVacature> ofUrl = existing.get(urlId);
+            if (ofUrl == null) {
+                ofUrl = new ArrayList<ExistingVacature>();
+                existing.put(urlId, ofUrl);
+            }
+            ofUrl.add(new ExistingVacature(((Number) row.get("id")).longValue(), (String) row.get("hash"),
+                    ((Number) row.get("version")).intValue(), ((Number) row.get("active")).intValue() == 1));
+        }
+        return existing;
+    }
+
+    /**
+     * Reads which hashes of the vacatures of urls without a vacature are already taken, with one query
+     *
+     * @return the taken hashes
+     */
+    private Set<String> findTakenHashes(Map<Integer, List<ExistingVacature>> existing) {
+        Set<String> taken = new HashSet<String>();
+        List<Object> hashes = new ArrayList<Object>();
+        for (ExtractedPage page : pages) {
+            if (page.isVacature() && !existing.containsKey(page.getUrl().getID())) {
+                hashes.add(Vacature.hashOf(page.getValues().get(ProcessData.VAC_OMSCHRIJVING)));
+            }
+        }
+        if (hashes.isEmpty()) {
+            return taken;
+        }
+        List<Map> rows = Base.findAll("SELECT DISTINCT " + Vacature.COL_HASH + " AS hash FROM "
+                + Vacature.getTableName() + " WHERE " + Vacature.COL_HASH + " IN (" + placeholders(hashes.size())
+                + ")", hashes.toArray());
+        for (Map row : rows) {
+            taken.add((String) row.get("hash"));
+        }
+        return taken;
+    }
+
+    /**
+     * Inserts the new vacatures in one batch, then their skills, educations and locations in one batch per relation
+     */
+    private void executeInserts() throws SQLException {
+        if (inserts.isEmpty()) {
+            return;
+        }
+        PreparedStatement statement = Base.connection().prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS);
+        try {
+            for (NewVacature vacature : inserts) {
+                vacature.bind(statement);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            ResultSet keys = statement.getGeneratedKeys();
+            try {
+                for (NewVacature vacature : inserts) {
+                    if (!keys.next()) {
+                        throw new SQLException("Missing generated keys for the inserted vacatures");
+                    }
+                    vacature.id = keys.getLong(1);
+                }
+            } finally {
+                keys.close();
+            }
+        } finally {
+            statement.close();
+        }
+
+        executeRelations(VacaturesSkills.getTableName(), "skill_id", new RelationIds() {
+            @Override
+            Collection<Long> of(NewVacature vacature) {
+                return vacature.skills;
+            }
+        });
+        executeRelations(VacaturesEducations.getTableName(), "education_id", new RelationIds() {
+            @Override
+            Collection<Long> of(NewVacature vacature) {
+                return vacature.educations;
+            }
+        });
+        executeRelations(VacaturesLocations.getTableName(), "location_id", new RelationIds() {
+            @Override
+            Collection<Long> of(NewVacature vacature) {
+                return vacature.locations;
+            }
+        });
+    }
+
+    /**
+     * Inserts the rows of a relation of the new vacatures in one batch
+     */
+    private void executeRelations(String table, String column, RelationIds relationIds) throws SQLException {
+        PreparedStatement statement = Base.connection().prepareStatement("INSERT INTO " + table + " ("
+                + COL_VACATURE_ID + ", " + column + ") VALUES (?, ?)");
+        try {
+            boolean empty = true;
+            for (NewVacature vacature : inserts) {
+                for (Long id : relationIds.of(vacature)) {
+                    statement.setLong(1, vacature.id);
+                    statement.setLong(2, id);
+                    statement.addBatch();
+                    empty = false;
+                }
+            }
+            if (!empty) {
+                statement.executeBatch();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Executes the statement once per id, in one batch
+     */
+    private static void executeIds(String sql, List<Long> ids) throws SQLException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        PreparedStatement statement = Base.connection().prepareStatement(sql);
+        try {
+            for (Long id : ids) {
+                statement.setLong(1, id);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Returns the statement that deletes the rows of a relation of a vacature
+     */
+    private static String deleteRelations(String table) {
+        return "DELETE FROM " + table + " WHERE " + COL_VACATURE_ID + " = ?";
+    }
+
+    /**
+     * Returns the vacature with the highest version
+     */
+    private static ExistingVacature latestOf(List<ExistingVacature> vacatures) {
+        ExistingVacature latest = vacatures.get(0);
+        for (ExistingVacature vacature : vacatures) {
+            if (vacature.version > latest.version) {
+                latest = vacature;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Returns the placeholders of an IN clause
+     */
+    private static String placeholders(int count) {
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        return placeholders.toString();
+    }
+
+    /**
+     * The ids of one relation of a new vacature
+     */
+    private abstract static class RelationIds {
+
+        /**
+         * Returns the ids of the related rows
+         *
+         * @param vacature the new vacature
+         * @return ids
+         */
+        abstract Collection<Long> of(NewVacature vacature);
+    }
+
+    /**
+     * The columns of a vacature already in the database that decide what happens to it
+     */
+    private static class ExistingVacature {
+        private final long id;
+        private final String hash;
+        private final int version;
+        private final boolean active;
+
+        /**
+         * Creates the vacature
+         *
+         * @param id      id of the vacature
+         * @param hash    hash of its description
+         * @param version its version
+         * @param active  whether it is active
+         */
+        ExistingVacature(long id, String hash, int version, boolean active) {
+            this.id = id;
+            this.hash = hash;
+            this.version = version;
+            this.active = active;
+        }
+    }
+
+    /**
+     * A vacature to insert, with the ids of its skills, educations and known locations
+     */
+    private static class NewVacature implements Locatable {
+        private final Vacature vacature;
+        private final int version;
+        private final Set<Long> skills = new LinkedHashSet<Long>();
+        private final Set<Long> educations = new LinkedHashSet<Long>();
+        private final Set<Long> locations = new LinkedHashSet<Long>();
+        private long id;
+
+        /**
+         * Creates the vacature
+         *
+         * @param vacature the vacature, with its fields and hash set
+         * @param version  version to save it as
+         * @param page     the extracted document, with the skills and educations of the vacature
+         */
+        NewVacature(Vacature vacature, int version, ExtractedPage page) {
+            this.vacature = vacature;
+            this.version = version;
+            for (Skill skill : page.getSkills()) {
+                skills.add(skill.getLongId());
+            }
+            for (Education education : page.getEducations()) {
+                educations.add(education.getLongId());
+            }
+            for (String location : DocumentProcessor.locationsOf(vacature)) {
+                LocationParser.parseKnownLocation(location, this);
+            }
+        }
+
+        /**
+         * Collects the id of a known location of the vacature
+         *
+         * @param location the location
+         */
+        @Override
+        public void addLocation(Location location) {
+            locations.add(location.getLongId());
+        }
+
+        /**
+         * Binds the values to the parameters of the insert statement
+         */
+        void bind(PreparedStatement statement) throws SQLException {
+            statement.setInt(1, vacature.getInteger(Vacature.COL_URL_ID));
+            statement.setString(2, vacature.getString(Vacature.COL_HASH));
+            for (int i = 0; i < COLUMNS.length; i++) {
+                statement.setString(3 + i, vacature.getString(COLUMNS[i]));
+            }
+            statement.setInt(3 + COLUMNS.length, version);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.jobhearted.crawler.processing.objects;
+
+import org.javalite.activejdbc.Model;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Model for query parameters a crawler strips from its urls, like session ids or tracking codes. A parameter ending
+ * with * strips every parameter starting with the part before it.
+ */
+public class IgnoredParameter extends Model {
+    // Database fields
+    private static final String COL_CRAWLER_ID = "crawler_id";
+    private static final String COL_PARAMETER = "parameter";
+
+    // Model validators
+    static {
+        validatePresenceOf(COL_CRAWLER_ID, COL_PARAMETER);
+        validateNumericalityOf(COL_CRAWLER_ID);
+    }
+
+    /**
+     * Reads the names of all ignored parameters of the specified crawler from the database
+     *
+     * @param crawlerId id of the crawler
+     * @return names of the ignored parameters
+     */
+    public static List<String> loadAllParametersForCrawlerId(int crawlerId) {
+        List<String> result = new LinkedList<String>();
+        for (Model entry : IgnoredParameter.find(COL_CRAWLER_ID + " = ?", crawlerId)) {
+            result.add(entry.getString(COL_PARAMETER));
+        }
+        return result;
+    }
+}
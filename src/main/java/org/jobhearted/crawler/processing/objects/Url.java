@@ -3,7 +3,7 @@ package org.jobhearted.crawler.processing.objects;
 import org.javalite.activejdbc.Model;
 import org.jobhearted.crawler.management.CrawlManager;
 import org.jobhearted.crawler.management.Settings;
-import org.jobhearted.crawler.statistics.StatisticsTracker;
+import org.jobhearted.crawler.processing.UrlFingerprint;
 
 import java.sql.Timestamp;
 import java.util.Date;
@@ -20,6 +20,9 @@ public class Url extends Model {
     public static final String COL_FIRST_SEEN = "first_visited";
     public static final String COL_LAST_SEEN = "last_visited";
     public static final String COL_CRAWLER_ID = "crawler_id";
+    public static final String COL_RECRAWL_INTERVAL = "recrawl_interval";
+    public static final String COL_ETAG = "etag";
+    public static final String COL_LAST_MODIFIED = "last_modified";
 
     private CrawlManager crawlManager;
 
@@ -43,12 +46,12 @@ public class Url extends Model {
 
     /**
      * Sets the flag of the url, also updates the first and last visited fields if the flag indicates the visit has
-     * been successful
+     * been successful. When the url is in the UrlList of its crawlmanager, it is moved to the queue of the new flag.
      *
      * @param flag The new flag of the url
      */
     public void setFlag(Flag flag) {
-        StatisticsTracker.switchFlag(crawlManager, getFlag(), flag);
+        Flag oldFlag = getFlag();
         if (flag != null) {
             this.set(COL_FLAG, flag.toString());
             if (flag == Flag.VISITED) {
@@ -58,6 +61,9 @@ public class Url extends Model {
                     this.setTimestamp(COL_FIRST_SEEN, now);
                 }
             }
+            if (crawlManager != null && crawlManager.getUrlList() != null) {
+                crawlManager.getUrlList().switchFlag(this, oldFlag, flag);
+            }
         }
     }
 
@@ -74,8 +80,8 @@ public class Url extends Model {
                 this.setInteger(COL_RETRIES, currentNumber + 1);
             }
         } else {
-            this.setFlag(Flag.RETRY);
             this.setInteger(COL_RETRIES, 1);
+            this.setFlag(Flag.RETRY);
         }
     }
 
@@ -144,6 +150,17 @@ public class Url extends Model {
         return this.getString(COL_URL);
     }
 
+    /**
+     * Returns the 64-bit fingerprint of the url. Urls are stored in their canonical spelling, so every spelling of the
+     * same page gets the same fingerprint.
+     *
+     * @return fingerprint of the url
+     * @see org.jobhearted.crawler.processing.UrlCanonicalizer
+     */
+    public long getFingerprint() {
+        return UrlFingerprint.of(getUrl());
+    }
+
     /**
      * Getter for the last visited field in the database
      *
@@ -153,4 +170,70 @@ public class Url extends Model {
         return this.getTimestamp(COL_LAST_SEEN);
     }
 
+    /**
+     * Returns the ETag header of the last response of the url, sent back as If-None-Match on a recrawl
+     *
+     * @return the ETag, or null if the server gave none
+     */
+    public String getEtag() {
+        return this.getString(COL_ETAG);
+    }
+
+    /**
+     * Returns the Last-Modified header of the last response of the url, sent back as If-Modified-Since on a recrawl
+     *
+     * @return the Last-Modified date as sent by the server, or null if the server gave none
+     */
+    public String getLastModified() {
+        return this.getString(COL_LAST_MODIFIED);
+    }
+
+    /**
+     * Stores the cache validators of a response of the url
+     *
+     * @param etag         value of the ETag header, may be null
+     * @param lastModified value of the Last-Modified header, may be null
+     */
+    public void setValidators(String etag, String lastModified) {
+        this.setString(COL_ETAG, etag);
+        this.setString(COL_LAST_MODIFIED, lastModified);
+    }
+
+    /**
+     * Returns the time between two visits of the url in milliseconds. Starts at the recrawl time setting and is adapted
+     * to how often the url changes by adaptRecrawlInterval.
+     *
+     * @return recrawl interval
+     */
+    public long getRecrawlInterval() {
+        Long interval = this.getLong(COL_RECRAWL_INTERVAL);
+        return interval != null ? interval : Settings.RECRAWL_TIME;
+    }
+
+    /**
+     * Adapts the recrawl interval to the outcome of a visit. A change halves the interval, a visit without change makes
+     * it half as long again, always within the minimum and maximum recrawl time settings. This way the interval settles
+     * around the time the url takes to change, urls that never change end up at the maximum.
+     *
+     * @param changed whether the visit found changed content
+     */
+    public void adaptRecrawlInterval(boolean changed) {
+        this.setLong(COL_RECRAWL_INTERVAL, adaptRecrawlInterval(getRecrawlInterval(), changed,
+                Settings.RECRAWL_MIN_TIME, Settings.RECRAWL_MAX_TIME));
+    }
+
+    /**
+     * Computes the recrawl interval after a visit, see adaptRecrawlInterval(boolean)
+     *
+     * @param interval current recrawl interval in milliseconds
+     * @param changed  whether the visit found changed content
+     * @param minimum  shortest recrawl interval
+     * @param maximum  longest recrawl interval
+     * @return the new recrawl interval
+     */
+    public static long adaptRecrawlInterval(long interval, boolean changed, long minimum, long maximum) {
+        long adapted = changed ? interval / 2 : interval + interval / 2;
+        return Math.max(minimum, Math.min(maximum, adapted));
+    }
+
 }
@@ -31,6 +31,7 @@ public class Vacature extends Model implements Locatable {
 
     private static final Map<ProcessData, String> DATABASE_MAP = createDatabaseMap();
     private static Logger logger = LoggerFactory.getLogger(Vacature.class);
+    private boolean changed;
 
     /**
      * Initializes the datamap of the vacature model, which happens at startup.
@@ -68,22 +69,37 @@ public class Vacature extends Model implements Locatable {
      * Generates the hash field of the vacature and sets it.
      */
     public void generateHash() {
+        String hash = hashOf(this.getString(COL_OMSCHRIJVING));
+        if (hash != null) {
+            this.setString(COL_HASH, hash);
+        }
+    }
+
+    /**
+     * Returns the hash of a description, as generateHash sets it
+     *
+     * @param omschrijving the description
+     * @return the hash, or null when MD5 is not available
+     */
+    public static String hashOf(String omschrijving) {
         try {
             java.security.MessageDigest md = java.security.MessageDigest.getInstance("MD5");
-            byte[] array = md.digest(this.getString(COL_OMSCHRIJVING).getBytes());
+            byte[] array = md.digest(omschrijving.getBytes());
             StringBuilder sb = new StringBuilder();
             for (byte anArray : array) {
                 sb.append(Integer.toHexString((anArray & 0xFF) | 0x100).substring(1, 3));
             }
-            this.setString(COL_HASH, sb.toString());
+            return sb.toString();
         } catch (java.security.NoSuchAlgorithmException e) {
             logger.warn("No algorithm!", e);
+            return null;
         }
     }
 
     /**
      * Saves the Vacature safely to the database. Checking for doubles in the database by both url id and hash,
-     * so there's no double data in the database.
+     * so there's no double data in the database. Afterwards hasChanged tells whether it was saved as a new vacature or
+     * a new version.
      */
     public boolean saveSafely() {
         // Search if the url of the vacature already has one in the database
@@ -100,6 +116,7 @@ public class Vacature extends Model implements Locatable {
                 // and update the version of the new one
                 this.setInteger(COL_VERSION, vacature.getInteger(COL_VERSION) + 1);
                 this.save();
+                changed = true;
             }
         } else {
             // See if a vacature with the same hash is already in the database
@@ -109,6 +126,7 @@ public class Vacature extends Model implements Locatable {
                 this.setInteger(COL_VERSION, 1);
                 this.setInteger(COL_ACTIVE, 1);
                 this.save();
+                changed = true;
                 return true;
             }
         }
@@ -116,6 +134,16 @@ public class Vacature extends Model implements Locatable {
         return false;
     }
 
+    /**
+     * Returns whether saveSafely saved the vacature, either as a new vacature or as a new version of the vacature of
+     * its url. Used to learn how often the url changes.
+     *
+     * @return whether the vacature changed
+     */
+    public boolean hasChanged() {
+        return changed;
+    }
+
     /**
      * Removes all the skills associated with the vacature. Mostly needed when a new version is found, or the
      * vacature has been deleted and should not be included in the matcher, which uses this relation
@@ -212,6 +240,16 @@ public class Vacature extends Model implements Locatable {
         }
     }
 
+    /**
+     * Returns whether the vacature is active
+     *
+     * @return true when active
+     */
+    public boolean isActive() {
+        Integer active = this.getInteger(COL_ACTIVE);
+        return active != null && active == 1;
+    }
+
     /**
      * Returns the location of the vacature
      * NOTE: This is the raw location string, not the processed location
@@ -0,0 +1,50 @@
+package org.jobhearted.crawler.statistics;
+
+/**
+ * Metrics of the whole application, like those of the shared http client, the stages of the page pipeline or the
+ * average over all crawlers. The StatisticsTracker passes their latest value on to the observers.
+ */
+public enum Metric {
+    CONNECTION_REUSE("Connection reuse", "%.1f %%"),
+    BYTES_SAVED("Saved by compression", "%.0f bytes"),
+    AVERAGE_CRAWL_DELAY("Average crawl delay", "%.0f ms"),
+    PARSE_QUEUE("Pages waiting for parsing", "%.0f"),
+    PARSE_TIME("Average parse time", "%.1f ms"),
+    EXTRACT_QUEUE("Pages waiting for extraction", "%.0f"),
+    EXTRACT_TIME("Average extraction time", "%.1f ms"),
+    PERSIST_QUEUE("Pages waiting for saving", "%.0f"),
+    PERSIST_TIME("Average save time", "%.1f ms");
+
+    private final String name;
+    private final String format;
+
+    /**
+     * Creates the metric
+     *
+     * @param name   name to show to the user
+     * @param format format of the value
+     */
+    Metric(String name, String format) {
+        this.name = name;
+        this.format = format;
+    }
+
+    /**
+     * Returns the name of the metric to show to the user
+     *
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Formats a value of the metric for the user
+     *
+     * @param value value to format
+     * @return the formatted value, with its unit
+     */
+    public String format(double value) {
+        return String.format(format, value);
+    }
+}
@@ -8,6 +8,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * StatisticsTracker class. This is an Observable object at which StatisticObservers can register, to opt in for
@@ -18,8 +20,11 @@ public class StatisticsTracker {
     private static Logger logger = LoggerFactory.getLogger(CrawlManager.class);
     private static Map<CrawlManager, Map<Flag, Integer>> flagMap = new HashMap<CrawlManager, Map<Flag, Integer>>();
     private static Map<CrawlManager, CrawlmanagerState> stateMap = new HashMap<CrawlManager, CrawlmanagerState>();
-    private static List<StatisticObserver> observersToNotify = new LinkedList<StatisticObserver>();
-    private static List<StatisticObserver> observers = new LinkedList<StatisticObserver>();
+    private static Map<Metric, Double> metricMap = new ConcurrentHashMap<Metric, Double>();
+    private static Map<Integer, Long> crawlDelayMap = new ConcurrentHashMap<Integer, Long>();
+    // Crawlers notify from their own threads, the lists are copied on the rare register or remove instead
+    private static List<StatisticObserver> observersToNotify = new CopyOnWriteArrayList<StatisticObserver>();
+    private static List<StatisticObserver> observers = new CopyOnWriteArrayList<StatisticObserver>();
 
     /**
      * Private constructor for this class. Since it's a static utility class, we don't want it to be initializable.
@@ -51,6 +56,7 @@ public class StatisticsTracker {
     public static void removeCrawlManager(CrawlManager manager) {
         flagMap.remove(manager);
         stateMap.remove(manager);
+        crawlDelayMap.remove(manager.getID());
 
         for (StatisticObserver o : observers) {
             o.crawlerRemoved(manager);
@@ -141,6 +147,77 @@ public class StatisticsTracker {
         }
     }
 
+    /**
+     * Sets the url counts of a crawler in one go, used when a crawler starts and gets its counts from the database.
+     * Observers are notified once per flag instead of once per url.
+     *
+     * @param crawlmanager Crawlmanager the counts belong to
+     * @param counts       Count per flag, flags which are left out are set to 0
+     */
+    public static void setFlagCounts(CrawlManager crawlmanager, Map<Flag, Integer> counts) {
+        Map<Flag, Integer> specificMap = flagMap.get(crawlmanager);
+        for (Flag flag : Flag.values()) {
+            Integer count = counts.get(flag);
+            specificMap.put(flag, count != null ? count : 0);
+            notifyNewFlagCount(crawlmanager, flag, specificMap.get(flag));
+        }
+    }
+
+    /**
+     * Updates an application wide metric and notifies the observers of its new value.
+     *
+     * @param metric metric to update
+     * @param value  new value of the metric
+     */
+    public static void updateMetric(Metric metric, double value) {
+        metricMap.put(metric, value);
+        checkForObserversToNotify();
+        for (StatisticObserver statisticObserver : observers) {
+            statisticObserver.updateMetric(metric, value);
+        }
+    }
+
+    /**
+     * Updates the crawl delay of a crawler, kept on the id of the crawler. Observers get the new delay of the crawler
+     * and the average crawl delay of all crawlers as a metric.
+     *
+     * @param crawlManager CrawlManager of which the crawl delay changed
+     * @param delay        new crawl delay in milliseconds
+     */
+    public static void updateCrawlDelay(CrawlManager crawlManager, long delay) {
+        crawlDelayMap.put(crawlManager.getID(), delay);
+        checkForObserversToNotify();
+        for (StatisticObserver statisticObserver : observers) {
+            statisticObserver.updateCrawlDelay(crawlManager, delay);
+        }
+        updateMetric(Metric.AVERAGE_CRAWL_DELAY, getAverageCrawlDelay());
+    }
+
+    /**
+     * Returns the crawl delay of a crawler
+     *
+     * @param crawlManager CrawlManager to get the crawl delay of
+     * @return crawl delay in milliseconds, or null when the crawler did not report one
+     */
+    public static Long getCrawlDelay(CrawlManager crawlManager) {
+        return crawlDelayMap.get(crawlManager.getID());
+    }
+
+    /**
+     * Returns the average crawl delay of all crawlers
+     *
+     * @return average crawl delay in milliseconds
+     */
+    private static double getAverageCrawlDelay() {
+        long total = 0;
+        int count = 0;
+        for (long delay : crawlDelayMap.values()) {
+            total += delay;
+            count++;
+        }
+        return count == 0 ? 0 : total / (double) count;
+    }
+
     /**
      * Registers a StatisticsObserver with the StatisticsTracker, making it eligible to receive information when any
      * is updated. The Observer is added to a list to receive the data later.
@@ -169,6 +246,15 @@ public class StatisticsTracker {
             for (Map.Entry<CrawlManager, CrawlmanagerState> entry : stateMap.entrySet()) {
                 observer.updateCrawlerState(entry.getKey(), entry.getValue());
             }
+            for (CrawlManager crawlManager : flagMap.keySet()) {
+                Long delay = crawlDelayMap.get(crawlManager.getID());
+                if (delay != null) {
+                    observer.updateCrawlDelay(crawlManager, delay);
+                }
+            }
+            for (Map.Entry<Metric, Double> entry : metricMap.entrySet()) {
+                observer.updateMetric(entry.getKey(), entry.getValue());
+            }
 
             observersToNotify.remove(observer);
         } catch (NullPointerException e) {
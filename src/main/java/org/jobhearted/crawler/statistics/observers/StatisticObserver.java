@@ -3,6 +3,7 @@ package org.jobhearted.crawler.statistics.observers;
 import org.jobhearted.crawler.management.CrawlManager;
 import org.jobhearted.crawler.management.CrawlmanagerState;
 import org.jobhearted.crawler.processing.objects.Flag;
+import org.jobhearted.crawler.statistics.Metric;
 
 /**
  * Created with IntelliJ IDEA for JobHearted.
@@ -14,4 +15,6 @@ public interface StatisticObserver {
     void updateFlag(CrawlManager crawlManager, Flag flag, int newCount);
     void updateCrawlerState(CrawlManager crawlManager, CrawlmanagerState newState);
     void crawlerRemoved(CrawlManager crawlManager);
+    void updateMetric(Metric metric, double value);
+    void updateCrawlDelay(CrawlManager crawlManager, long delay);
 }
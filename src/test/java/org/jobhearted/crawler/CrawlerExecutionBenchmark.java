@@ -0,0 +1,152 @@
+package org.jobhearted.crawler;
+
+import org.jobhearted.crawler.management.VirtualThreads;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Compares the memory use and throughput of running crawlers on a fixed pool with a platform thread per crawler, as
+ * the thread execution mode does, against a virtual thread per crawler. Not a unit test, run it by hand with a Java 21
+ * or later JVM:
+ * <pre>
+ * java -cp target/classes:target/test-classes org.jobhearted.crawler.CrawlerExecutionBenchmark [seconds]
+ * </pre>
+ * Every simulated crawler does what a CrawlManager does on its thread: holding its lock it blocks on a fetch and does a
+ * little processing, then it sleeps for the crawl policy. The run is repeated for 10, 100 and 1000 crawlers. The heap
+ * does not include the stacks of platform threads, the resident memory of the process does.
+ */
+public class CrawlerExecutionBenchmark {
+    private static final int[] CRAWLER_COUNTS = {10, 100, 1000};
+    private static final long FETCH_TIME = 50;
+    private static final long POLICY_TIME = 100;
+    private static final int PROCESSING_ROUNDS = 2000;
+
+    /**
+     * Runs the benchmark
+     *
+     * @param args optional amount of seconds per run, default is 10
+     * @throws InterruptedException when interrupted while waiting for a run
+     */
+    public static void main(String[] args) throws InterruptedException {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 10;
+        System.out.println("mode      crawlers  fetches/s  expected/s  threads  heap MB  rss MB  checksum");
+        for (int crawlers : CRAWLER_COUNTS) {
+            report("platform", crawlers, seconds, Executors.newFixedThreadPool(crawlers));
+            ExecutorService virtual = VirtualThreads.newExecutor();
+            if (virtual != null) {
+                report("virtual", crawlers, seconds, virtual);
+            } else {
+                System.out.println("virtual   " + crawlers + "  not available on this JVM");
+            }
+        }
+    }
+
+    /**
+     * Runs the crawlers on the executor for the given time and prints the measurements
+     */
+    private static void report(String mode, int crawlers, long seconds, ExecutorService executor)
+            throws InterruptedException {
+        System.gc();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+
+        final AtomicLong fetches = new AtomicLong();
+        final AtomicLong checksums = new AtomicLong();
+        final long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(seconds);
+        final CountDownLatch done = new CountDownLatch(crawlers);
+        for (int i = 0; i < crawlers; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    checksums.addAndGet(crawl(end, fetches));
+                    done.countDown();
+                }
+            });
+        }
+
+        // Measure the heap halfway, while all crawlers are alive
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds) / 2);
+        long heap = usedHeap();
+        long rss = residentMemory();
+        done.await();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        double perSecond = fetches.get() / (double) seconds;
+        double expected = crawlers * 1000.0 / (FETCH_TIME + POLICY_TIME);
+        System.out.println(String.format("%-9s %8d  %9.1f  %10.1f  %7d  %7.1f  %6.1f  %x", mode, crawlers, perSecond,
+                expected, threads.getPeakThreadCount(), heap / (1024.0 * 1024.0), rss / (1024.0 * 1024.0),
+                checksums.get()));
+    }
+
+    /**
+     * The loop of one simulated crawler
+     *
+     * @return checksum of the processing, printed so the JIT can not leave the processing out
+     */
+    private static long crawl(long end, AtomicLong fetches) {
+        long checksum = 0;
+        ReentrantLock lock = new ReentrantLock();
+        try {
+            while (System.currentTimeMillis() < end) {
+                // Fetched and processed holding the lock of the crawler, like a step does
+                lock.lock();
+                try {
+                    Thread.sleep(FETCH_TIME);
+                    for (int i = 0; i < PROCESSING_ROUNDS; i++) {
+                        checksum = checksum * 31 + i;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                fetches.incrementAndGet();
+                Thread.sleep(POLICY_TIME);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return checksum;
+    }
+
+    /**
+     * Returns the resident memory of the process, which includes the stacks of platform threads. Only available on
+     * Linux, elsewhere -1.
+     */
+    private static long residentMemory() {
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("VmRSS:")) {
+                        return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // not on Linux
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the used heap after a garbage collection
+     */
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,95 @@
+package org.jobhearted.crawler;
+
+import org.jobhearted.crawler.processing.DocumentProcessor;
+import org.jsoup.nodes.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how the throughput of extracting documents with one shared DocumentProcessor scales with the amount of
+ * threads. Not a unit test, run it by hand:
+ * <pre>
+ * java -cp target/classes:target/test-classes org.jobhearted.crawler.ProcessorScalingBenchmark [seconds]
+ * </pre>
+ * Every thread extracts its own copies of the documents of TestConcurrentProcessing, the run is repeated for one
+ * thread up to a thread per core. As the processor keeps no state of a document and takes no locks, the speedup
+ * should stay close to the amount of threads.
+ */
+public class ProcessorScalingBenchmark {
+
+    /**
+     * Runs the benchmark
+     *
+     * @param args optional amount of seconds per run, default is 5
+     * @throws InterruptedException when interrupted while waiting for a run
+     */
+    public static void main(String[] args) throws InterruptedException {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 5;
+        DocumentProcessor processor = TestConcurrentProcessing.createExtractor();
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        // Warm up, so the first run is not measured in the interpreter
+        run(processor, 1, Math.max(1, seconds / 2));
+        System.out.println("threads  documents/s  speedup");
+        List<Integer> threadCounts = new ArrayList<Integer>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(cores);
+        double single = 0;
+        for (int threads : threadCounts) {
+            double rate = run(processor, threads, seconds);
+            if (threads == 1) {
+                single = rate;
+            }
+            System.out.println(String.format("%7d  %11.0f  %7.2f", threads, rate, rate / single));
+        }
+    }
+
+    /**
+     * Extracts documents on the given amount of threads for the given time
+     *
+     * @return documents extracted per second
+     */
+    private static double run(final DocumentProcessor processor, int threads, long seconds)
+            throws InterruptedException {
+        final AtomicLong extracted = new AtomicLong();
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final long[] end = new long[1];
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    List<Document> documents = TestConcurrentProcessing.parseDocuments();
+                    ready.countDown();
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long count = 0;
+                    while (System.currentTimeMillis() < end[0]) {
+                        for (Document document : documents) {
+                            processor.extract(null, document, true);
+                        }
+                        count += documents.size();
+                    }
+                    extracted.addAndGet(count);
+                    done.countDown();
+                }
+            }).start();
+        }
+        ready.await();
+        long begin = System.currentTimeMillis();
+        end[0] = begin + TimeUnit.SECONDS.toMillis(seconds);
+        start.countDown();
+        done.await();
+        return extracted.get() * 1000.0 / (System.currentTimeMillis() - begin);
+    }
+}
@@ -0,0 +1,133 @@
+package org.jobhearted.crawler;
+
+import org.jobhearted.crawler.processing.DocumentProcessor;
+import org.jobhearted.crawler.processing.ExtractedPage;
+import org.jobhearted.crawler.processing.KeywordMatcher;
+import org.jobhearted.crawler.processing.objects.Education;
+import org.jobhearted.crawler.processing.objects.ProcessData;
+import org.jobhearted.crawler.processing.objects.Skill;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests several threads extracting documents with one shared DocumentProcessor, as the workers of the page pipeline
+ * do for the documents of a crawler
+ */
+public class TestConcurrentProcessing {
+    static final int DOCUMENTS = 200;
+    private static final int ROUNDS = 5;
+
+    /**
+     * Creates a processor which only extracts, with the selectors of a typical crawler and no dictionaries
+     *
+     * @return the processor
+     */
+    static DocumentProcessor createExtractor() {
+        Map<ProcessData, String> settings = new EnumMap<ProcessData, String>(ProcessData.class);
+        settings.put(ProcessData.REQUIREMENTFORVACATURE, "#vacature;h1.title");
+        settings.put(ProcessData.VAC_TITLE, "#vacature h1.title");
+        settings.put(ProcessData.VAC_BEDRIJF, ".company");
+        settings.put(ProcessData.VAC_PLAATS, "span.plaats");
+        settings.put(ProcessData.VAC_DIENSTVERBAND, "NULL");
+        settings.put(ProcessData.VAC_OMSCHRIJVING, "div.omschrijving p");
+        return DocumentProcessor.createExtractor(settings, KeywordMatcher.of(Collections.<String, Skill>emptyMap()),
+                KeywordMatcher.of(Collections.<String, Education>emptyMap()));
+    }
+
+    /**
+     * Creates the html of a document, every third one is a listing page instead of a vacature
+     *
+     * @param i number of the document
+     * @return the html
+     */
+    static String documentHtml(int i) {
+        StringBuilder html = new StringBuilder("<html><body><ul>");
+        for (int link = 0; link < 20; link++) {
+            html.append("<li><a href='/vacature/").append(i * 20 + link).append("'>Vacature ").append(link)
+                    .append("</a></li>");
+        }
+        html.append("</ul>");
+        if (i % 3 != 0) {
+            html.append("<div id='vacature'><h1 class='title'>Developer ").append(i).append("</h1>")
+                    .append("<span class='company'>Bedrijf ").append(i % 7).append("</span>")
+                    .append("<span class='plaats'>Plaats ").append(i % 11).append("</span><div class='omschrijving'>");
+            for (int p = 0; p < 10; p++) {
+                html.append("<p>Alinea ").append(p).append(" van vacature ").append(i).append("</p>");
+            }
+            html.append("</div></div>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    /**
+     * Parses the documents, every thread gets its own copies like every page in the pipeline has its own document
+     *
+     * @return the documents
+     */
+    static List<Document> parseDocuments() {
+        List<Document> documents = new ArrayList<Document>(DOCUMENTS);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            documents.add(Jsoup.parse(documentHtml(i), "http://www.example.com/"));
+        }
+        return documents;
+    }
+
+    @Test
+    public void testSharedProcessorGivesSameResults() throws Exception {
+        final DocumentProcessor processor = createExtractor();
+        final List<ExtractedPage> expected = new ArrayList<ExtractedPage>();
+        for (Document document : parseDocuments()) {
+            expected.add(processor.extract(null, document, true));
+        }
+        assertFalse(expected.get(0).isVacature());
+        assertEquals("Developer 1", expected.get(1).getValues().get(ProcessData.VAC_TITLE));
+        assertEquals("http://www.example.com/vacature/20", expected.get(1).getLinks().get(0));
+
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CyclicBarrier start = new CyclicBarrier(threads);
+        final AtomicInteger mismatches = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * 17;
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    List<Document> documents = parseDocuments();
+                    start.await();
+                    for (int round = 0; round < ROUNDS; round++) {
+                        for (int j = 0; j < DOCUMENTS; j++) {
+                            // Every thread starts somewhere else, so threads work on different documents at once
+                            int i = (j + offset) % DOCUMENTS;
+                            ExtractedPage page = processor.extract(null, documents.get(i), true);
+                            if (!sameAs(expected.get(i), page)) {
+                                mismatches.incrementAndGet();
+                            }
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertEquals(0, mismatches.get());
+    }
+
+    /**
+     * Checks if two extractions of the same document found the same
+     */
+    private static boolean sameAs(ExtractedPage expected, ExtractedPage actual) {
+        return expected.isVacature() == actual.isVacature() && expected.getValues().equals(actual.getValues())
+                && expected.getLinks().equals(actual.getLinks());
+    }
+}
@@ -0,0 +1,37 @@
+package org.jobhearted.crawler;
+
+import org.jobhearted.crawler.processing.FileClassifier;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the prediction of files from the extension of an url
+ */
+public class TestFileClassifier {
+
+    @Test
+    public void testKnownExtensions() {
+        FileClassifier classifier = new FileClassifier();
+        assertTrue(classifier.isLikelyFile("http://www.jobs.nl/files/brochure.PDF"));
+        assertTrue(classifier.isLikelyFile("http://www.jobs.nl/logo.png?v=2#top"));
+        assertFalse(classifier.isLikelyFile("http://www.jobs.nl/vacatures"));
+        assertFalse(classifier.isLikelyFile("http://www.jobs.nl"));
+        assertFalse(classifier.isLikelyFile("http://www.jobs.nl/vacature.html"));
+    }
+
+    @Test
+    public void testLearnedExtensions() {
+        FileClassifier classifier = new FileClassifier();
+        classifier.learn("http://www.jobs.nl/export/1.csv", true);
+        classifier.learn("http://www.jobs.nl/export/2.csv", true);
+        assertFalse(classifier.isLikelyFile("http://www.jobs.nl/export/3.csv"));
+        classifier.learn("http://www.jobs.nl/export/3.csv", true);
+        assertTrue(classifier.isLikelyFile("http://www.jobs.nl/export/4.csv"));
+
+        // One page is enough to stop predicting files for the extension
+        classifier.learn("http://www.jobs.nl/export/index.csv", false);
+        assertFalse(classifier.isLikelyFile("http://www.jobs.nl/export/5.csv"));
+    }
+}
@@ -0,0 +1,67 @@
+package org.jobhearted.crawler;
+
+import org.jobhearted.crawler.processing.KeywordMatcher;
+import org.jobhearted.crawler.processing.NormalizedText;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests finding keywords in a text with the Aho-Corasick keyword matcher
+ */
+public class TestKeywordMatcher {
+    private static final KeywordMatcher<String> SKILLS = KeywordMatcher.of(Arrays.asList("Java", "JavaScript", "C++",
+            ".NET", "C", "Project Management", "SQL"));
+
+    @Test
+    public void testFindsAllKeywordsOnce() {
+        assertEquals(Arrays.asList("JavaScript", "Java", "SQL"),
+                SKILLS.findAll("Kennis van javascript, JAVA en SQL. Ook Java is een pre."));
+    }
+
+    @Test
+    public void testKeywordsAreTakenLiterally() {
+        assertEquals(Arrays.asList("C++", ".NET"), SKILLS.findAll("Ervaring met c++/.net vereist"));
+        assertEquals(Collections.<String>emptyList(), SKILLS.findAll("Ervaring met cxx en anet"));
+    }
+
+    @Test
+    public void testTokenBoundaries() {
+        assertEquals(Collections.<String>emptyList(), SKILLS.findAll("javanese mysql"));
+        assertEquals(Arrays.asList("C"), SKILLS.findAll("Programmeren in C"));
+        assertEquals(Arrays.asList("Java"), SKILLS.findAll("java"));
+    }
+
+    @Test
+    public void testWhitespaceRuns() {
+        assertEquals(Arrays.asList("Project Management"), SKILLS.findAll("Goed in project\n   management."));
+    }
+
+    @Test
+    public void testKeywordWithSeveralValues() {
+        Map<String, Integer> keywords = new LinkedHashMap<String, Integer>();
+        keywords.put("hbo", 1);
+        keywords.put("HBO ", 2);
+        keywords.put("hbo informatica", 3);
+        assertEquals(Arrays.asList(1, 2, 3), KeywordMatcher.of(keywords).findAll("Een HBO Informatica diploma"));
+    }
+
+    @Test
+    public void testSharedNormalizedText() {
+        KeywordMatcher<String> educations = KeywordMatcher.of(Arrays.asList("HBO", "WO"));
+        NormalizedText text = new NormalizedText();
+        text.normalize("  Een\tHBO of WO opleiding,\n kennis van SQL  ");
+        assertEquals("een hbo of wo opleiding, kennis van sql", text.toString());
+        assertEquals(Arrays.asList("SQL"), SKILLS.findAll(text));
+        assertEquals(Arrays.asList("HBO", "WO"), educations.findAll(text));
+
+        // The buffer is reused for the next text
+        assertEquals(Collections.<String>emptyList(), SKILLS.findAll(text.normalize("Geen")));
+        assertEquals("geen", text.toString());
+    }
+}
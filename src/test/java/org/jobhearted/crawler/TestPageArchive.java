@@ -0,0 +1,107 @@
+package org.jobhearted.crawler;
+
+import org.jobhearted.crawler.archive.ArchivedPage;
+import org.jobhearted.crawler.archive.PageArchive;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests storing, reading and scanning pages of the page archive in a temporary directory
+ */
+public class TestPageArchive {
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("archive", "");
+        directory.delete();
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testStoreAndGet() throws IOException {
+        PageArchive archive = PageArchive.open(directory);
+        archive.store("http://www.jobs.nl/vacature/1", "UTF-8", page("Developer").getBytes("UTF-8"), 1000);
+        archive.store("http://www.jobs.nl/vacature/2", null, page("Tester").getBytes("UTF-8"), 2000);
+        archive.close();
+
+        PageArchive reopened = PageArchive.open(directory);
+        ArchivedPage stored = reopened.get("http://www.jobs.nl/vacature/1");
+        assertEquals(2, reopened.size());
+        assertEquals("UTF-8", stored.getCharset());
+        assertEquals(1000, stored.getFetchTime());
+        assertEquals("Developer", stored.parse().select("h1").text());
+        assertNull(reopened.get("http://www.jobs.nl/vacature/3"));
+    }
+
+    @Test
+    public void testScanVisitsLatestVersion() throws IOException {
+        PageArchive archive = PageArchive.open(directory);
+        archive.store("http://www.jobs.nl/vacature/1", "UTF-8", page("Old").getBytes("UTF-8"), 1000);
+        archive.store("http://www.jobs.nl/vacature/2", "UTF-8", page("Tester").getBytes("UTF-8"), 1000);
+        archive.flush();
+        archive.store("http://www.jobs.nl/vacature/1", "UTF-8", page("New").getBytes("UTF-8"), 2000);
+        archive.flush();
+
+        final List<String> titles = new ArrayList<String>();
+        archive.scan(new PageArchive.PageVisitor() {
+            @Override
+            public boolean visit(ArchivedPage page) {
+                try {
+                    titles.add(page.parse().select("h1").text());
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                return true;
+            }
+        });
+        archive.close();
+        assertEquals(2, titles.size());
+        assertEquals("Tester", titles.get(0));
+        assertEquals("New", titles.get(1));
+    }
+
+    @Test
+    public void testPartlyWrittenRecordIsCutOff() throws IOException {
+        PageArchive archive = PageArchive.open(directory);
+        archive.store("http://www.jobs.nl/vacature/1", "UTF-8", page("Developer").getBytes("UTF-8"), 1000);
+        archive.store("http://www.jobs.nl/vacature/2", "UTF-8", page("Tester").getBytes("UTF-8"), 1000);
+        archive.close();
+
+        // Cut the last record in half, as a crash while writing would
+        File segment = directory.listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.setLength(file.length() - 10);
+        file.close();
+
+        PageArchive reopened = PageArchive.open(directory);
+        assertEquals(1, reopened.size());
+        reopened.store("http://www.jobs.nl/vacature/3", "UTF-8", page("Manager").getBytes("UTF-8"), 3000);
+        reopened.close();
+        assertEquals("Manager", reopened.get("http://www.jobs.nl/vacature/3").parse().select("h1").text());
+    }
+
+    private static String page(String title) {
+        return "<html><head><title>" + title + "</title></head><body><h1>" + title + "</h1></body></html>";
+    }
+}
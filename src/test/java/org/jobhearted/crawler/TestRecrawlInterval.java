@@ -0,0 +1,49 @@
+package org.jobhearted.crawler;
+
+import org.jobhearted.crawler.processing.objects.Url;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests how the recrawl interval of an url adapts to its visits: halved on a change, half as long again without one,
+ * always within the minimum and maximum.
+ */
+public class TestRecrawlInterval {
+    private static final long HOUR = 3600000;
+    private static final long MINIMUM = HOUR;
+    private static final long MAXIMUM = 30 * 24 * HOUR;
+
+    @Test
+    public void testChangedHalves() {
+        assertEquals(12 * HOUR, Url.adaptRecrawlInterval(24 * HOUR, true, MINIMUM, MAXIMUM));
+    }
+
+    @Test
+    public void testUnchangedGrows() {
+        assertEquals(36 * HOUR, Url.adaptRecrawlInterval(24 * HOUR, false, MINIMUM, MAXIMUM));
+    }
+
+    @Test
+    public void testClampedToMinimum() {
+        assertEquals(MINIMUM, Url.adaptRecrawlInterval(MINIMUM, true, MINIMUM, MAXIMUM));
+        assertEquals(MINIMUM, Url.adaptRecrawlInterval(90 * 60000, true, MINIMUM, MAXIMUM));
+    }
+
+    @Test
+    public void testClampedToMaximum() {
+        assertEquals(MAXIMUM, Url.adaptRecrawlInterval(MAXIMUM, false, MINIMUM, MAXIMUM));
+        assertEquals(MAXIMUM, Url.adaptRecrawlInterval(25 * 24 * HOUR, false, MINIMUM, MAXIMUM));
+    }
+
+    @Test
+    public void testSettlesAtMaximumWithoutChanges() {
+        long interval = 24 * HOUR;
+        for (int visit = 0; visit < 20; visit++) {
+            interval = Url.adaptRecrawlInterval(interval, false, MINIMUM, MAXIMUM);
+        }
+        assertEquals(MAXIMUM, interval);
+        // One change brings it back down
+        assertEquals(MAXIMUM / 2, Url.adaptRecrawlInterval(interval, true, MINIMUM, MAXIMUM));
+    }
+}
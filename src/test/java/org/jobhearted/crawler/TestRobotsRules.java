@@ -0,0 +1,59 @@
+package org.jobhearted.crawler;
+
+import org.jobhearted.crawler.processing.RobotsRules;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the parsing and matching of robots.txt rules, which does not need a network connection.
+ */
+public class TestRobotsRules {
+    private static final String ROBOTS = "# robots for jobs.nl\n"
+            + "User-agent: *\n"
+            + "Disallow: /admin\n"
+            + "Disallow: /*.pdf$\n"
+            + "Crawl-delay: 5\n"
+            + "\n"
+            + "User-agent: Googlebot\n"
+            + "Disallow: /\n"
+            + "\n"
+            + "Sitemap: http://www.jobs.nl/sitemap.xml\n";
+
+    @Test
+    public void testAnyAgentGroup() {
+        RobotsRules rules = RobotsRules.parse(ROBOTS, RobotsRules.USER_AGENT);
+        assertTrue(rules.allows("http://www.jobs.nl/vacatures"));
+        assertFalse(rules.allows("http://www.jobs.nl/admin/login"));
+        assertEquals(5000, rules.getCrawlDelay());
+        assertEquals(Arrays.asList("http://www.jobs.nl/sitemap.xml"), rules.getSitemaps());
+    }
+
+    @Test
+    public void testWildcardAndAnchor() {
+        RobotsRules rules = RobotsRules.parse(ROBOTS, RobotsRules.USER_AGENT);
+        assertFalse(rules.allows("http://www.jobs.nl/files/brochure.pdf"));
+        assertTrue(rules.allows("http://www.jobs.nl/files/brochure.pdf?download=1"));
+        assertTrue(rules.allows("http://www.jobs.nl"));
+    }
+
+    @Test
+    public void testSpecificGroupWins() {
+        String robots = "User-agent: *\nDisallow: /\n\nUser-agent: crawlhearted\nDisallow: /zoek\nAllow: /zoek/java\n";
+        RobotsRules rules = RobotsRules.parse(robots, RobotsRules.USER_AGENT);
+        assertTrue(rules.allows("http://www.jobs.nl/vacatures"));
+        assertFalse(rules.allows("http://www.jobs.nl/zoek?q=php"));
+        assertTrue(rules.allows("http://www.jobs.nl/zoek/java"));
+        assertEquals(RobotsRules.NO_CRAWL_DELAY, rules.getCrawlDelay());
+    }
+
+    @Test
+    public void testEmptyDisallowAllowsAll() {
+        RobotsRules rules = RobotsRules.parse("User-agent: *\nDisallow:\n", RobotsRules.USER_AGENT);
+        assertTrue(rules.allows("http://www.jobs.nl/admin"));
+    }
+}
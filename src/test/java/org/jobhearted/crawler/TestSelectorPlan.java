@@ -0,0 +1,77 @@
+package org.jobhearted.crawler;
+
+import org.jobhearted.crawler.processing.SelectorPlan;
+import org.jobhearted.crawler.processing.objects.ProcessData;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests evaluating the compiled ProcessSetting selectors of a crawler on documents
+ */
+public class TestSelectorPlan {
+    private static final String VACANCY = "<html><body><div id='vacature'><h1 class='title'>Java Developer</h1>"
+            + "<span class='company'>JobHearted</span><span class='plaats'>Utrecht</span><span class='plaats'>Zeist</span>"
+            + "<div class='omschrijving'><p>Kennis van Java</p><p>en SQL</p></div></div></body></html>";
+    private static final String LISTING = "<html><body><ul><li><a href='/1'>Java Developer</a></li>"
+            + "<li><a href='/2'>Tester</a></li></ul><h1 class='title'>Vacatures</h1></body></html>";
+
+    private static Map<ProcessData, String> settings(String requirements) {
+        Map<ProcessData, String> settings = new EnumMap<ProcessData, String>(ProcessData.class);
+        settings.put(ProcessData.REQUIREMENTFORVACATURE, requirements);
+        settings.put(ProcessData.VAC_TITLE, "#vacature h1.title");
+        settings.put(ProcessData.VAC_BEDRIJF, ".company");
+        settings.put(ProcessData.VAC_PLAATS, "span.plaats");
+        settings.put(ProcessData.VAC_DIENSTVERBAND, "NULL");
+        settings.put(ProcessData.VAC_OMSCHRIJVING, "div.omschrijving p");
+        return settings;
+    }
+
+    @Test
+    public void testExtractsFieldsLikeSelect() {
+        Map<ProcessData, String> settings = settings("#vacature;h1.title");
+        Document document = Jsoup.parse(VACANCY);
+        Map<ProcessData, String> values = SelectorPlan.compile(settings).evaluate(document);
+
+        assertNotNull(values);
+        assertEquals(5, values.size());
+        assertFalse(values.containsKey(ProcessData.REQUIREMENTFORVACATURE));
+        assertEquals("", values.get(ProcessData.VAC_DIENSTVERBAND));
+        assertEquals("Utrecht Zeist", values.get(ProcessData.VAC_PLAATS));
+        for (ProcessData field : new ProcessData[]{ProcessData.VAC_TITLE, ProcessData.VAC_BEDRIJF,
+                ProcessData.VAC_PLAATS, ProcessData.VAC_OMSCHRIJVING}) {
+            assertEquals(document.select(settings.get(field)).text(), values.get(field));
+        }
+    }
+
+    @Test
+    public void testRejectsDocumentMissingARequirement() {
+        SelectorPlan plan = SelectorPlan.compile(settings("#vacature;h1.title"));
+        assertNull(plan.evaluate(Jsoup.parse(LISTING)));
+        assertTrue(plan.meetsRequirements(Jsoup.parse(VACANCY)));
+    }
+
+    @Test
+    public void testRequirementNeedsText() {
+        SelectorPlan plan = SelectorPlan.compile(settings("h1.title; span.empty"));
+        assertFalse(plan.meetsRequirements(Jsoup.parse(VACANCY + "<span class='empty'> </span>")));
+        assertTrue(plan.meetsRequirements(Jsoup.parse(VACANCY + "<span class='empty'></span><span class='empty'>x</span>")));
+    }
+
+    @Test
+    public void testPlanWithoutValidRequirementsAcceptsNothing() {
+        assertNull(SelectorPlan.compile(settings("")).evaluate(Jsoup.parse(VACANCY)));
+        assertNull(SelectorPlan.compile(settings("h1.title;div[")).evaluate(Jsoup.parse(VACANCY)));
+
+        Map<ProcessData, String> settings = settings("h1.title");
+        settings.put(ProcessData.VAC_BEDRIJF, "span[");
+        Map<ProcessData, String> values = SelectorPlan.compile(settings).evaluate(Jsoup.parse(VACANCY));
+        assertEquals("", values.get(ProcessData.VAC_BEDRIJF));
+        assertEquals("Java Developer", values.get(ProcessData.VAC_TITLE));
+    }
+}
@@ -0,0 +1,89 @@
+package org.jobhearted.crawler;
+
+import org.jobhearted.crawler.processing.SitemapParser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the stream parsing of sitemaps, which does not need a network connection.
+ */
+public class TestSitemapParser {
+    private static final String SITEMAP = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+            + "<url><loc> http://www.jobs.nl/vacature/1 </loc><lastmod>2014-01-31</lastmod></url>"
+            + "<url><loc>http://www.jobs.nl/vacature/2</loc><changefreq>daily</changefreq></url>"
+            + "</urlset>";
+    private static final String INDEX = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+            + "<sitemap><loc>http://www.jobs.nl/sitemap-1.xml.gz</loc>"
+            + "<lastmod>2014-01-31T10:15:00+01:00</lastmod></sitemap>"
+            + "</sitemapindex>";
+
+    @Test
+    public void testSitemap() throws IOException {
+        Collector collector = parse(SITEMAP.getBytes("UTF-8"));
+        assertEquals(2, collector.urls.size());
+        assertEquals("http://www.jobs.nl/vacature/1", collector.urls.get(0));
+        assertEquals(SitemapParser.parseLastModified("2014-01-31"), (long) collector.lastModified.get(0));
+        assertEquals(SitemapParser.NO_LAST_MODIFIED, (long) collector.lastModified.get(1));
+        assertEquals(0, collector.sitemaps.size());
+    }
+
+    @Test
+    public void testGzippedIndex() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(INDEX.getBytes("UTF-8"));
+        gzip.close();
+
+        Collector collector = parse(bytes.toByteArray());
+        assertEquals(0, collector.urls.size());
+        assertEquals(1, collector.sitemaps.size());
+        assertEquals("http://www.jobs.nl/sitemap-1.xml.gz", collector.sitemaps.get(0));
+        assertEquals(1391159700000L, (long) collector.lastModified.get(0));
+    }
+
+    @Test
+    public void testLastModified() {
+        assertEquals(1391126400000L, SitemapParser.parseLastModified("2014-01-31"));
+        assertEquals(1391163300000L, SitemapParser.parseLastModified("2014-01-31T10:15:00Z"));
+        assertEquals(1391163300500L, SitemapParser.parseLastModified("2014-01-31T10:15:00.500Z"));
+        assertEquals(1391159700000L, SitemapParser.parseLastModified("2014-01-31T10:15+01:00"));
+        assertEquals(SitemapParser.NO_LAST_MODIFIED, SitemapParser.parseLastModified("yesterday"));
+    }
+
+    private static Collector parse(byte[] bytes) throws IOException {
+        Collector collector = new Collector();
+        SitemapParser.parse(new ByteArrayInputStream(bytes), collector);
+        return collector;
+    }
+
+    /**
+     * Listener keeping everything it hears
+     */
+    private static class Collector implements SitemapParser.Listener {
+        private final List<String> urls = new ArrayList<String>();
+        private final List<String> sitemaps = new ArrayList<String>();
+        private final List<Long> lastModified = new ArrayList<Long>();
+
+        @Override
+        public void url(String location, long lastModified) {
+            urls.add(location);
+            this.lastModified.add(lastModified);
+        }
+
+        @Override
+        public void sitemap(String location, long lastModified) {
+            sitemaps.add(location);
+            this.lastModified.add(lastModified);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.jobhearted.crawler;
+
+import org.jobhearted.crawler.processing.UrlCanonicalizer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the canonical spelling of urls, which does not need a database connection.
+ */
+public class TestUrlCanonicalizer {
+    UrlCanonicalizer canonicalizer;
+
+    @Before
+    public void prepare() {
+        canonicalizer = new UrlCanonicalizer(Arrays.asList("ref", "filter_*"));
+    }
+
+    @Test
+    public void testSchemeHostAndPort() {
+        assertEquals("http://www.jobs.nl/vacatures", canonicalizer.canonicalize("HTTP://WWW.Jobs.NL:80/vacatures"));
+        assertEquals("https://www.jobs.nl/", canonicalizer.canonicalize("https://www.jobs.nl:443"));
+        assertEquals("http://www.jobs.nl:8080/", canonicalizer.canonicalize("http://www.jobs.nl:8080/"));
+    }
+
+    @Test
+    public void testPath() {
+        assertEquals("http://www.jobs.nl/vacatures", canonicalizer.canonicalize("http://www.jobs.nl/vacatures/"));
+        assertEquals("http://www.jobs.nl/vacatures", canonicalizer.canonicalize("http://www.jobs.nl/vacatures#top"));
+        assertEquals("http://www.jobs.nl/a", canonicalizer.canonicalize("http://www.jobs.nl/a;jsessionid=12AB"));
+        assertEquals("http://www.jobs.nl/a%2Fb", canonicalizer.canonicalize("http://www.jobs.nl/a%2fb"));
+    }
+
+    @Test
+    public void testQuery() {
+        assertEquals("http://www.jobs.nl/zoek?a=1&b=2",
+                canonicalizer.canonicalize("http://www.jobs.nl/zoek?b=2&utm_source=mail&a=1"));
+        assertEquals("http://www.jobs.nl/zoek",
+                canonicalizer.canonicalize("http://www.jobs.nl/zoek?ref=home&filter_city=x&"));
+        assertEquals("http://www.jobs.nl/zoek?q=java",
+                canonicalizer.canonicalize("http://www.jobs.nl/zoek?q=java&PHPSESSID=abc"));
+    }
+
+    @Test
+    public void testNotCrawlable() {
+        assertNull(canonicalizer.canonicalize("mailto:info@jobs.nl"));
+        assertNull(canonicalizer.canonicalize("javascript:void(0)"));
+        assertNull(canonicalizer.canonicalize(""));
+    }
+}
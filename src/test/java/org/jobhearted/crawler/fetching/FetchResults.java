@@ -0,0 +1,32 @@
+package org.jobhearted.crawler.fetching;
+
+import java.io.IOException;
+
+/**
+ * Creates the results of fetches the way the fetch engines do, for the tests of the classes that act on them
+ */
+public class FetchResults {
+
+    /**
+     * Creates the result of a fetch the server answered
+     *
+     * @param status       http status of the response
+     * @param responseTime time the server took to answer in milliseconds
+     * @param retryAfter   time the Retry-After header asks to wait, FetchResult.NO_RETRY_AFTER when there is none
+     * @return a document for a status below 400, a failure otherwise
+     */
+    public static FetchResult answered(int status, long responseTime, long retryAfter) {
+        FetchResult result = status < 400 ? FetchResult.unparsed(null, new byte[0], null, null, null, null)
+                : FetchResult.failed(null, new IOException("HTTP error fetching URL, status " + status));
+        return result.withResponse(status, responseTime, retryAfter);
+    }
+
+    /**
+     * Creates the result of a fetch the server did not answer, like a timeout
+     *
+     * @return a failure without a status
+     */
+    public static FetchResult unanswered() {
+        return FetchResult.failed(null, new IOException("Read timed out"));
+    }
+}
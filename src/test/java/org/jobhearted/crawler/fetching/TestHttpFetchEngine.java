@@ -0,0 +1,62 @@
+package org.jobhearted.crawler.fetching;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the HttpFetchEngine always completes a fetch, also when the request fails on a RuntimeException
+ */
+public class TestHttpFetchEngine {
+    private ExecutorService executor;
+
+    @Before
+    public void startExecutor() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testUrlThatIsNotHttpFails() throws InterruptedException {
+        // The connection of an ftp url is no HttpURLConnection
+        FetchResult result = fetch("ftp://127.0.0.1/vacatures.txt");
+        assertEquals(FetchResult.Outcome.FAILED, result.getOutcome());
+        assertTrue(result.getError().getCause() instanceof ClassCastException);
+    }
+
+    @Test
+    public void testMalformedUrlFails() throws InterruptedException {
+        assertEquals(FetchResult.Outcome.FAILED, fetch("no url at all").getOutcome());
+    }
+
+    /**
+     * Fetches the address and waits for the callback
+     *
+     * @return the result handed to the callback
+     */
+    private FetchResult fetch(String address) throws InterruptedException {
+        final AtomicReference<FetchResult> completed = new AtomicReference<FetchResult>();
+        final CountDownLatch done = new CountDownLatch(1);
+        new HttpFetchEngine(1, executor).fetch(null, address, null, new FetchCallback() {
+            @Override
+            public void completed(FetchResult result) {
+                completed.set(result);
+                done.countDown();
+            }
+        });
+        assertTrue("The callback was not called", done.await(10, TimeUnit.SECONDS));
+        return completed.get();
+    }
+}
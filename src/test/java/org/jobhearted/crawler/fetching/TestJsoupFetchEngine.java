@@ -0,0 +1,109 @@
+package org.jobhearted.crawler.fetching;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Tests how the JsoupFetchEngine turns the responses of a local server into results: a 304 is not modified, an error
+ * status fails with its Retry-After and anything but text or xml is a file.
+ */
+public class TestJsoupFetchEngine {
+    private static final String ETAG = "\"v1\"";
+    private HttpServer server;
+    private String address;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/vacature", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    respond(exchange, 304, null, null);
+                } else {
+                    exchange.getResponseHeaders().set("ETag", ETAG);
+                    respond(exchange, 200, "text/html; charset=UTF-8", "<html><body>Java developer</body></html>");
+                }
+            }
+        });
+        server.createContext("/busy", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("Retry-After", "120");
+                respond(exchange, 503, "text/html", "busy");
+            }
+        });
+        server.createContext("/brochure.pdf", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, "application/pdf", "%PDF-1.4");
+            }
+        });
+        server.start();
+        address = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testNotModified() {
+        FetchResult result = new JsoupFetchEngine().fetch(null, address + "/vacature",
+                new ConditionalRequest(ETAG, null));
+        assertEquals(FetchResult.Outcome.NOT_MODIFIED, result.getOutcome());
+        assertEquals(304, result.getStatus());
+    }
+
+    @Test
+    public void testDocument() throws IOException {
+        FetchResult result = new JsoupFetchEngine().fetch(null, address + "/vacature", null);
+        assertEquals(FetchResult.Outcome.DOCUMENT, result.getOutcome());
+        assertEquals(200, result.getStatus());
+        assertEquals(ETAG, result.getEtag());
+        assertEquals("UTF-8", result.getCharset());
+        assertEquals("Java developer", result.parse().body().text());
+    }
+
+    @Test
+    public void testErrorStatus() {
+        FetchResult result = new JsoupFetchEngine().fetch(null, address + "/busy", null);
+        assertEquals(FetchResult.Outcome.FAILED, result.getOutcome());
+        assertEquals(503, result.getStatus());
+        assertNotNull(result.getError());
+        assertEquals(120000, result.getRetryAfter());
+    }
+
+    @Test
+    public void testFile() {
+        FetchResult result = new JsoupFetchEngine().fetch(null, address + "/brochure.pdf", null);
+        assertEquals(FetchResult.Outcome.FILE, result.getOutcome());
+    }
+
+    /**
+     * Sends the response and closes the exchange
+     */
+    private static void respond(HttpExchange exchange, int status, String contentType, String body)
+            throws IOException {
+        if (contentType != null) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+        }
+        byte[] bytes = body != null ? body.getBytes("UTF-8") : new byte[0];
+        exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+}
@@ -0,0 +1,127 @@
+package org.jobhearted.crawler.management;
+
+import org.jobhearted.crawler.fetching.FetchResult;
+import org.jobhearted.crawler.fetching.FetchResults;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the states of the CircuitBreaker: it opens when most fetches fail because of the host, lets a single probe
+ * through once the open time has passed and closes or opens for twice as long depending on the probe.
+ */
+public class TestCircuitBreaker {
+    private static final long OPEN_TIME = 60000;
+
+    @Test
+    public void testOpensOnHostFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(OPEN_TIME);
+        for (int i = 1; i < CircuitBreaker.MIN_FETCHES; i++) {
+            assertFalse(breaker.record(FetchResults.unanswered(), 0));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowsRequest(0));
+
+        assertTrue(breaker.record(serverError(), 1000));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1000 + OPEN_TIME, breaker.getOpenUntil());
+        assertFalse(breaker.allowsRequest(1000 + OPEN_TIME - 1));
+    }
+
+    @Test
+    public void testUrlFailuresDoNotOpen() {
+        CircuitBreaker breaker = new CircuitBreaker(OPEN_TIME);
+        for (int i = 0; i < CircuitBreaker.WINDOW_SIZE; i++) {
+            breaker.record(FetchResults.answered(404, 100, FetchResult.NO_RETRY_AFTER), 0);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOfWindowDoesNotOpen() {
+        CircuitBreaker breaker = new CircuitBreaker(OPEN_TIME);
+        for (int i = 0; i < CircuitBreaker.WINDOW_SIZE; i++) {
+            breaker.record(i % 2 == 0 ? success() : serverError(), 0);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        // One more failure pushes out a success, now more than half failed
+        assertTrue(breaker.record(serverError(), 0));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testProbeSuccessCloses() {
+        CircuitBreaker breaker = openBreaker(0);
+        assertTrue(breaker.allowsRequest(OPEN_TIME));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.requestStarted();
+        // Only the probe goes through
+        assertFalse(breaker.allowsRequest(OPEN_TIME));
+
+        assertTrue(breaker.record(success(), OPEN_TIME + 100));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowsRequest(OPEN_TIME + 100));
+        // The window was cleared, a single failure does not open it again
+        assertFalse(breaker.record(serverError(), OPEN_TIME + 200));
+    }
+
+    @Test
+    public void testProbeFailureDoublesOpenTime() {
+        CircuitBreaker breaker = openBreaker(0);
+        assertTrue(breaker.allowsRequest(OPEN_TIME));
+        breaker.requestStarted();
+        assertTrue(breaker.record(serverError(), OPEN_TIME));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(OPEN_TIME + 2 * OPEN_TIME, breaker.getOpenUntil());
+
+        long now = breaker.getOpenUntil();
+        assertTrue(breaker.allowsRequest(now));
+        breaker.requestStarted();
+        breaker.record(FetchResults.unanswered(), now);
+        assertEquals(now + 4 * OPEN_TIME, breaker.getOpenUntil());
+    }
+
+    @Test
+    public void testOpenTimeCapped() {
+        CircuitBreaker breaker = openBreaker(0);
+        for (int i = 0; i < 10; i++) {
+            long now = breaker.getOpenUntil();
+            assertTrue(breaker.allowsRequest(now));
+            breaker.requestStarted();
+            breaker.record(serverError(), now);
+        }
+        long now = breaker.getOpenUntil();
+        assertTrue(breaker.allowsRequest(now));
+        breaker.requestStarted();
+        breaker.record(serverError(), now);
+        assertEquals(now + CircuitBreaker.MAX_OPEN_TIME, breaker.getOpenUntil());
+    }
+
+    /**
+     * Creates a breaker which opened at the given time
+     */
+    private static CircuitBreaker openBreaker(long now) {
+        CircuitBreaker breaker = new CircuitBreaker(OPEN_TIME);
+        for (int i = 0; i < CircuitBreaker.MIN_FETCHES; i++) {
+            breaker.record(serverError(), now);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+
+    /**
+     * Creates the result of a fetch the server answered with an error
+     */
+    private static FetchResult serverError() {
+        return FetchResults.answered(500, 100, FetchResult.NO_RETRY_AFTER);
+    }
+
+    /**
+     * Creates the result of a successful fetch
+     */
+    private static FetchResult success() {
+        return FetchResults.answered(200, 100, FetchResult.NO_RETRY_AFTER);
+    }
+}
@@ -0,0 +1,84 @@
+package org.jobhearted.crawler.management;
+
+import org.jobhearted.crawler.fetching.FetchResult;
+import org.jobhearted.crawler.fetching.FetchResults;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests how the CrawlDelay steps down on fast responses, doubles on slow or overloaded ones and stays between its floor
+ * and ceiling, except for what the site asks for itself.
+ */
+public class TestCrawlDelay {
+    private static final long FLOOR = 500;
+    private static final long CEILING = 10000;
+
+    @Test
+    public void testFastResponseStepsDown() {
+        CrawlDelay delay = new CrawlDelay(2000, FLOOR, CEILING);
+        delay.record(FetchResults.answered(200, 100, FetchResult.NO_RETRY_AFTER), 0);
+        assertEquals(2000 - CrawlDelay.DECREASE_STEP, delay.getDelay());
+        delay.record(FetchResults.answered(304, 100, FetchResult.NO_RETRY_AFTER), 0);
+        assertEquals(2000 - 2 * CrawlDelay.DECREASE_STEP, delay.getDelay());
+    }
+
+    @Test
+    public void testOverloadDoubles() {
+        CrawlDelay delay = new CrawlDelay(2000, FLOOR, CEILING);
+        delay.record(FetchResults.answered(CrawlDelay.TOO_MANY_REQUESTS, 100, FetchResult.NO_RETRY_AFTER), 0);
+        assertEquals(4000, delay.getDelay());
+        delay.record(FetchResults.answered(CrawlDelay.SERVICE_UNAVAILABLE, 100, FetchResult.NO_RETRY_AFTER), 0);
+        assertEquals(8000, delay.getDelay());
+        CrawlDelay slow = new CrawlDelay(2000, FLOOR, CEILING);
+        slow.record(FetchResults.answered(200, CrawlDelay.SLOW_RESPONSE_TIME + 1, FetchResult.NO_RETRY_AFTER), 0);
+        assertEquals(4000, slow.getDelay());
+    }
+
+    @Test
+    public void testOtherResultsKeepDelay() {
+        CrawlDelay delay = new CrawlDelay(2000, FLOOR, CEILING);
+        delay.record(FetchResults.answered(404, 100, FetchResult.NO_RETRY_AFTER), 0);
+        assertEquals(2000, delay.getDelay());
+        delay.record(FetchResults.unanswered(), 0);
+        assertEquals(2000, delay.getDelay());
+    }
+
+    @Test
+    public void testClampedToFloorAndCeiling() {
+        CrawlDelay delay = new CrawlDelay(2000, FLOOR, CEILING);
+        for (int i = 0; i < 10; i++) {
+            delay.record(FetchResults.answered(200, 100, FetchResult.NO_RETRY_AFTER), 0);
+        }
+        assertEquals(FLOOR, delay.getDelay());
+        for (int i = 0; i < 10; i++) {
+            delay.record(FetchResults.answered(CrawlDelay.SERVICE_UNAVAILABLE, 100, FetchResult.NO_RETRY_AFTER), 0);
+        }
+        assertEquals(CEILING, delay.getDelay());
+
+        assertEquals(CEILING, new CrawlDelay(60000, FLOOR, CEILING).getDelay());
+        // A ceiling below the floor is raised to it
+        assertEquals(FLOOR, new CrawlDelay(2000, FLOOR, 100).getDelay());
+    }
+
+    @Test
+    public void testRetryAfterBeyondCeiling() {
+        CrawlDelay delay = new CrawlDelay(2000, FLOOR, CEILING);
+        delay.record(FetchResults.answered(CrawlDelay.SERVICE_UNAVAILABLE, 100, 60000), 1000);
+        assertEquals(4000, delay.getDelay());
+        assertEquals(61000, delay.getResumeTime());
+        assertEquals(61000, delay.nextCrawlTime(1000));
+        // Once it has passed the delay counts again
+        assertEquals(70000 + 4000, delay.nextCrawlTime(70000));
+    }
+
+    @Test
+    public void testSiteDelayBeyondCeiling() {
+        CrawlDelay delay = new CrawlDelay(2000, FLOOR, CEILING);
+        delay.setSiteDelay(20000);
+        assertEquals(20000, delay.getDelay());
+        assertEquals(20000, delay.nextCrawlTime(0));
+        delay.setSiteDelay(-1);
+        assertEquals(2000, delay.getDelay());
+    }
+}
@@ -0,0 +1,196 @@
+package org.jobhearted.crawler.management;
+
+import org.jobhearted.crawler.database.Database;
+import org.jobhearted.crawler.processing.objects.Flag;
+import org.jobhearted.crawler.processing.objects.Url;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests a FlagQueue which spills to a FrontierSpillFile in a temporary file. The Url model needs the database
+ * connection for its metadata, no rows are read or written.
+ */
+public class TestFlagQueue {
+    private static final int MEMORY_LIMIT = 2;
+    private CrawlManager crawlManager;
+    private File file;
+    private FlagQueue queue;
+
+    @Before
+    public void createQueue() throws IOException {
+        Database.loadSettings();
+        Database.openDatabaseConnection();
+        crawlManager = new CrawlManager();
+        crawlManager.setInteger("id", 1);
+        file = File.createTempFile("frontier", ".log");
+        queue = new FlagQueue(Flag.FOUND, MEMORY_LIMIT, new FrontierSpillFile(file));
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void testSpillAndDrainInOrder() {
+        Url first = url(1);
+        Url second = url(2);
+        assertTrue(queue.offer(first));
+        assertTrue(queue.offer(second));
+        assertFalse(queue.offer(url(3)));
+        assertFalse(queue.offer(url(4)));
+        assertFalse(queue.offer(url(5)));
+        assertEquals(5, queue.size());
+
+        assertSame(first, queue.peek());
+        queue.remove(first);
+        queue.remove(second);
+        assertEquals(3, queue.size());
+
+        List<Url> read = queue.refill(crawlManager);
+        assertEquals(2, read.size());
+        assertEquals(address(3), read.get(0).getUrl());
+        assertEquals(address(4), read.get(1).getUrl());
+        assertEquals(Flag.FOUND, read.get(0).getFlag());
+        assertEquals(Long.valueOf(3), read.get(0).getLong(Url.COL_ID));
+        for (Url url : read) {
+            queue.keep(url);
+        }
+        assertEquals(3, queue.size());
+
+        // Until the spilled urls have been read back, new urls go to the tail on disk
+        assertFalse(queue.offer(url(6)));
+        queue.remove(read.get(0));
+        queue.remove(read.get(1));
+        read = queue.refill(crawlManager);
+        assertEquals(2, read.size());
+        assertEquals(address(5), read.get(0).getUrl());
+        assertEquals(address(6), read.get(1).getUrl());
+    }
+
+    @Test
+    public void testRefillWhileHeadIsExcluded() {
+        Url first = url(1);
+        Url second = url(2);
+        queue.offer(first);
+        queue.offer(second);
+        queue.offer(url(3));
+        assertNull(queue.peek(Arrays.asList(first, second)));
+
+        // The urls in memory are being fetched, the spilled url is read back behind them
+        List<Url> read = queue.refill(crawlManager);
+        assertEquals(1, read.size());
+        queue.keep(read.get(0));
+        assertEquals(address(3), queue.peek(Arrays.asList(first, second)).getUrl());
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void testStaleRecords() {
+        queue.offer(url(1));
+        queue.offer(url(2));
+        queue.offer(url(3));
+        queue.offer(url(4));
+
+        // url 3 is taken back into memory, its record on disk no longer counts
+        queue.markStale();
+        queue.keep(url(3));
+        assertEquals(4, queue.size());
+
+        queue.remove(queue.peek());
+        queue.remove(queue.peek());
+        queue.remove(queue.peek());
+        assertNull(queue.peek());
+        assertEquals(1, queue.size());
+
+        // The stale record is still read back, the caller skips it
+        List<Url> read = queue.refill(crawlManager);
+        assertEquals(2, read.size());
+        queue.dropStale();
+        queue.keep(read.get(1));
+        assertEquals(1, queue.size());
+        assertEquals(address(4), queue.peek().getUrl());
+    }
+
+    @Test
+    public void testTruncatedWhenDrained() {
+        queue.offer(url(1));
+        queue.offer(url(2));
+        queue.offer(url(3));
+        queue.remove(queue.peek());
+        queue.remove(queue.peek());
+        assertEquals(1, queue.size());
+
+        List<Url> read = queue.refill(crawlManager);
+        assertEquals(1, read.size());
+        assertEquals(0, file.length());
+        queue.remove(read.get(0));
+        assertEquals(0, queue.size());
+
+        // After the truncation the file is written from the start again
+        queue.offer(url(4));
+        queue.offer(url(5));
+        queue.offer(url(6));
+        queue.remove(queue.peek());
+        queue.remove(queue.peek());
+        read = queue.refill(crawlManager);
+        assertEquals(1, read.size());
+        assertEquals(address(6), read.get(0).getUrl());
+    }
+
+    @Test
+    public void testParkedUrlsAreSkipped() {
+        Url first = url(1);
+        Url second = url(2);
+        queue.offer(first);
+        queue.offer(second);
+
+        assertTrue(queue.park(first));
+        assertFalse(queue.park(first));
+        assertSame(second, queue.peek());
+        assertEquals(2, queue.size());
+        // Parked urls count for the memory limit
+        assertFalse(queue.offer(url(3)));
+
+        // Unparked, the url goes to the tail of the in-memory part
+        assertTrue(queue.unpark(first));
+        assertFalse(queue.unpark(first));
+        queue.remove(second);
+        assertSame(first, queue.peek());
+
+        queue.park(first);
+        assertTrue(queue.remove(first));
+        assertFalse(queue.unpark(first));
+        assertNull(queue.peek());
+    }
+
+    /**
+     * Creates an url with the given id
+     */
+    private static Url url(int id) {
+        Url url = new Url();
+        url.setLong(Url.COL_ID, (long) id);
+        url.setString(Url.COL_URL, address(id));
+        url.setString(Url.COL_FLAG, Flag.FOUND.toString());
+        return url;
+    }
+
+    /**
+     * Returns the url string of the url with the given id
+     */
+    private static String address(int id) {
+        return "http://www.jobs.nl/vacature/" + id;
+    }
+}
@@ -0,0 +1,103 @@
+package org.jobhearted.crawler.management;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the LongHashSet, including collision chains and the backward shift when removing from one. The set starts with
+ * 16 slots and values are placed by their lowest bits, so values 16 apart share a home slot.
+ */
+public class TestLongHashSet {
+
+    @Test
+    public void testAddAndRemove() {
+        LongHashSet set = new LongHashSet();
+        assertTrue(set.add(42));
+        assertFalse(set.add(42));
+        assertTrue(set.add(-7));
+        assertTrue(set.contains(42));
+        assertTrue(set.contains(-7));
+        assertFalse(set.contains(43));
+        assertEquals(2, set.size());
+
+        assertTrue(set.remove(42));
+        assertFalse(set.remove(42));
+        assertFalse(set.contains(42));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void testZero() {
+        LongHashSet set = new LongHashSet();
+        assertFalse(set.contains(0));
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(0));
+        assertEquals(1, set.size());
+        assertTrue(set.remove(0));
+        assertFalse(set.contains(0));
+        assertEquals(0, set.size());
+    }
+
+    @Test
+    public void testCollisionChain() {
+        LongHashSet set = new LongHashSet();
+        // 1, 17 and 33 share slot 1, 2 has to go after them
+        set.add(1);
+        set.add(17);
+        set.add(33);
+        set.add(2);
+
+        // Removing from the middle of the chain shifts the entries after it back, they are still found
+        assertTrue(set.remove(17));
+        assertTrue(set.contains(1));
+        assertFalse(set.contains(17));
+        assertTrue(set.contains(33));
+        assertTrue(set.contains(2));
+
+        assertTrue(set.remove(1));
+        assertTrue(set.contains(33));
+        assertTrue(set.contains(2));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void testCollisionChainWrapsAround() {
+        LongHashSet set = new LongHashSet();
+        // 15, 31 and 47 share the last slot, the chain continues at the start of the table where 1 lives
+        set.add(15);
+        set.add(31);
+        set.add(47);
+        set.add(1);
+
+        assertTrue(set.remove(15));
+        assertTrue(set.contains(31));
+        assertTrue(set.contains(47));
+        assertTrue(set.contains(1));
+
+        // 1 sits at its home slot, so it must not be shifted before 47
+        assertTrue(set.remove(31));
+        assertTrue(set.contains(47));
+        assertTrue(set.contains(1));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void testGrowAndRemoveMany() {
+        LongHashSet set = new LongHashSet();
+        for (long value = 1; value <= 10000; value++) {
+            assertTrue(set.add(value * 16));
+        }
+        assertEquals(10000, set.size());
+        for (long value = 1; value <= 10000; value += 2) {
+            assertTrue(set.remove(value * 16));
+        }
+        assertEquals(5000, set.size());
+        for (long value = 1; value <= 10000; value++) {
+            assertEquals(value % 2 == 0, set.contains(value * 16));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.jobhearted.crawler.management;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the RecrawlScheduler hands out recrawls in the order they are due, and only once they are due.
+ */
+public class TestRecrawlScheduler {
+
+    @Test
+    public void testDueOrder() {
+        RecrawlScheduler scheduler = new RecrawlScheduler();
+        scheduler.schedule(3, 0, 3000);
+        scheduler.schedule(1, 0, 1000);
+        scheduler.schedule(4, 0, 4000);
+        scheduler.schedule(2, 0, 2000);
+        assertEquals(4, scheduler.size());
+
+        assertEquals(1, scheduler.pollDue(5000).getUrlId());
+        assertEquals(2, scheduler.pollDue(5000).getUrlId());
+        assertEquals(3, scheduler.pollDue(5000).getUrlId());
+        assertEquals(4, scheduler.pollDue(5000).getUrlId());
+        assertNull(scheduler.pollDue(5000));
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void testNothingBeforeDue() {
+        RecrawlScheduler scheduler = new RecrawlScheduler();
+        scheduler.schedule(2, 500, 2000);
+        scheduler.schedule(1, 100, 1000);
+
+        assertNull(scheduler.pollDue(999));
+        RecrawlScheduler.ScheduledRecrawl due = scheduler.pollDue(1000);
+        assertEquals(1, due.getUrlId());
+        assertEquals(100, due.getLastVisited());
+        assertNull(scheduler.pollDue(1999));
+        assertEquals(1, scheduler.size());
+        assertEquals(2, scheduler.pollDue(2000).getUrlId());
+    }
+
+    @Test
+    public void testRescheduledUrl() {
+        RecrawlScheduler scheduler = new RecrawlScheduler();
+        // A url visited again is scheduled again, both entries are handed out with the visit they belong to
+        scheduler.schedule(1, 100, 3000);
+        scheduler.schedule(1, 2000, 2500);
+
+        assertEquals(2000, scheduler.pollDue(3000).getLastVisited());
+        assertEquals(100, scheduler.pollDue(3000).getLastVisited());
+    }
+
+    @Test
+    public void testManyRecrawlsInDueOrder() {
+        RecrawlScheduler scheduler = new RecrawlScheduler();
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            // The url id is the due time, so the order can be checked on it
+            long dueAt = random.nextInt(100000);
+            scheduler.schedule(dueAt, 0, dueAt);
+        }
+        assertEquals(10000, scheduler.size());
+
+        long previous = -1;
+        RecrawlScheduler.ScheduledRecrawl due;
+        while ((due = scheduler.pollDue(Long.MAX_VALUE)) != null) {
+            assertTrue(due.getUrlId() >= previous);
+            previous = due.getUrlId();
+        }
+        assertEquals(0, scheduler.size());
+    }
+}
@@ -0,0 +1,98 @@
+package org.jobhearted.crawler.management;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the exponential wait of the RetryBackoff, its jitter and the urls it keeps waiting. Url strings stand in for
+ * the Url models.
+ */
+public class TestRetryBackoff {
+    private static final long MINIMUM = 1000;
+    private static final long MAXIMUM = 16000;
+
+    @Test
+    public void testWaitDoublesUpToMaximum() {
+        // Without jitter the wait is half of the backoff
+        RetryBackoff<String> backoff = new RetryBackoff<String>(MINIMUM, MAXIMUM, new FixedRandom(0));
+        assertEquals(500, backoff.waitOf(1));
+        assertEquals(1000, backoff.waitOf(2));
+        assertEquals(2000, backoff.waitOf(3));
+        assertEquals(4000, backoff.waitOf(4));
+        assertEquals(8000, backoff.waitOf(5));
+        assertEquals(8000, backoff.waitOf(6));
+        assertEquals(8000, backoff.waitOf(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testJitterRange() {
+        RetryBackoff<String> backoff = new RetryBackoff<String>(MINIMUM, MAXIMUM, new Random(42));
+        long shortest = Long.MAX_VALUE;
+        long longest = 0;
+        for (int i = 0; i < 1000; i++) {
+            long wait = backoff.waitOf(3);
+            shortest = Math.min(shortest, wait);
+            longest = Math.max(longest, wait);
+        }
+        assertTrue(shortest >= 2000);
+        assertTrue(longest <= 4000);
+        // Spread over the range, so urls that failed together are not retried together
+        assertTrue(shortest < 2200);
+        assertTrue(longest > 3800);
+    }
+
+    @Test
+    public void testPollReady() {
+        RetryBackoff<String> backoff = new RetryBackoff<String>(MINIMUM, MAXIMUM, new FixedRandom(0));
+        assertFalse(backoff.hasWaiting());
+        assertEquals(12000, backoff.schedule("http://www.jobs.nl/2", 3, 10000));
+        assertEquals(10500, backoff.schedule("http://www.jobs.nl/1", 1, 10000));
+        assertTrue(backoff.hasWaiting());
+
+        assertTrue(backoff.pollReady(10499).isEmpty());
+        assertEquals(Arrays.asList("http://www.jobs.nl/1"), backoff.pollReady(10500));
+        assertTrue(backoff.pollReady(11999).isEmpty());
+        assertTrue(backoff.hasWaiting());
+        assertEquals(Arrays.asList("http://www.jobs.nl/2"), backoff.pollReady(20000));
+        assertFalse(backoff.hasWaiting());
+    }
+
+    @Test
+    public void testPollReadyInRetryOrder() {
+        RetryBackoff<String> backoff = new RetryBackoff<String>(MINIMUM, MAXIMUM, new FixedRandom(0));
+        backoff.schedule("http://www.jobs.nl/3", 5, 10000);
+        backoff.schedule("http://www.jobs.nl/1", 1, 10000);
+        backoff.schedule("http://www.jobs.nl/2", 3, 10000);
+        assertEquals(Arrays.asList("http://www.jobs.nl/1", "http://www.jobs.nl/2", "http://www.jobs.nl/3"),
+                backoff.pollReady(20000));
+    }
+
+    @Test
+    public void testMaximumRaisedToMinimum() {
+        RetryBackoff<String> backoff = new RetryBackoff<String>(4000, 1000, new FixedRandom(0));
+        assertEquals(2000, backoff.waitOf(1));
+        assertEquals(2000, backoff.waitOf(5));
+    }
+
+    /**
+     * Random that always returns the same double
+     */
+    private static class FixedRandom extends Random {
+        private final double value;
+
+        FixedRandom(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double nextDouble() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.jobhearted.crawler.management;
+
+import org.jobhearted.crawler.processing.UrlFingerprint;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests saving and loading the SeenUrlFilter, and that a damaged or foreign file is not used.
+ */
+public class TestSeenUrlFilter {
+    private static final int URLS = 1000;
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("seen", ".bloom");
+        file.delete();
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void testSaveAndLoad() {
+        SeenUrlFilter filter = filledFilter();
+        filter.markComplete();
+        filter.save(file);
+
+        SeenUrlFilter loaded = SeenUrlFilter.load(file);
+        assertNotNull(loaded);
+        assertEquals(URLS, loaded.getLastUrlId());
+        assertEquals(filter.capacity(), loaded.capacity());
+        for (int i = 1; i <= URLS; i++) {
+            assertTrue(loaded.mightContain(fingerprint(i)));
+        }
+        // A loaded filter still has to be brought up to date from the database before it is complete
+        assertFalse(loaded.isComplete());
+    }
+
+    @Test
+    public void testIncompleteNotSaved() {
+        filledFilter().save(file);
+        assertFalse(file.exists());
+        assertNull(SeenUrlFilter.load(file));
+    }
+
+    @Test
+    public void testWrongMagic() throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeInt(0x12345678);
+            out.writeLong(1);
+            out.writeInt(1);
+            out.writeLong(0);
+        } finally {
+            out.close();
+        }
+        assertNull(SeenUrlFilter.load(file));
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        SeenUrlFilter filter = filledFilter();
+        filter.markComplete();
+        filter.save(file);
+        RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+        try {
+            truncated.setLength(truncated.length() - 8);
+        } finally {
+            truncated.close();
+        }
+        assertNull(SeenUrlFilter.load(file));
+    }
+
+    @Test
+    public void testTrailingBytes() throws IOException {
+        SeenUrlFilter filter = filledFilter();
+        filter.markComplete();
+        filter.save(file);
+        RandomAccessFile extended = new RandomAccessFile(file, "rw");
+        try {
+            extended.setLength(extended.length() + 8);
+        } finally {
+            extended.close();
+        }
+        assertNull(SeenUrlFilter.load(file));
+    }
+
+    @Test
+    public void testNegativeLastUrlId() throws IOException {
+        SeenUrlFilter filter = filledFilter();
+        filter.markComplete();
+        filter.save(file);
+        RandomAccessFile damaged = new RandomAccessFile(file, "rw");
+        try {
+            damaged.seek(4);
+            damaged.writeLong(-1);
+        } finally {
+            damaged.close();
+        }
+        assertNull(SeenUrlFilter.load(file));
+    }
+
+    @Test
+    public void testMatchesDatabase() {
+        SeenUrlFilter filter = filledFilter();
+        assertTrue(filter.matches(URLS));
+        assertTrue(filter.matches(URLS + 500));
+        // The database has fewer urls than the filter covers, it was replaced since the filter was saved
+        assertFalse(filter.matches(URLS - 1));
+        assertFalse(filter.matches(0));
+    }
+
+    /**
+     * Creates a filter with the urls with id 1 up to URLS
+     */
+    private static SeenUrlFilter filledFilter() {
+        SeenUrlFilter filter = new SeenUrlFilter(URLS);
+        for (int i = 1; i <= URLS; i++) {
+            filter.put(fingerprint(i));
+            filter.coverUrlId(i);
+        }
+        return filter;
+    }
+
+    /**
+     * Returns the fingerprint of the url with the given id
+     */
+    private static long fingerprint(int id) {
+        return UrlFingerprint.of("http://www.jobs.nl/vacature/" + id);
+    }
+}
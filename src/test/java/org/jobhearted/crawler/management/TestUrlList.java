@@ -0,0 +1,116 @@
+package org.jobhearted.crawler.management;
+
+import org.jobhearted.crawler.database.Database;
+import org.jobhearted.crawler.processing.objects.Flag;
+import org.jobhearted.crawler.processing.objects.Url;
+import org.jobhearted.crawler.statistics.StatisticsTracker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the per flag queues and the url index of the UrlList, kept in memory. The Url model needs the database
+ * connection for its metadata, no rows are read or written.
+ */
+public class TestUrlList {
+    private CrawlManager crawlManager;
+    private UrlList urlList;
+
+    @Before
+    public void createList() {
+        Database.loadSettings();
+        Database.openDatabaseConnection();
+        crawlManager = new CrawlManager();
+        crawlManager.setInteger("id", 1);
+        StatisticsTracker.registerCrawler(crawlManager);
+        urlList = new UrlList(crawlManager, 0, new SeenUrlFilter(0));
+    }
+
+    @After
+    public void removeCrawler() {
+        StatisticsTracker.removeCrawlManager(crawlManager);
+    }
+
+    @Test
+    public void testQueuePerFlag() {
+        Url first = url("http://www.jobs.nl/1", Flag.FOUND);
+        Url second = url("http://www.jobs.nl/2", Flag.FOUND);
+        Url retry = url("http://www.jobs.nl/3", Flag.RETRY);
+        assertTrue(urlList.add(first));
+        assertTrue(urlList.add(second));
+        assertTrue(urlList.add(retry));
+        assertFalse(urlList.add(url("http://www.jobs.nl/1", Flag.FOUND)));
+
+        assertEquals(3, urlList.size());
+        assertEquals(2, urlList.countWithFlag(Flag.FOUND));
+        assertEquals(1, urlList.countWithFlag(Flag.RETRY));
+        assertSame(first, urlList.getFirstWithFlag(Flag.FOUND));
+        assertSame(second, urlList.getFirstWithFlag(Flag.FOUND, Collections.singleton(first)));
+        assertSame(retry, urlList.getFirstWithFlag(Flag.RETRY));
+        assertNull(urlList.getFirstWithFlag(Flag.RECRAWL));
+    }
+
+    @Test
+    public void testSwitchFlag() {
+        Url first = url("http://www.jobs.nl/1", Flag.FOUND);
+        Url second = url("http://www.jobs.nl/2", Flag.FOUND);
+        Url retry = url("http://www.jobs.nl/3", Flag.RETRY);
+        urlList.add(first);
+        urlList.add(second);
+        urlList.add(retry);
+
+        first.setFlag(Flag.RETRY);
+        urlList.switchFlag(first, Flag.FOUND, Flag.RETRY);
+        assertEquals(1, urlList.countWithFlag(Flag.FOUND));
+        assertEquals(2, urlList.countWithFlag(Flag.RETRY));
+        assertSame(second, urlList.getFirstWithFlag(Flag.FOUND));
+        // A switched url goes to the tail of the queue of its new flag
+        assertSame(retry, urlList.getFirstWithFlag(Flag.RETRY));
+        assertSame(first, urlList.getFirstWithFlag(Flag.RETRY, Collections.singleton(retry)));
+        assertSame(first, urlList.get("http://www.jobs.nl/1"));
+    }
+
+    @Test
+    public void testSwitchFlagOfOtherInstance() {
+        Url listed = url("http://www.jobs.nl/1", Flag.FOUND);
+        urlList.add(listed);
+
+        // Only the instance in the list moves, a copy with the same url string is ignored
+        Url copy = url("http://www.jobs.nl/1", Flag.VISITED);
+        urlList.switchFlag(copy, Flag.FOUND, Flag.VISITED);
+        assertEquals(1, urlList.countWithFlag(Flag.FOUND));
+        assertEquals(0, urlList.countWithFlag(Flag.VISITED));
+        assertSame(listed, urlList.get("http://www.jobs.nl/1"));
+    }
+
+    @Test
+    public void testRemove() {
+        Url first = url("http://www.jobs.nl/1", Flag.FOUND);
+        urlList.add(first);
+
+        assertFalse(urlList.remove(url("http://www.jobs.nl/1", Flag.FOUND)));
+        assertTrue(urlList.remove(first));
+        assertFalse(urlList.contains("http://www.jobs.nl/1"));
+        assertEquals(0, urlList.countWithFlag(Flag.FOUND));
+        assertNull(urlList.getFirstWithFlag(Flag.FOUND));
+        assertEquals(0, urlList.size());
+    }
+
+    /**
+     * Creates an url which is not in the database
+     */
+    private static Url url(String address, Flag flag) {
+        Url url = new Url();
+        url.setString(Url.COL_URL, address);
+        url.setFlag(flag);
+        return url;
+    }
+}